@@ -0,0 +1,145 @@
+package tech.eisen.server;
+
+import org.jetbrains.annotations.NotNull;
+import tech.eisen.server.handler.GetHeadRootHttpHandler;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Loads resources into the cache before the server accepts connections, so that the first requests don't pay for
+ * cold loads, the constant-mode pass of the pre-processor and compression.
+ * </p>
+ * <p>
+ * Resources are {@link GetHeadRootHttpHandler#prepare(URL, java.util.concurrent.Executor) prepared} in parallel on a
+ * fork-join pool, which also encodes their compressed variants. The warm-up ends once its time budget is exhausted,
+ * leaving the remaining resources to be loaded on demand. Variants whose encoding hasn't started by then are handed to
+ * the encoding executor of the cache, since the cache only ever encodes a variant once.
+ * </p>
+ */
+class CacheWarmUp {
+    
+    private final static int PROGRESS_STEPS = 10;
+    
+    private final GetHeadRootHttpHandler handler;
+    private final Executor encodingExecutor;
+    private final boolean verbose;
+    
+    private final AtomicInteger prepared = new AtomicInteger(), failed = new AtomicInteger(),
+        completed = new AtomicInteger();
+    private final Set<Encoding> pendingEncodings = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * Constructs a new warm-up.
+     *
+     * @param handler the handler which prepares resources
+     * @param encodingExecutor the executor which encodes the variants that haven't been encoded within the budget
+     * @param verbose whether to log progress and failures
+     */
+    CacheWarmUp(@NotNull GetHeadRootHttpHandler handler, @NotNull Executor encodingExecutor, boolean verbose) {
+        this.handler = handler;
+        this.encodingExecutor = encodingExecutor;
+        this.verbose = verbose;
+    }
+    
+    /**
+     * Prepares resources and waits until all of them have been prepared or the budget is exhausted.
+     *
+     * @param urls the URLs of the resources
+     * @param budget the time budget in milliseconds
+     * @return whether all resources have been prepared within the budget
+     */
+    boolean run(@NotNull Collection<URL> urls, long budget) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget);
+        final int total = urls.size(), step = Math.max(1, total / PROGRESS_STEPS);
+        
+        ForkJoinPool pool = new ForkJoinPool();
+        Executor encoder = task -> {
+            Encoding encoding = new Encoding(task);
+            pendingEncodings.add(encoding);
+            try {
+                pool.execute(encoding);
+            } catch (RejectedExecutionException ex) {
+                pendingEncodings.remove(encoding);
+                throw ex;
+            }
+        };
+        
+        try {
+            for (URL url : urls)
+                pool.execute(() -> prepare(url, encoder, deadline, total, step));
+            // also waits for the compressed variants, which are encoded on the same pool
+            return pool.awaitQuiescence(budget, TimeUnit.MILLISECONDS) && completed.get() == total;
+        } finally {
+            // queued tasks are dropped, but the cache has already recorded their variants as being encoded
+            pool.shutdownNow();
+            for (Encoding encoding : pendingEncodings)
+                if (encoding.claim())
+                    encodingExecutor.execute(encoding.task);
+        }
+    }
+    
+    // GETTERS
+    
+    int getPrepared() {
+        return prepared.get();
+    }
+    
+    int getFailed() {
+        return failed.get();
+    }
+    
+    // PRIVATE
+    
+    private void prepare(URL url, Executor encoder, long deadline, int total, int step) {
+        if (System.nanoTime() - deadline >= 0)
+            return;
+        
+        try {
+            handler.prepare(url, encoder);
+            prepared.incrementAndGet();
+        } catch (IOException | RuntimeException ex) {
+            failed.incrementAndGet();
+            if (verbose)
+                System.err.println("Warm-up of " + url + " failed: " + ex);
+        }
+        
+        int done = completed.incrementAndGet();
+        if (verbose && done % step == 0)
+            System.out.printf("Warmed up %d of %d resources%n", done, total);
+    }
+    
+    // SUBCLASSES
+    
+    /**
+     * An encoding task which either the pool or the encoding executor runs, but never both.
+     */
+    private class Encoding implements Runnable {
+        
+        private final Runnable task;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        
+        private Encoding(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (claim())
+                task.run();
+        }
+        
+        private boolean claim() {
+            pendingEncodings.remove(this);
+            return claimed.compareAndSet(false, true);
+        }
+        
+    }
+    
+}
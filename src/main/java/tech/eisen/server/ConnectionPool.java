@@ -0,0 +1,130 @@
+package tech.eisen.server;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A bounded pool of worker threads which handles accepted connections.
+ * </p>
+ * <p>
+ * Unlike spawning one thread per connection, the amount of threads and the amount of connections waiting for a
+ * thread are both limited. Connections exceeding those limits are handled according to the pool's
+ * {@link RejectionPolicy}.
+ * </p>
+ */
+public class ConnectionPool extends ThreadPoolExecutor {
+    
+    private final static long KEEP_ALIVE_SECONDS = 60;
+    
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    
+    private final RejectionPolicy policy;
+    
+    /**
+     * Constructs a new connection pool.
+     *
+     * @param coreThreads the amount of threads kept alive even when idle
+     * @param maxThreads the maximum amount of threads
+     * @param queueDepth the maximum amount of connections waiting for a thread, or {@code 0} for direct hand-off
+     * @param policy the policy for connections which can neither be handled nor queued
+     */
+    public ConnectionPool(int coreThreads, int maxThreads, int queueDepth, @NotNull RejectionPolicy policy) {
+        super(coreThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, createQueue(queueDepth),
+            new WorkerThreadFactory());
+        this.policy = policy;
+        setRejectedExecutionHandler(this::reject);
+    }
+    
+    private static BlockingQueue<Runnable> createQueue(int queueDepth) {
+        if (queueDepth < 0)
+            throw new IllegalArgumentException("Queue depth must not be negative");
+        return queueDepth == 0? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueDepth);
+    }
+    
+    private void reject(Runnable task, ThreadPoolExecutor executor) {
+        rejected.incrementAndGet();
+        
+        if (policy == RejectionPolicy.CALLER_RUNS && !executor.isShutdown())
+            task.run();
+        else
+            throw new RejectedExecutionException("Connection pool is saturated");
+    }
+    
+    @Override
+    protected void beforeExecute(Thread thread, Runnable task) {
+        active.incrementAndGet();
+        super.beforeExecute(thread, task);
+    }
+    
+    @Override
+    protected void afterExecute(Runnable task, Throwable ex) {
+        super.afterExecute(task, ex);
+        active.decrementAndGet();
+    }
+    
+    // GETTERS
+    
+    /**
+     * Returns the amount of connections which are currently being handled by a worker thread.
+     *
+     * @return the amount of active connections
+     */
+    public int getActiveConnections() {
+        return active.get();
+    }
+    
+    /**
+     * Returns the amount of connections which have been accepted but are waiting for a worker thread.
+     *
+     * @return the amount of queued connections
+     */
+    public int getQueuedConnections() {
+        return getQueue().size();
+    }
+    
+    /**
+     * Returns the total amount of connections which could neither be handled nor queued. This includes connections
+     * which have been handled by the accepting thread due to {@link RejectionPolicy#CALLER_RUNS}.
+     *
+     * @return the amount of rejected connections
+     */
+    public long getRejectedConnections() {
+        return rejected.get();
+    }
+    
+    @NotNull
+    public RejectionPolicy getRejectionPolicy() {
+        return policy;
+    }
+    
+    // SUBCLASSES
+    
+    public static enum RejectionPolicy {
+        /**
+         * Rejected connections are closed immediately.
+         */
+        CLOSE,
+        /**
+         * Rejected connections are handled by the accepting thread, which stops accepting further connections until
+         * it is done.
+         */
+        CALLER_RUNS
+    }
+    
+    private static class WorkerThreadFactory implements ThreadFactory {
+        
+        private final AtomicInteger count = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(@NotNull Runnable task) {
+            return new Thread(task, "Connection-Worker-" + count.incrementAndGet());
+        }
+        
+    }
+    
+}
@@ -1,22 +1,26 @@
 package tech.eisen.server;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import tech.eisen.server.content.HtmlTemplateCache;
+import tech.eisen.server.content.PageCache;
 import tech.eisen.server.handler.*;
 import tech.eisen.server.handler.match.*;
 import tech.eisen.server.http.*;
+import tech.eisen.server.nio.NioServer;
 import tech.eisen.server.security.DeserializerPasswords;
 import tech.eisen.server.security.PasswordStore;
 
 import javax.net.ssl.*;
 import java.io.*;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.URL;
 import java.security.*;
 import java.time.LocalTime;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.function.Predicate;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 public class EisenServer {
     
@@ -38,6 +42,9 @@ public class EisenServer {
     }
     
     private final ResourceCache resourceCache = new ResourceCache();
+    private final HtmlTemplateCache templateCache = new HtmlTemplateCache();
+    private final PageCache pageCache = new PageCache();
+    private final ResourceIndex resourceIndex;
     private final PasswordStore passwordStore = new PasswordStore();
     
     
@@ -50,10 +57,21 @@ public class EisenServer {
     private final File keyStore;
     
     private final File trackerLogFile;
-    
-    
-    private final HttpEventHandler rootHandler = new GetHeadRootHttpHandler(this);
-    private final Map<Predicate<HttpRequest>, HttpEventHandler> handlerMap = new HashMap<>();
+    private final File snapshotFile;
+    
+    private Executor connectionExecutor = task -> new Thread(task).start();
+    private int keepAliveTimeout = 5000;
+    private int maxKeepAliveRequests = 100;
+    private int nioEventLoops = 0;
+    private SocketConfig socketConfig = new SocketConfig();
+    private TlsConfig tlsConfig = new TlsConfig();
+    private long warmUpBudget = 10_000;
+    private boolean warmUpDirectory = false;
+    private boolean snapshotEnabled = false;
+    private volatile boolean ready;
+    
+    private final GetHeadRootHttpHandler rootHandler = new GetHeadRootHttpHandler(this);
+    private final RequestRouter router = new RequestRouter();
     
     public EisenServer(int port, @NotNull File directory, @NotNull Verbosity verbosity,
                        boolean https, File keyStore, char[] keyStorePass, char[] keyPass) {
@@ -68,6 +86,11 @@ public class EisenServer {
         this.verbosity = verbosity;
         
         this.trackerLogFile = new File(directory, "log.csv");
+        this.snapshotFile = new File(directory, "cache.snapshot");
+        this.resourceIndex = new ResourceIndex(CLASS_LOADER, "html", directory.toPath());
+        // the snapshot must never be served
+        resourceIndex.exclude(snapshotFile.toPath());
+        resourceIndex.exclude(ResourceSnapshot.getTemporaryFile(snapshotFile.toPath()));
         
         this.https = https;
         this.keyStorePass = keyStorePass;
@@ -79,7 +102,6 @@ public class EisenServer {
         this(port, directory, verbosity, false, null, null, null);
     }
     
-    @SuppressWarnings("deprecation")
     public void start() throws IOException, GeneralSecurityException {
         if (https)
             startHttps();
@@ -87,35 +109,148 @@ public class EisenServer {
             startHttp();
     }
     
-    @Deprecated
     private void startHttp() throws IOException {
-        throw new UnsupportedOperationException();
+        ServerSocket serverSocket = new ServerSocket();
+        socketConfig.bind(serverSocket, port);
+        init();
+        
+        acceptLoop(serverSocket);
     }
     
     private void startHttps() throws IOException, GeneralSecurityException {
+        if (nioEventLoops > 0) {
+            startNioHttps();
+            return;
+        }
+        
         SSLServerSocket serverSocket = initSSL();
-        registerEvents();
-        loadAccounts();
+        init();
         
+        acceptLoop(serverSocket);
+    }
+    
+    private void acceptLoop(ServerSocket serverSocket) throws IOException {
         //noinspection InfiniteLoopStatement
         while (true) {
-            SSLSocket sslSocket = (SSLSocket) serverSocket.accept();
+            Socket socket = serverSocket.accept();
             
-            new ServerThread(this, sslSocket).start();
+            try {
+                socketConfig.configure(socket);
+                connectionExecutor.execute(new ServerThread(this, socket));
+            } catch (RejectedExecutionException ex) {
+                if (isVerbose())
+                    System.err.println("Rejected connection from " + socket.getInetAddress());
+                socket.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                socket.close();
+            }
         }
     }
     
-    private void registerEvents() {
-        final URI login;
+    private void startNioHttps() throws IOException, GeneralSecurityException {
+        SSLContext sslContext = createSSLContext();
+        init();
+        
+        new NioServer(sslContext, tlsConfig, port, socketConfig, nioEventLoops, this::handleEvent,
+            connectionExecutor, keepAliveTimeout, maxKeepAliveRequests).run();
+    }
+    
+    private void init() throws IOException {
+        registerEvents();
+        loadAccounts();
+        
+        // changes of indexed resources are pushed to the cache instead of being checked on every request
+        resourceCache.setTracked(resourceIndex::isTracked);
+        resourceIndex.addChangeListener(url -> {
+            if (url != null)
+                resourceCache.invalidate(url);
+            else resourceCache.invalidateAll();
+        });
+        
+        long before = System.currentTimeMillis();
+        resourceIndex.build();
+        long millis = System.currentTimeMillis() - before;
+        if (isVerbose())
+            System.out.printf("Indexed %d resources in %dms%n", resourceIndex.size(), millis);
+        
+        ResourceSnapshot snapshot = snapshotEnabled? new ResourceSnapshot(snapshotFile.toPath(), "port=" + port) : null;
+        if (snapshot != null)
+            restoreSnapshot(snapshot);
+        
+        warmUp();
+        
+        if (snapshot != null) {
+            saveSnapshot(snapshot);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> saveSnapshot(snapshot), "Snapshot-Saver"));
+        }
+        ready = true;
+        if (!isQuit())
+            System.out.printf("Ready on port %d%n", port);
+    }
+    
+    /**
+     * Drops everything cached and warms the cache up again within the warm-up budget, such as after resources have
+     * been replaced without a restart.
+     */
+    public void reload() {
+        resourceCache.invalidateAll();
+        templateCache.clear();
+        pageCache.clear();
+        warmUp();
+    }
+    
+    private void restoreSnapshot(ResourceSnapshot snapshot) {
+        long before = System.currentTimeMillis();
         try {
-            login = new URI("/login");
-        } catch (URISyntaxException e) {
-            throw new AssertionError(e);
+            int restored = snapshot.restore(resourceCache);
+            long millis = System.currentTimeMillis() - before;
+            if (isVerbose())
+                System.out.printf("Restored %d resources from %s in %dms%n", restored, snapshot.getFile(), millis);
+        } catch (IOException ex) {
+            // the snapshot is replaced once it is saved again
+            System.err.println("Can't restore snapshot, starting with an empty cache: " + ex);
         }
+    }
+    
+    private void saveSnapshot(ResourceSnapshot snapshot) {
+        long before = System.currentTimeMillis();
+        try {
+            int saved = snapshot.save(resourceCache);
+            long millis = System.currentTimeMillis() - before;
+            if (isVerbose())
+                System.out.printf("Saved %d resources to %s in %dms%n", saved, snapshot.getFile(), millis);
+        } catch (IOException ex) {
+            System.err.println("Can't save snapshot: " + ex);
+        }
+    }
+    
+    private void warmUp() {
+        if (warmUpBudget == 0)
+            return;
         
-        Predicate<HttpRequest> getLogin = new BaseURIAndMethodMatcher(login, HttpRequestMethod.GET);
+        Set<URL> urls = resourceIndex.getResources(warmUpDirectory);
+        CacheWarmUp warmUp = new CacheWarmUp(rootHandler, resourceCache.getEncodingExecutor(), isVerbose());
         
-        handlerMap.put(getLogin, new GetLoginHandler(this));
+        long before = System.currentTimeMillis();
+        boolean complete = warmUp.run(urls, warmUpBudget);
+        long millis = System.currentTimeMillis() - before;
+        if (!isQuit())
+            System.out.printf("Warmed up %d of %d resources in %dms%s%n", warmUp.getPrepared(), urls.size(), millis,
+                complete? "" : " (budget exhausted)");
+    }
+    
+    private void registerEvents() {
+        GetLoginHandler login = new GetLoginHandler(this);
+        router.add(HttpRequestMethod.GET, "/login", login);
+        router.add(HttpRequestMethod.GET, "/login.html", login);
+        
+        router.add(HttpRequestMethod.GET, "/log", new GetLogQueryHandler(this));
+        router.add(HttpRequestMethod.GET, "/tracker.png", new GetTrackerImageHandler(this));
+        
+        CacheAdminHandler cacheAdmin = new CacheAdminHandler(this);
+        router.add(HttpRequestMethod.GET, "/admin/cache", cacheAdmin);
+        router.add(HttpRequestMethod.POST, "/admin/cache", cacheAdmin);
     }
     
     private void loadAccounts() throws IOException {
@@ -138,8 +273,7 @@ public class EisenServer {
         trustManagerFactory.init(keyStore);
         TrustManager[] tm = trustManagerFactory.getTrustManagers();
         
-        SSLContext sslContext = SSLContext.getInstance("TLSv1");
-        sslContext.init(km, tm, null);
+        SSLContext sslContext = tlsConfig.createContext(km, tm);
         
         return sslContext;
     }
@@ -151,7 +285,10 @@ public class EisenServer {
         SSLServerSocketFactory sslServerSocketFactory = sslContext.getServerSocketFactory();
         
         // Create server socket
-        return (SSLServerSocket) sslServerSocketFactory.createServerSocket(this.port);
+        SSLServerSocket serverSocket = (SSLServerSocket) sslServerSocketFactory.createServerSocket();
+        serverSocket.setSSLParameters(tlsConfig.createParameters(sslContext));
+        socketConfig.bind(serverSocket, this.port);
+        return serverSocket;
     }
     
     // GETTERS
@@ -172,10 +309,51 @@ public class EisenServer {
         return resourceCache;
     }
     
+    /**
+     * Returns the index which resolves request paths to the URLs of resources.
+     *
+     * @return the resource index
+     */
+    @NotNull
+    public ResourceIndex getResourceIndex() {
+        return resourceIndex;
+    }
+    
+    /**
+     * Returns the cache of compiled pages, which are rendered by the pre-processor on every request.
+     *
+     * @return the template cache
+     */
+    @NotNull
+    public HtmlTemplateCache getTemplateCache() {
+        return templateCache;
+    }
+    
+    /**
+     * Returns the cache of rendered pages which don't differ per request, or only per user.
+     *
+     * @return the page cache
+     */
+    @NotNull
+    public PageCache getPageCache() {
+        return pageCache;
+    }
+    
     public PasswordStore getPasswordStore() {
         return passwordStore;
     }
     
+    /**
+     * Returns the executor which handles accepted connections. By default, every connection is handled on a new
+     * thread.
+     *
+     * @return the connection executor
+     */
+    @NotNull
+    public Executor getConnectionExecutor() {
+        return connectionExecutor;
+    }
+    
     public InputStream getResource(URL url) throws IOException {
         return resourceCache.openStream(url);
     }
@@ -184,6 +362,17 @@ public class EisenServer {
         return getResource(CLASS_LOADER.getResource(path));
     }
     
+    /**
+     * Returns the URL of a resource on the class path.
+     *
+     * @param path the path of the resource, such as {@code html/header.html}
+     * @return the url or {@code null} if there is no such resource
+     */
+    @Nullable
+    public URL getResourceURL(String path) {
+        return CLASS_LOADER.getResource(path);
+    }
+    
     public Reader getResourceText(URL url) throws IOException {
         return resourceCache.openReader(url);
     }
@@ -212,15 +401,18 @@ public class EisenServer {
     public void handleEvent(HttpEvent event) throws IOException {
         long before = System.currentTimeMillis();
         try {
-            for (Map.Entry<Predicate<HttpRequest>, HttpEventHandler> entry : handlerMap.entrySet()) {
-                if (entry.getKey().test(event.getRequest())) {
-                    entry.getValue().handle(event);
-                    log(event, System.currentTimeMillis() - before);
-                    return;
-                }
+            HttpRequest request = event.getRequest();
+            if (!request.hasValidContentLength()) {
+                event.setKeepAlive(false);
+                throw new HttpException(HttpStatus.BAD_REQUEST, "Malformed Content-Length");
             }
-    
-            rootHandler.handle(event);
+            
+            RequestRouter.Route route = router.route(request.getMethod(), request.getURI().getPath());
+            if (route != null) {
+                event.setPathParameters(route.getParameters());
+                route.getHandler().handle(event);
+            }
+            else rootHandler.handle(event);
             log(event, System.currentTimeMillis() - before);
         } catch (HttpException ex) {
             ErrorHttpHandler handler = new ErrorHttpHandler(this, ex);
@@ -237,6 +429,15 @@ public class EisenServer {
         }
     }
     
+    /**
+     * Returns whether the server has been initialized, including the warm-up of the cache, and accepts connections.
+     *
+     * @return whether the server is ready
+     */
+    public boolean isReady() {
+        return ready;
+    }
+    
     public boolean isHttps() {
         return https;
     }
@@ -255,4 +456,175 @@ public class EisenServer {
         return trackerLogFile;
     }
     
+    /**
+     * Returns the time in milliseconds after which an idle connection is closed.
+     *
+     * @return the keep-alive timeout
+     */
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+    
+    /**
+     * Returns the maximum amount of requests which are handled on a single connection.
+     *
+     * @return the maximum amount of requests per connection
+     */
+    public int getMaxKeepAliveRequests() {
+        return maxKeepAliveRequests;
+    }
+    
+    /**
+     * Returns the amount of event loops of the non-blocking engine, or {@code 0} if the blocking engine is used.
+     *
+     * @return the amount of event loops
+     */
+    public int getNioEventLoops() {
+        return nioEventLoops;
+    }
+    
+    /**
+     * Returns the options for the listening socket and for accepted sockets. Changes to these options only take
+     * effect when made before the server is started.
+     *
+     * @return the socket configuration
+     */
+    @NotNull
+    public SocketConfig getSocketConfig() {
+        return socketConfig;
+    }
+    
+    /**
+     * Returns the TLS configuration, which also counts full and resumed handshakes. Changes to this configuration
+     * only take effect when made before the server is started.
+     *
+     * @return the TLS configuration
+     */
+    @NotNull
+    public TlsConfig getTlsConfig() {
+        return tlsConfig;
+    }
+    
+    /**
+     * Returns the time budget in milliseconds for loading resources into the cache at startup.
+     *
+     * @return the warm-up budget, or {@code 0} if there is no warm-up
+     */
+    public long getWarmUpBudget() {
+        return warmUpBudget;
+    }
+    
+    /**
+     * Returns whether the files of the public directory are loaded into the cache at startup, in addition to the
+     * classpath resources.
+     *
+     * @return whether the public directory is warmed up
+     */
+    public boolean isWarmUpDirectory() {
+        return warmUpDirectory;
+    }
+    
+    /**
+     * Returns the file which the contents of the cache are saved to, to be restored when the server is started again.
+     *
+     * @return the snapshot file
+     */
+    @NotNull
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+    
+    /**
+     * Returns whether the contents of the cache are restored from a snapshot at startup and saved to it after the
+     * warm-up and at shutdown.
+     *
+     * @return whether snapshots are enabled
+     */
+    public boolean isSnapshotEnabled() {
+        return snapshotEnabled;
+    }
+    
+    // SETTERS
+    
+    /**
+     * Sets the executor which handles accepted connections, such as a {@link ConnectionPool}. If the executor rejects
+     * a connection by throwing a {@link RejectedExecutionException}, the connection is closed immediately.
+     * In non-blocking mode, the executor handles single requests instead of entire connections.
+     *
+     * @param executor the connection executor
+     */
+    public void setConnectionExecutor(@NotNull Executor executor) {
+        this.connectionExecutor = executor;
+    }
+
+    /**
+     * Sets the time in milliseconds after which an idle connection is closed. This also limits how long the server
+     * waits for the first request of a connection.
+     *
+     * @param timeout the keep-alive timeout, or {@code 0} for no timeout
+     */
+    public void setKeepAliveTimeout(int timeout) {
+        if (timeout < 0)
+            throw new IllegalArgumentException("Timeout must not be negative");
+        this.keepAliveTimeout = timeout;
+    }
+
+    /**
+     * Sets the maximum amount of requests which are handled on a single connection. A value of {@code 1} disables
+     * persistent connections.
+     *
+     * @param maxRequests the maximum amount of requests per connection
+     */
+    public void setMaxKeepAliveRequests(int maxRequests) {
+        if (maxRequests < 1)
+            throw new IllegalArgumentException("Maximum amount of requests must be positive");
+        this.maxKeepAliveRequests = maxRequests;
+    }
+    
+    /**
+     * Sets the amount of event loops of the non-blocking engine. A positive amount replaces the blocking
+     * thread-per-connection engine with the non-blocking one, {@code 0} restores the blocking engine.
+     *
+     * @param eventLoops the amount of event loops
+     * @see NioServer
+     */
+    public void setNioEventLoops(int eventLoops) {
+        if (eventLoops < 0)
+            throw new IllegalArgumentException("Amount of event loops must not be negative");
+        this.nioEventLoops = eventLoops;
+    }
+
+    /**
+     * Sets the time budget in milliseconds for loading resources into the cache before the server accepts
+     * connections. Resources which haven't been loaded within the budget are loaded on demand.
+     *
+     * @param budget the warm-up budget, or {@code 0} to skip the warm-up
+     */
+    public void setWarmUpBudget(long budget) {
+        if (budget < 0)
+            throw new IllegalArgumentException("Budget must not be negative");
+        this.warmUpBudget = budget;
+    }
+
+    /**
+     * Sets whether the files of the public directory are loaded into the cache at startup, in addition to the
+     * classpath resources.
+     *
+     * @param warmUpDirectory whether to warm up the public directory
+     */
+    public void setWarmUpDirectory(boolean warmUpDirectory) {
+        this.warmUpDirectory = warmUpDirectory;
+    }
+    
+    
+    /**
+     * Sets whether the contents of the cache are restored from a {@link #getSnapshotFile() snapshot} at startup and
+     * saved to it after the warm-up and at shutdown.
+     *
+     * @param snapshotEnabled whether to enable snapshots
+     */
+    public void setSnapshotEnabled(boolean snapshotEnabled) {
+        this.snapshotEnabled = snapshotEnabled;
+    }
+
 }
@@ -0,0 +1,91 @@
+package tech.eisen.server;
+
+/**
+ * <p>
+ * A count-min sketch estimating how often keys have been accessed recently, using four rows of 4-bit counters.
+ * </p>
+ * <p>
+ * Once the amount of recorded accesses reaches ten times the width of the sketch, all counters are halved, so that
+ * the estimates age and keys which used to be popular don't stay popular forever.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+class FrequencySketch {
+    
+    private final static int MAX_COUNT = 15;
+    private final static int[] SEEDS = {0x97cb3127, 0xb5c6f5d1, 0x9e3779b9, 0x7feb352d};
+    
+    private final byte[][] rows = new byte[SEEDS.length][];
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+    
+    /**
+     * Constructs a new sketch.
+     *
+     * @param expectedKeys the expected amount of distinct keys, which determines the width
+     */
+    FrequencySketch(int expectedKeys) {
+        int width = Integer.highestOneBit(Math.max(16, Math.min(expectedKeys, 1 << 24)) - 1) << 1;
+        for (int i = 0; i < rows.length; i++)
+            rows[i] = new byte[width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+    
+    /**
+     * Returns the estimated frequency of a key, between {@code 0} and {@code 15}.
+     *
+     * @param key the key
+     * @return the estimated frequency
+     */
+    int frequency(Object key) {
+        final int hash = spread(key.hashCode());
+        int min = MAX_COUNT;
+        for (int i = 0; i < rows.length; i++)
+            min = Math.min(min, rows[i][index(hash, i)]);
+        return min;
+    }
+    
+    /**
+     * Records an access of a key.
+     *
+     * @param key the key
+     */
+    void increment(Object key) {
+        final int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < rows.length; i++) {
+            int index = index(hash, i);
+            if (rows[i][index] < MAX_COUNT) {
+                rows[i][index]++;
+                added = true;
+            }
+        }
+        
+        if (added && ++additions >= sampleSize)
+            reset();
+    }
+    
+    private void reset() {
+        for (byte[] row : rows)
+            for (int i = 0; i < row.length; i++)
+                row[i] >>= 1;
+        additions /= 2;
+    }
+    
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        return (h ^ (h >>> 16)) & mask;
+    }
+    
+    private static int spread(int hash) {
+        hash ^= hash >>> 17;
+        hash *= 0xed5ad4bb;
+        hash ^= hash >>> 11;
+        return hash;
+    }
+    
+}
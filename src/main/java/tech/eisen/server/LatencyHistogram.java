@@ -0,0 +1,100 @@
+package tech.eisen.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A histogram of durations with buckets of exponentially growing width, which can be recorded into without locking.
+ * </p>
+ * <p>
+ * Bucket {@code 0} counts durations below one microsecond, bucket {@code i} counts durations of at least
+ * {@code 2^(i - 1)} and less than {@code 2^i} microseconds. The last bucket counts all longer durations.
+ * </p>
+ */
+public class LatencyHistogram {
+    
+    private final static int BUCKETS = 40;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        counts.incrementAndGet(bucket);
+    }
+    
+    /**
+     * Returns the amount of recorded durations.
+     *
+     * @return the amount of durations
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            count += counts.get(i);
+        return count;
+    }
+    
+    /**
+     * Returns the amount of buckets.
+     *
+     * @return the amount of buckets
+     */
+    public int getBucketCount() {
+        return BUCKETS;
+    }
+    
+    /**
+     * Returns the amount of durations recorded in a bucket.
+     *
+     * @param bucket the index of the bucket
+     * @return the amount of durations
+     */
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+    
+    /**
+     * Returns the exclusive upper bound of the durations in a bucket.
+     *
+     * @param bucket the index of the bucket
+     * @return the upper bound in microseconds, or {@link Long#MAX_VALUE} for the last bucket
+     */
+    public long getUpperBound(int bucket) {
+        return bucket == BUCKETS - 1? Long.MAX_VALUE : 1L << bucket;
+    }
+    
+    /**
+     * Estimates a percentile of the recorded durations by the upper bound of the bucket it falls into.
+     *
+     * @param percentile the percentile, between {@code 0} and {@code 100}
+     * @return the upper bound of the percentile in microseconds, or {@code 0} if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += snapshot[i] = counts.get(i);
+        if (total == 0)
+            return 0;
+        
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += snapshot[i];
+            if (count >= rank)
+                return getUpperBound(i);
+        }
+        return getUpperBound(BUCKETS - 1);
+    }
+    
+}
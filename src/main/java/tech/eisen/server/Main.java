@@ -7,6 +7,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 public class Main {
     
@@ -20,7 +23,34 @@ public class Main {
         .addOption("S", "keystore-password", true, "keystore password (HTTPS mode)")
         .addOption("K", "key-password", true, "key password in keystore (HTTPS mode)")
         .addOption("q", "quit", false, "quit mode (no logging to stdout)")
-        .addOption("v", "verbose", false, "verbose mode (additional logging)");
+        .addOption("v", "verbose", false, "verbose mode (additional logging)")
+        .addOption(null, "tls-protocols", true, "comma-separated TLS protocols (HTTPS mode)")
+        .addOption(null, "tls-ciphers", true, "comma-separated cipher suites in order of preference (HTTPS mode)")
+        .addOption(null, "tls-session-cache", true, "maximum amount of cached TLS sessions (HTTPS mode)")
+        .addOption(null, "tls-session-timeout", true, "seconds after which TLS sessions expire (HTTPS mode)")
+        .addOption(null, "no-tls-session-tickets", false, "disable TLS session tickets (HTTPS mode)")
+        .addOption(null, "backlog", true, "maximum amount of pending connections")
+        .addOption(null, "no-tcp-nodelay", false, "enable Nagle's algorithm on accepted sockets")
+        .addOption(null, "receive-buffer", true, "socket receive buffer size in bytes (default: system)")
+        .addOption(null, "send-buffer", true, "socket send buffer size in bytes (default: system)")
+        .addOption(null, "keep-alive-timeout", true, "milliseconds after which idle connections are closed")
+        .addOption(null, "keep-alive-max", true, "maximum amount of requests per connection (1 disables keep-alive)")
+        .addOption(null, "nio", false, "use the non-blocking engine for HTTPS connections")
+        .addOption(null, "nio-event-loops", true, "amount of event loop threads (non-blocking engine)")
+        .addOption(null, "pool", false, "handle connections on a bounded worker pool")
+        .addOption(null, "virtual-threads", false, "handle every connection on a virtual thread (Java 21+)")
+        .addOption(null, "pool-core-threads", true, "worker threads kept alive when idle (pool mode)")
+        .addOption(null, "pool-max-threads", true, "maximum amount of worker threads (pool mode)")
+        .addOption(null, "pool-queue", true, "maximum amount of queued connections (pool mode)")
+        .addOption(null, "pool-rejection", true, "policy for excess connections: close|caller-runs (pool mode)")
+        .addOption(null, "cache-size", true, "maximum size of cached resource contents in MiB (default: 64)")
+        .addOption(null, "cache-off-heap-size", true, "maximum size of contents cached off heap in MiB (default: 512)")
+        .addOption(null, "cache-off-heap-threshold", true, "size in KiB from which on contents are cached off heap")
+        .addOption(null, "cache-revalidate", true, "milliseconds between checks of resources which aren't watched")
+        .addOption(null, "mime-types", true, "properties file mapping extensions to media types")
+        .addOption(null, "warm-up", true, "milliseconds to load resources before accepting connections (0: off)")
+        .addOption(null, "warm-up-public", false, "also load the files of the public directory at startup")
+        .addOption(null, "snapshot", false, "restore cached contents from a snapshot in the directory at startup");
     
     public final static CSVFormat CSV_FORMAT = CSVFormat.DEFAULT
         .withQuoteMode(QuoteMode.ALL)
@@ -39,7 +69,9 @@ public class Main {
         
         final boolean https = command.hasOption('s');
         if (!https) {
-            new EisenServer(port, directory, verbosity).start();
+            EisenServer server = new EisenServer(port, directory, verbosity);
+            configure(server, command);
+            server.start();
             return;
         }
     
@@ -49,10 +81,159 @@ public class Main {
         
         EisenServer server = new EisenServer(port, directory, verbosity,
             true, keyStore, keyStorePassword.toCharArray(), keyPassword.toCharArray());
+        configure(server, command);
         
         server.start();
     }
     
+    private static void configure(@NotNull EisenServer server, @NotNull CommandLine command) {
+        if (command.hasOption("pool") && command.hasOption("virtual-threads")) {
+            System.err.println("--pool and --virtual-threads are mutually exclusive");
+            System.exit(1);
+        }
+        
+        TlsConfig tlsConfig = server.getTlsConfig();
+        if (command.hasOption("tls-protocols"))
+            tlsConfig.setProtocols(parseList(command.getOptionValue("tls-protocols")));
+        if (command.hasOption("tls-ciphers"))
+            tlsConfig.setCipherSuites(parseList(command.getOptionValue("tls-ciphers")));
+        final int sessionCacheSize = parseInt(command, "tls-session-cache", tlsConfig.getSessionCacheSize());
+        final int sessionTimeout = parseInt(command, "tls-session-timeout", tlsConfig.getSessionTimeout());
+        if (sessionCacheSize < 0 || sessionTimeout < 0) {
+            System.err.println("--tls-session-*: cache size and timeout must not be negative");
+            System.exit(1);
+        }
+        tlsConfig.setSessionCacheSize(sessionCacheSize);
+        tlsConfig.setSessionTimeout(sessionTimeout);
+        tlsConfig.setSessionTickets(!command.hasOption("no-tls-session-tickets"));
+        
+        SocketConfig socketConfig = server.getSocketConfig();
+        final int backlog = parseInt(command, "backlog", socketConfig.getBacklog());
+        final int receiveBuffer = parseInt(command, "receive-buffer", socketConfig.getReceiveBufferSize());
+        final int sendBuffer = parseInt(command, "send-buffer", socketConfig.getSendBufferSize());
+        if (backlog < 1 || receiveBuffer < 0 || sendBuffer < 0) {
+            System.err.println("--backlog must be positive, buffer sizes must not be negative");
+            System.exit(1);
+        }
+        socketConfig.setBacklog(backlog);
+        socketConfig.setReceiveBufferSize(receiveBuffer);
+        socketConfig.setSendBufferSize(sendBuffer);
+        socketConfig.setTcpNoDelay(!command.hasOption("no-tcp-nodelay"));
+        
+        final int keepAliveTimeout = parseInt(command, "keep-alive-timeout", server.getKeepAliveTimeout());
+        final int keepAliveMax = parseInt(command, "keep-alive-max", server.getMaxKeepAliveRequests());
+        if (keepAliveTimeout < 0 || keepAliveMax < 1) {
+            System.err.println("--keep-alive-*: timeout must not be negative and maximum must be positive");
+            System.exit(1);
+        }
+        server.setKeepAliveTimeout(keepAliveTimeout);
+        server.setMaxKeepAliveRequests(keepAliveMax);
+        
+        ResourceCache cache = server.getResourceCache();
+        final int cacheSize = parseInt(command, "cache-size", (int) (cache.getMaximumSize() >> 20));
+        final int offHeapSize = parseInt(command, "cache-off-heap-size", (int) (cache.getMaximumOffHeapSize() >> 20));
+        final int offHeapThreshold = parseInt(command, "cache-off-heap-threshold",
+            (int) (cache.getOffHeapThreshold() >> 10));
+        final int revalidationInterval = parseInt(command, "cache-revalidate",
+            (int) cache.getRevalidationInterval());
+        if (cacheSize < 0 || offHeapSize < 0 || offHeapThreshold < 0 || revalidationInterval < 0) {
+            System.err.println("--cache-*: sizes, threshold and interval must not be negative");
+            System.exit(1);
+        }
+        cache.setMaximumSize((long) cacheSize << 20);
+        cache.setMaximumOffHeapSize((long) offHeapSize << 20);
+        cache.setOffHeapThreshold((long) offHeapThreshold << 10);
+        cache.setRevalidationInterval(revalidationInterval);
+        
+        if (command.hasOption("mime-types")) {
+            try {
+                cache.getMediaTypes().load(Paths.get(command.getOptionValue("mime-types")));
+            } catch (IOException | IllegalArgumentException ex) {
+                System.err.println("--mime-types: " + ex);
+                System.exit(1);
+            }
+        }
+        
+        final int warmUpBudget = parseInt(command, "warm-up", (int) server.getWarmUpBudget());
+        if (warmUpBudget < 0) {
+            System.err.println("--warm-up: budget must not be negative");
+            System.exit(1);
+        }
+        server.setWarmUpBudget(warmUpBudget);
+        server.setWarmUpDirectory(command.hasOption("warm-up-public"));
+        server.setSnapshotEnabled(command.hasOption("snapshot"));
+        
+        if (command.hasOption("nio")) {
+            final int eventLoops = parseInt(command, "nio-event-loops", Runtime.getRuntime().availableProcessors());
+            if (eventLoops < 1) {
+                System.err.println("--nio-event-loops: at least one event loop is required");
+                System.exit(1);
+            }
+            server.setNioEventLoops(eventLoops);
+        }
+        
+        if (command.hasOption("virtual-threads")) {
+            if (!VirtualThreads.isSupported()) {
+                System.err.println("--virtual-threads requires Java 21 or newer");
+                System.exit(1);
+            }
+            server.setConnectionExecutor(VirtualThreads.newVirtualThreadPerTaskExecutor());
+        }
+        
+        else if (command.hasOption("pool")) {
+            final int cores = Runtime.getRuntime().availableProcessors();
+            final int coreThreads = parseInt(command, "pool-core-threads", cores * 2);
+            final int maxThreads = parseInt(command, "pool-max-threads", Math.max(coreThreads, cores * 16));
+            final int queueDepth = parseInt(command, "pool-queue", maxThreads * 4);
+            final ConnectionPool.RejectionPolicy policy =
+                parseRejectionPolicy(command.getOptionValue("pool-rejection"));
+                
+            if (coreThreads < 0 || maxThreads < 1 || maxThreads < coreThreads || queueDepth < 0) {
+                System.err.println("--pool-*: thread and queue limits are out of range");
+                System.exit(1);
+            }
+            
+            server.setConnectionExecutor(new ConnectionPool(coreThreads, maxThreads, queueDepth, policy));
+        }
+    }
+    
+    private static int parseInt(@NotNull CommandLine command, @NotNull String option, int def) {
+        String str = command.getOptionValue(option);
+        if (str == null)
+            return def;
+            
+        try {
+            return Integer.parseInt(str);
+        } catch (NumberFormatException ex) {
+            System.err.println("--" + option + ": " + str + " is not a valid integer");
+            System.exit(1);
+            return def;
+        }
+    }
+    
+    @NotNull
+    private static String[] parseList(@NotNull String str) {
+        return Arrays.stream(str.split(","))
+            .map(String::trim)
+            .filter(element -> !element.isEmpty())
+            .toArray(String[]::new);
+    }
+    
+    @NotNull
+    private static ConnectionPool.RejectionPolicy parseRejectionPolicy(@Nullable String str) {
+        if (str == null)
+            return ConnectionPool.RejectionPolicy.CLOSE;
+            
+        switch (str.toLowerCase()) {
+            case "close": return ConnectionPool.RejectionPolicy.CLOSE;
+            case "caller-runs": return ConnectionPool.RejectionPolicy.CALLER_RUNS;
+            default:
+                System.err.println("--pool-rejection: " + str + " must be either close or caller-runs");
+                System.exit(1);
+                return ConnectionPool.RejectionPolicy.CLOSE;
+        }
+    }
+    
     @NotNull
     private static String requireBecauseHTTPS(@NotNull String option, @Nullable String str) {
         if (str == null) {
@@ -1,41 +1,95 @@
 package tech.eisen.server;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.tika.Tika;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import tech.eisen.server.content.ContentCoding;
 import tech.eisen.server.content.FileAttributes;
-import tech.eisen.util.IOUtil;
+import tech.eisen.server.content.MediaTypes;
 
 import java.io.*;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
 
+/**
+ * <p>
+ * A cache of the attributes and contents of resources.
+ * </p>
+ * <p>
+ * The contents are bounded by a budget in bytes, which is enforced by a size-aware W-TinyLFU policy where the
+ * weight of an entry is the length of its data. Evicting an entry only drops its data, so the attributes of
+ * resources remain cached. Attributes are small and only exist for resources which have been requested.
+ * </p>
+ * <p>
+ * Resources of at least {@link #getOffHeapThreshold() a threshold} in size are kept off the heap, in a tier with a
+ * budget of its own: files are mapped into memory read-only, other resources such as those in jars are loaded into
+ * direct buffers. Their contents can be written to sockets {@link #getBuffer(URL) as buffers} without ever being
+ * copied onto the heap. Mapped files must not be truncated while they are cached.
+ * </p>
+ * <p>
+ * Compressed variants of the contents are {@link #getVariant(URL, ContentCoding) encoded once} in the background and
+ * kept in the same tier as the contents, which they are weighed and evicted with.
+ * </p>
+ * <p>
+ * The types of resources are resolved by their extensions through {@link #getMediaTypes() the media types}. Only
+ * resources with an unknown extension are sniffed, by the first bytes of their contents as they are being loaded.
+ * </p>
+ */
 public class ResourceCache {
     
     // STATIC
     
-    private static final Tika TIKA = new Tika();
     private static final int BLOCK_SIZE = 4096;
     
-    private static FileAttributes getAttributes(@NotNull URLConnection connection) throws IOException {
-        long lastModified = connection.getLastModified();
-        long length = connection.getContentLengthLong();
-        
-        String name = connection.getURL().getFile();
-        String type = TIKA.detect(name);
-        if (type.equals("application/octet-stream")) {
-            try (InputStream stream = connection.getInputStream()) {
-                type = TIKA.detect(stream);
-            }
-        }
-        
-        return new CachedBasicFileAttributes(length, lastModified, type);
-    }
+    /**
+     * The amount of nanoseconds a stream waits for a load without any progress before it gives up.
+     */
+    private static final long STALL_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+    
+    /**
+     * The default maximum amount of bytes of cached data.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 64L * 1024 * 1024;
+    
+    /**
+     * The default maximum amount of bytes of data cached off the heap.
+     */
+    public static final long DEFAULT_MAXIMUM_OFF_HEAP_SIZE = 512L * 1024 * 1024;
+    
+    /**
+     * The default size from which on resources are cached off the heap.
+     */
+    public static final long DEFAULT_OFF_HEAP_THRESHOLD = 1024 * 1024;
+    
+    /**
+     * The default amount of milliseconds after which untracked resources are checked for changes again.
+     */
+    public static final long DEFAULT_REVALIDATION_INTERVAL = 2000;
     
     private static String getFileName(URL url) {
         String[] split = url.getFile().split("/");
@@ -45,6 +99,28 @@ public class ResourceCache {
     // INSTANCE
     
     private final Map<URL, Entry> cache = new ConcurrentHashMap<>();
+    private final Map<URL, Load> loads = new ConcurrentHashMap<>();
+    private final Map<URL, CompletableFuture<ByteBuffer>> offHeapLoads = new ConcurrentHashMap<>();
+    private final TinyLfuPolicy<URL, Entry> policy, offHeapPolicy;
+    private final MediaTypes mediaTypes = new MediaTypes();
+    private volatile long offHeapThreshold = DEFAULT_OFF_HEAP_THRESHOLD;
+    private volatile Executor encodingExecutor = ForkJoinPool.commonPool();
+    private volatile Predicate<URL> tracked = url -> false;
+    private volatile long revalidationInterval = DEFAULT_REVALIDATION_INTERVAL;
+    
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(),
+        attributeHits = new LongAdder(), attributeMisses = new LongAdder(), invalidations = new LongAdder();
+    private final LatencyHistogram loadTimes = new LatencyHistogram();
+    
+    public ResourceCache(long maximumSize, long maximumOffHeapSize) {
+        // eviction only drops the data, the attributes remain cached
+        this.policy = new TinyLfuPolicy<>(maximumSize, (url, entry) -> entry.drop());
+        this.offHeapPolicy = new TinyLfuPolicy<>(maximumOffHeapSize, (url, entry) -> entry.drop());
+    }
+    
+    public ResourceCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_MAXIMUM_OFF_HEAP_SIZE);
+    }
     
     public boolean has(URL url) {
         return cache.containsKey(url);
@@ -52,14 +128,15 @@ public class ResourceCache {
     
     public byte[] getAllBytes(@NotNull URL url) throws IOException {
         Entry entry = cache.get(url);
-        if (entry != null && entry.data != null)
-            return entry.data;
-        
-        FileAttributes attributes = entry != null? entry.attributes : getAttributes(url.openConnection());
-        byte[] data = IOUtils.toByteArray(url.openStream());
-        cache.put(url, new Entry(attributes, data));
+        byte[] data = entry == null? null : entry.data;
+        if (data != null) {
+            hit(url, policy);
+            return data;
+        }
         
-        return data;
+        try (InputStream stream = openStream(url)) {
+            return IOUtils.toByteArray(stream);
+        }
     }
     
     public String getAsString(@NotNull URL url, @Nullable Charset charset) throws IOException {
@@ -71,43 +148,167 @@ public class ResourceCache {
         return getAsString(url, null);
     }
     
+    /**
+     * <p>
+     * Opens a stream of the contents of a resource.
+     * </p>
+     * <p>
+     * If the contents are not cached, concurrent misses of the same resource are coalesced into a single load. The
+     * load is driven by the thread which missed first, as it reads its stream, and all other streams read from the
+     * shared buffer the contents are loaded into, waiting for more contents when they have caught up. Once the load
+     * is complete, the contents are cached.
+     * </p>
+     *
+     * @param url the URL
+     * @return the stream
+     * @throws IOException if an I/O error occurs
+     */
     public InputStream openStream(@NotNull URL url) throws IOException {
         Entry entry = cache.get(url);
-        if (entry != null && entry.data != null)
-            return new ByteArrayInputStream(entry.data);
+        if (entry != null) {
+            byte[] data = entry.data;
+            if (data != null) {
+                hit(url, policy);
+                return new ByteArrayInputStream(data);
+            }
+            ByteBuffer buffer = entry.buffer;
+            if (buffer != null) {
+                hit(url, offHeapPolicy);
+                return new BufferInputStream(buffer.duplicate());
+            }
+        }
+        misses.increment();
         
-        URLConnection connection = url.openConnection();
+        Load load = loads.get(url);
+        if (load != null)
+            return load.new LoadStream(false);
         
-        FileAttributes attributes = entry != null? entry.attributes : getAttributes(connection);
+        FileAttributes attributes = entry != null? entry.attributes : getAttributes(url);
+        if (isOffHeap(attributes))
+            return new BufferInputStream(loadOffHeap(url, attributes).duplicate());
         
-        InputStream urlIn = connection.getInputStream();
-        PipedOutputStream pipeOut = new PipedOutputStream();
-        PipedInputStream pipeIn = new PipedInputStream(pipeOut);
+        load = new Load(url, attributes);
+        Load existing = loads.putIfAbsent(url, load);
+        if (existing != null)
+            return existing.new LoadStream(false);
         
-        Thread ioThread = new Thread(() -> {
-            ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-            
-            try {
-                IOUtil.pipeTwice(urlIn, pipeOut, byteOut, BLOCK_SIZE);
-            } catch (IOException e) {
-                e.printStackTrace();
-            } finally {
-                try {
-                    urlIn.close();
-                    pipeOut.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+        try {
+            load.open();
+        } catch (IOException | RuntimeException ex) {
+            throw load.fail(ex);
+        }
+        return load.new LoadStream(true);
+    }
+    
+    /**
+     * Returns the contents of a resource as a read-only buffer, which is located off the heap if the resource is at
+     * least {@link #getOffHeapThreshold() the threshold} in size.
+     *
+     * @param url the URL
+     * @return the buffer
+     * @throws IOException if an I/O error occurs
+     */
+    public ByteBuffer getBuffer(@NotNull URL url) throws IOException {
+        Entry entry = cache.get(url);
+        if (entry != null) {
+            ByteBuffer buffer = entry.buffer;
+            if (buffer != null) {
+                hit(url, offHeapPolicy);
+                return buffer.duplicate();
             }
-            
-            cache.put(url, new Entry(attributes, byteOut.toByteArray()));
-        });
+            byte[] data = entry.data;
+            if (data != null) {
+                hit(url, policy);
+                return ByteBuffer.wrap(data).asReadOnlyBuffer();
+            }
+        }
         
-        ioThread.setName("IO-Worker");
-        ioThread.setDaemon(true);
-        ioThread.start();
+        FileAttributes attributes = entry != null? entry.attributes : getAttributes(url);
+        if (isOffHeap(attributes)) {
+            misses.increment();
+            return loadOffHeap(url, attributes).duplicate();
+        }
+        return ByteBuffer.wrap(getAllBytes(url)).asReadOnlyBuffer();
+    }
+    
+    /**
+     * <p>
+     * Returns the contents of a resource encoded with a given coding, if such a variant has been cached.
+     * </p>
+     * <p>
+     * Otherwise, the variant is {@link #prepareVariants(URL) prepared} in the background if the contents of the
+     * resource are cached, and {@code null} is returned, so that the caller can fall back to the contents as they
+     * are. Variants which aren't smaller than the contents are never cached.
+     * </p>
+     *
+     * @param url the URL
+     * @param coding the coding, which is not {@link ContentCoding#IDENTITY}
+     * @return the read-only buffer of the variant or {@code null} if it has not been cached
+     */
+    @Nullable
+    public ByteBuffer getVariant(@NotNull URL url, @NotNull ContentCoding coding) {
+        if (coding == ContentCoding.IDENTITY)
+            throw new IllegalArgumentException("The identity of a resource is not a variant");
         
-        return pipeIn;
+        Entry entry = cache.get(url);
+        if (entry == null)
+            return null;
+        ByteBuffer variant = entry.variants.get(coding);
+        if (variant != null)
+            return variant.duplicate();
+        
+        prepareVariant(url, entry, coding, encodingExecutor);
+        return null;
+    }
+    
+    /**
+     * Returns whether a variant of the contents of a resource has been cached, without preparing it otherwise.
+     *
+     * @param url the URL
+     * @param coding the coding
+     * @return whether the variant has been cached
+     */
+    public boolean hasVariant(@NotNull URL url, @NotNull ContentCoding coding) {
+        Entry entry = cache.get(url);
+        return entry != null && entry.variants.containsKey(coding);
+    }
+    
+    /**
+     * <p>
+     * Returns a strong entity tag of the contents of a resource, which is derived from a 64-bit hash and the length
+     * of the contents. The tag is only computed once while the contents remain cached.
+     * </p>
+     * <p>
+     * This is the tag of the contents as they are. Encoded variants have {@link #getETag(String, ContentCoding) tags
+     * of their own}.
+     * </p>
+     *
+     * @param url the URL
+     * @return the tag, including its quotes
+     * @throws IOException if an I/O error occurs while loading the contents
+     */
+    @NotNull
+    public String getETag(@NotNull URL url) throws IOException {
+        Entry entry = cache.get(url);
+        String etag = entry == null? null : entry.etag;
+        if (etag != null)
+            return etag;
+        
+        Object source = entry == null? null : entry.getSource();
+        if (source == null) {
+            ByteBuffer content = getBuffer(url);
+            entry = cache.get(url);
+            source = entry == null? null : entry.getSource();
+            // contents which are too large to be cached are hashed on every request
+            if (source == null)
+                return toETag(content);
+        }
+        
+        etag = toETag(source instanceof byte[]? ByteBuffer.wrap((byte[]) source) : (ByteBuffer) source);
+        // the contents may have changed in the meantime, in which case the tag is not cached
+        if (entry.getSource() == source)
+            entry.etag = etag;
+        return etag;
     }
     
     public Reader openReader(@NotNull URL url) throws IOException {
@@ -116,20 +317,98 @@ public class ResourceCache {
     
     public FileAttributes getAttributes(@NotNull URL url) throws IOException {
         Entry entry = cache.get(url);
-        if (entry != null)
+        if (entry != null) {
+            attributeHits.increment();
             return entry.attributes;
+        }
+        attributeMisses.increment();
         
         FileAttributes attributes = getAttributes(url.openConnection());
-        cache.put(url, new Entry(attributes, null));
+        Entry existing = cache.putIfAbsent(url, new Entry(attributes, null));
+        if (existing != null)
+            return existing.attributes;
         
-        return attributes;
+        return attributes.getMediaType() != null? attributes : sniff(url, attributes);
     }
     
     // ACTIONS
     
     public void store(@NotNull URL url, @NotNull String type, long lastModified, byte[] data) {
+        store(url, type, lastModified, data, Collections.emptyMap());
+    }
+    
+    /**
+     * Caches contents which have been derived from a resource and from other resources, such as a page which embeds
+     * other resources. The versions of the other resources are kept along with the contents, so that
+     * {@link ResourceSnapshot snapshots} don't restore the contents once any of them has been modified.
+     *
+     * @param url the URL
+     * @param type the media type
+     * @param lastModified the last-modified date of the resource
+     * @param data the derived contents
+     * @param dependencies the URLs of the other resources mapped to their last-modified dates
+     */
+    public void store(@NotNull URL url, @NotNull String type, long lastModified, byte[] data,
+                      @NotNull Map<URL, Long> dependencies) {
         FileAttributes attributes = new CachedBasicFileAttributes(data.length, lastModified, type);
-        cache.put(url, new Entry(attributes, data));
+        Entry entry = new Entry(attributes, data);
+        entry.dependencies = new HashMap<>(dependencies);
+        put(url, entry);
+    }
+    
+    /**
+     * Encodes the cached contents of a resource with all codings in the background, using the
+     * {@link #setEncodingExecutor(Executor) encoding executor}. Every variant is only encoded once while the
+     * contents remain cached.
+     *
+     * @param url the URL
+     */
+    public void prepareVariants(@NotNull URL url) {
+        prepareVariants(url, encodingExecutor);
+    }
+    
+    /**
+     * Encodes the cached contents of a resource with all codings, using a given executor instead of the
+     * {@link #setEncodingExecutor(Executor) encoding executor}. Every variant is only encoded once while the contents
+     * remain cached.
+     *
+     * @param url the URL
+     * @param executor the executor to encode the variants with
+     */
+    public void prepareVariants(@NotNull URL url, @NotNull Executor executor) {
+        Entry entry = cache.get(url);
+        if (entry == null)
+            return;
+        for (ContentCoding coding : ContentCoding.values())
+            if (coding != ContentCoding.IDENTITY)
+                prepareVariant(url, entry, coding, executor);
+    }
+    
+    /**
+     * Drops everything cached of a resource, such as after it has changed.
+     *
+     * @param url the URL
+     */
+    public void invalidate(@NotNull URL url) {
+        // a load which is still in flight may load outdated contents, so it must not be cached
+        loads.remove(url);
+        offHeapLoads.remove(url);
+        
+        Entry entry = cache.remove(url);
+        if (entry != null) {
+            invalidations.increment();
+            policy.onRemove(url);
+            offHeapPolicy.onRemove(url);
+            entry.drop();
+        }
+    }
+    
+    /**
+     * Drops everything cached of all resources.
+     */
+    public void invalidateAll() {
+        for (URL url : cache.keySet())
+            invalidate(url);
     }
     
     /**
@@ -141,6 +420,11 @@ public class ResourceCache {
      * Also, if the attributes of the URL have not been cached before, they will be cached.
      * In that case {@code true} is returned.
      * </p>
+     * <p>
+     * Changes of {@link #setTracked(Predicate) tracked} resources are {@link #invalidate(URL) pushed} to the cache,
+     * so they are never checked. Other resources are checked at most once per
+     * {@link #setRevalidationInterval(long) revalidation interval}.
+     * </p>
      *
      * @param url the URL
      * @return whether the entry in the cache has been updated
@@ -153,32 +437,891 @@ public class ResourceCache {
             return true;
         }
         
+        long now = System.currentTimeMillis();
+        if (entry.isTracked(url) || now - entry.validated < revalidationInterval)
+            return false;
+        entry.validated = now;
+        
         URLConnection connection = url.openConnection();
         
         long oldLastModified = entry.attributes.lastModifiedTime().toMillis();
         long newLastModified = connection.getLastModified();
         
         if (oldLastModified != newLastModified) {
-            entry.attributes = getAttributes(connection);
-            entry.data = null;
+            invalidations.increment();
+            FileAttributes attributes = getAttributes(connection);
+            entry.attributes = attributes;
+            entry.drop();
+            policy.onRemove(url);
+            offHeapPolicy.onRemove(url);
+            // a load which is still in flight may load outdated contents, so it must not be cached
+            loads.remove(url);
+            offHeapLoads.remove(url);
+            if (attributes.getMediaType() == null)
+                sniff(url, attributes);
             return true;
         }
         
         return false;
     }
     
+    /**
+     * Caches the contents of a resource which have been restored from a snapshot, along with their variants, unless
+     * the resource has been cached in the meantime. The contents are kept off the heap.
+     *
+     * @param record the record of the resource
+     */
+    void restore(@NotNull ResourceSnapshot.Record record) {
+        FileAttributes attributes = new CachedBasicFileAttributes(record.contents.remaining(), record.lastModified,
+            record.type);
+        Entry entry = new Entry(attributes, null);
+        entry.buffer = record.contents;
+        entry.dependencies = record.dependencies;
+        entry.variants.putAll(record.variants);
+        entry.encodings.addAll(record.variants.keySet());
+        
+        if (cache.putIfAbsent(record.url, entry) == null)
+            offHeapPolicy.onWrite(record.url, entry, entry.getWeight());
+    }
+    
+    /**
+     * Returns the records of all resources whose contents are cached, apart from those of at least
+     * {@link #getOffHeapThreshold() the threshold} in size, which are quickly mapped or loaded again anyway.
+     *
+     * @return the records
+     */
+    @NotNull
+    List<ResourceSnapshot.Record> getRecords() {
+        List<ResourceSnapshot.Record> records = new ArrayList<>();
+        for (Map.Entry<URL, Entry> mapping : cache.entrySet()) {
+            Entry entry = mapping.getValue();
+            Object source = entry.getSource();
+            if (source == null)
+                continue;
+            
+            ByteBuffer contents = source instanceof byte[]?
+                ByteBuffer.wrap((byte[]) source) : ((ByteBuffer) source).duplicate();
+            if (contents.remaining() >= offHeapThreshold)
+                continue;
+            
+            Map<ContentCoding, ByteBuffer> variants = new EnumMap<>(ContentCoding.class);
+            variants.putAll(entry.variants);
+            
+            FileAttributes attributes = entry.attributes;
+            records.add(new ResourceSnapshot.Record(mapping.getKey(), attributes.lastModifiedTime().toMillis(),
+                attributes.getMediaType(), contents, variants, entry.dependencies));
+        }
+        return records;
+    }
+    
+    // GETTERS
+    
+    /**
+     * Returns the media types which the types of resources are resolved with, which can be overridden.
+     *
+     * @return the media types
+     */
+    public MediaTypes getMediaTypes() {
+        return mediaTypes;
+    }
+    
+    /**
+     * Returns the maximum amount of bytes of cached data.
+     *
+     * @return the maximum size in bytes
+     */
+    public long getMaximumSize() {
+        return policy.getMaximum();
+    }
+    
+    /**
+     * Returns the amount of bytes of data which are currently cached on the heap.
+     *
+     * @return the size in bytes
+     */
+    public long getSize() {
+        return policy.getWeightedSize();
+    }
+    
+    /**
+     * Returns the maximum amount of bytes of data cached off the heap.
+     *
+     * @return the maximum size in bytes
+     */
+    public long getMaximumOffHeapSize() {
+        return offHeapPolicy.getMaximum();
+    }
+    
+    /**
+     * Returns the amount of bytes of data which are currently cached off the heap.
+     *
+     * @return the size in bytes
+     */
+    public long getOffHeapSize() {
+        return offHeapPolicy.getWeightedSize();
+    }
+    
+    /**
+     * Returns the size from which on resources are cached off the heap.
+     *
+     * @return the threshold in bytes
+     */
+    public long getOffHeapThreshold() {
+        return offHeapThreshold;
+    }
+    
+    /**
+     * Returns the amount of milliseconds after which resources which are not tracked are checked for changes again.
+     *
+     * @return the interval in milliseconds
+     */
+    public long getRevalidationInterval() {
+        return revalidationInterval;
+    }
+    
+    /**
+     * Returns how often cached data has been requested and found.
+     *
+     * @return the amount of hits
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+    
+    /**
+     * Returns how often cached data has been requested but had to be loaded.
+     *
+     * @return the amount of misses
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+    
+    /**
+     * Returns the amount of requests of attributes which have been cached.
+     *
+     * @return the amount of attribute hits
+     */
+    public long getAttributeHitCount() {
+        return attributeHits.sum();
+    }
+    
+    /**
+     * Returns the amount of requests of attributes which had to be loaded.
+     *
+     * @return the amount of attribute misses
+     */
+    public long getAttributeMissCount() {
+        return attributeMisses.sum();
+    }
+    
+    /**
+     * Returns the amount of cached resources which have been dropped because they have changed or have been
+     * {@link #invalidate(URL) invalidated}.
+     *
+     * @return the amount of invalidations
+     */
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+    
+    /**
+     * Returns the amount of resources which are cached, including those of which only the attributes are cached.
+     *
+     * @return the amount of entries
+     */
+    public int getEntryCount() {
+        return cache.size();
+    }
+    
+    /**
+     * Returns the histogram of the times it took to load the contents of resources on misses.
+     *
+     * @return the load times
+     */
+    @NotNull
+    public LatencyHistogram getLoadTimes() {
+        return loadTimes;
+    }
+    
+    /**
+     * Returns the executor on which variants of the contents of resources are encoded in the background.
+     *
+     * @return the encoding executor
+     */
+    @NotNull
+    public Executor getEncodingExecutor() {
+        return encodingExecutor;
+    }
+    
+    /**
+     * Returns how often data has been evicted or not been admitted into the cache.
+     *
+     * @return the amount of evictions
+     */
+    public long getEvictionCount() {
+        return policy.getEvictionCount() + offHeapPolicy.getEvictionCount();
+    }
+    
+    /**
+     * Returns the total amount of bytes which have been evicted or not been admitted into the cache.
+     *
+     * @return the amount of evicted bytes
+     */
+    public long getEvictedBytes() {
+        return policy.getEvictionWeight() + offHeapPolicy.getEvictionWeight();
+    }
+    
+    // SETTERS
+    
+    /**
+     * Changes the maximum amount of bytes of cached data, evicting data if necessary.
+     *
+     * @param maximumSize the maximum size in bytes
+     */
+    public void setMaximumSize(long maximumSize) {
+        policy.setMaximum(maximumSize);
+    }
+    
+    /**
+     * Changes the maximum amount of bytes of data cached off the heap, evicting data if necessary.
+     *
+     * @param maximumSize the maximum size in bytes
+     */
+    public void setMaximumOffHeapSize(long maximumSize) {
+        offHeapPolicy.setMaximum(maximumSize);
+    }
+    
+    /**
+     * Changes the size from which on resources are cached off the heap. Resources which have already been cached
+     * remain where they are.
+     *
+     * @param threshold the threshold in bytes
+     */
+    public void setOffHeapThreshold(long threshold) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("Threshold must not be negative");
+        this.offHeapThreshold = threshold;
+    }
+    
+    /**
+     * Changes which resources are tracked, meaning that their changes are {@link #invalidate(URL) pushed} to the cache
+     * or that they can't change at all, so that they never have to be checked for changes.
+     *
+     * @param tracked the predicate testing the URLs of resources
+     */
+    public void setTracked(@NotNull Predicate<URL> tracked) {
+        this.tracked = tracked;
+    }
+    
+    /**
+     * Changes the amount of milliseconds after which resources which are not tracked are checked for changes again.
+     *
+     * @param interval the interval in milliseconds
+     */
+    public void setRevalidationInterval(long interval) {
+        if (interval < 0)
+            throw new IllegalArgumentException("Interval must not be negative");
+        this.revalidationInterval = interval;
+    }
+    
+    /**
+     * Changes the executor on which variants of the contents of resources are encoded.
+     *
+     * @param executor the executor
+     */
+    public void setEncodingExecutor(@NotNull Executor executor) {
+        this.encodingExecutor = executor;
+    }
+    
+    // PRIVATE
+    
+    private FileAttributes getAttributes(URLConnection connection) {
+        long lastModified = connection.getLastModified();
+        long length = connection.getContentLengthLong();
+        String type = mediaTypes.fromName(connection.getURL().getPath());
+        
+        return new CachedBasicFileAttributes(length, lastModified, type);
+    }
+    
+    /**
+     * Identifies the type of a resource by the first bytes of its contents. These are read through the cache, so that
+     * they are taken from the load of the contents rather than from a stream of their own.
+     *
+     * @param url the URL
+     * @param attributes the cached attributes of the resource, which lack a type
+     * @return the attributes including the type
+     * @throws IOException if an I/O error occurs
+     */
+    private FileAttributes sniff(URL url, FileAttributes attributes) throws IOException {
+        byte[] prefix = new byte[MediaTypes.SNIFF_LIMIT];
+        int length = 0;
+        // closing the stream completes the load, so the contents are cached for the request which follows
+        try (InputStream stream = openStream(url)) {
+            int read;
+            while (length < prefix.length && (read = stream.read(prefix, length, prefix.length - length)) >= 0)
+                length += read;
+        }
+        
+        FileAttributes sniffed = new CachedBasicFileAttributes(attributes.size(),
+            attributes.lastModifiedTime().toMillis(), mediaTypes.sniff(prefix, length));
+        // the entry has been replaced by the load, but with the same attributes unless the resource has changed
+        Entry entry = cache.get(url);
+        if (entry != null && entry.attributes == attributes)
+            entry.attributes = sniffed;
+        return sniffed;
+    }
+    
+    private void hit(URL url, TinyLfuPolicy<URL, Entry> policy) {
+        hits.increment();
+        policy.onRead(url);
+    }
+    
+    private boolean isOffHeap(FileAttributes attributes) {
+        // buffers are limited to 2 GiB
+        return attributes.size() >= offHeapThreshold && attributes.size() <= Integer.MAX_VALUE;
+    }
+    
+    /**
+     * Loads a resource into the off-heap tier. Concurrent misses of the same resource wait for a single load.
+     *
+     * @param url the URL
+     * @param attributes the attributes of the resource
+     * @return the read-only buffer
+     * @throws IOException if an I/O error occurs
+     */
+    private ByteBuffer loadOffHeap(URL url, FileAttributes attributes) throws IOException {
+        CompletableFuture<ByteBuffer> load = new CompletableFuture<>();
+        CompletableFuture<ByteBuffer> existing = offHeapLoads.putIfAbsent(url, load);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (ExecutionException ex) {
+                throw new IOException("Loading " + url + " failed", ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + url);
+            }
+        }
+        
+        ByteBuffer buffer;
+        final long started = System.nanoTime();
+        try {
+            buffer = url.getProtocol().equals("file")? map(url) : readDirect(url, (int) attributes.size());
+        } catch (IOException | RuntimeException ex) {
+            offHeapLoads.remove(url, load);
+            load.completeExceptionally(ex);
+            throw ex;
+        }
+        
+        loadTimes.record(System.nanoTime() - started);
+        
+        // only cache the contents if the load hasn't been invalidated in the meantime
+        if (offHeapLoads.remove(url, load)) {
+            Entry entry = new Entry(attributes, null);
+            entry.buffer = buffer;
+            cache.put(url, entry);
+            offHeapPolicy.onWrite(url, entry, buffer.capacity());
+        }
+        load.complete(buffer);
+        return buffer;
+    }
+    
+    /**
+     * Returns the strong entity tag of a variant of contents, which must differ from the tag of the contents.
+     *
+     * @param etag the tag of the contents
+     * @param coding the coding of the variant
+     * @return the tag of the variant
+     */
+    @NotNull
+    public static String getETag(@NotNull String etag, @NotNull ContentCoding coding) {
+        if (coding == ContentCoding.IDENTITY)
+            return etag;
+        return etag.substring(0, etag.length() - 1) + '-' + coding.getName() + '"';
+    }
+    
+    private static String toETag(ByteBuffer content) {
+        return '"' + Long.toHexString(hash(content)) + '-' + Long.toHexString(content.remaining()) + '"';
+    }
+    
+    /**
+     * Hashes the remaining contents of a buffer eight bytes at a time, mixing the words with the finalizer of
+     * SplitMix64.
+     *
+     * @param content the contents
+     * @return the hash
+     */
+    private static long hash(ByteBuffer content) {
+        ByteBuffer buffer = content.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        long hash = 0x9E3779B97F4A7C15L ^ buffer.remaining();
+        while (buffer.remaining() >= 8)
+            hash = Long.rotateLeft(hash ^ mix(buffer.getLong()), 27) * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+        
+        long tail = 0;
+        for (int shift = 0; buffer.hasRemaining(); shift += 8)
+            tail |= (buffer.get() & 0xFFL) << shift;
+        return mix(hash ^ mix(tail));
+    }
+    
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    private static ByteBuffer map(URL url) throws IOException {
+        Path file;
+        try {
+            file = Paths.get(url.toURI());
+        } catch (Exception ex) {
+            throw new IOException("Can't map " + url, ex);
+        }
+        
+        // the mapping remains valid after the channel has been closed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+    
+    private static ByteBuffer readDirect(URL url, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        try (ReadableByteChannel channel = Channels.newChannel(url.openStream())) {
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0);
+            if (!buffer.hasRemaining() && channel.read(ByteBuffer.allocate(1)) >= 0)
+                throw new IOException(url + " has grown while being loaded");
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+    
+    private void prepareVariant(URL url, Entry entry, ContentCoding coding, Executor executor) {
+        Object source = entry.getSource();
+        if (source == null || !entry.encodings.add(coding))
+            return;
+        
+        try {
+            executor.execute(() -> encodeVariant(url, entry, coding, source));
+        } catch (RejectedExecutionException ex) {
+            entry.encodings.remove(coding);
+        }
+    }
+    
+    private void encodeVariant(URL url, Entry entry, ContentCoding coding, Object source) {
+        // variants are kept in the same tier as the contents
+        ByteBuffer variant;
+        TinyLfuPolicy<URL, Entry> policy;
+        try {
+            if (source instanceof ByteBuffer) {
+                variant = encodeDirect(coding, ((ByteBuffer) source).duplicate());
+                policy = offHeapPolicy;
+            }
+            else {
+                byte[] data = (byte[]) source;
+                byte[] encoded = coding.encode(ByteBuffer.wrap(data), Deflater.BEST_COMPRESSION);
+                variant = encoded.length < data.length? ByteBuffer.wrap(encoded) : null;
+                policy = this.policy;
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return;
+        }
+        if (variant == null)
+            return;
+        
+        entry.variants.put(coding, variant.asReadOnlyBuffer());
+        // the contents may have been dropped in the meantime
+        if (entry.getSource() != source) {
+            entry.variants.remove(coding);
+            return;
+        }
+        policy.onUpdate(url, entry.getWeight());
+    }
+    
+    /**
+     * Encodes contents which are cached off the heap straight into a direct buffer, a block at a time, so that
+     * neither the contents nor the variant are ever copied onto the heap. Such contents are large, so they are only
+     * compressed at the default level.
+     *
+     * @param coding the coding
+     * @param content the contents, which are consumed
+     * @return the direct buffer of the variant or {@code null} if it isn't smaller than the contents
+     * @throws IOException if an I/O error occurs
+     */
+    @Nullable
+    private static ByteBuffer encodeDirect(ContentCoding coding, ByteBuffer content) throws IOException {
+        // a variant which doesn't fit into fewer bytes than the contents is never cached
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(0, content.remaining() - 1));
+        BufferOutputStream encoded = new BufferOutputStream(buffer);
+        try (OutputStream stream = coding.openStream(encoded, Deflater.DEFAULT_COMPRESSION)) {
+            byte[] block = new byte[BLOCK_SIZE];
+            while (content.hasRemaining() && !encoded.overflowed) {
+                int length = Math.min(block.length, content.remaining());
+                content.get(block, 0, length);
+                stream.write(block, 0, length);
+            }
+        }
+        if (encoded.overflowed)
+            return null;
+        
+        // the variant only takes up as much of the tier as it needs
+        buffer.flip();
+        ByteBuffer variant = ByteBuffer.allocateDirect(buffer.remaining()).put(buffer);
+        variant.flip();
+        return variant;
+    }
+    
+    private void put(URL url, Entry entry) {
+        cache.put(url, entry);
+        policy.onWrite(url, entry, entry.data.length);
+    }
+    
     // SUBCLASSES
     
-    private static class Entry {
+    /**
+     * <p>
+     * A load of the contents of a resource which is shared by all streams opened while it is in flight.
+     * </p>
+     * <p>
+     * Only one stream at a time reads from the source, outside of the lock, and appends to the buffer. Every other
+     * stream reads from the buffer and waits for it to grow. Whenever no stream is reading from the source, the next
+     * stream which needs more bytes takes over, so that no stream depends on how fast another one is consumed.
+     * </p>
+     */
+    private class Load {
+        
+        private final URL url;
+        private final FileAttributes attributes;
+        
+        private final Lock lock = new ReentrantLock();
+        private final Condition grown = lock.newCondition();
+        
+        private InputStream source;
+        private byte[] buffer;
+        private int size;
+        // the stream which creates the load fills it until it has opened the source
+        private boolean filling = true;
+        private boolean complete;
+        private IOException failure;
+        private long started;
+        
+        private Load(URL url, FileAttributes attributes) {
+            this.url = url;
+            this.attributes = attributes;
+            
+            // one more byte than expected, so that the end of the source can be read without growing the buffer
+            long expectedSize = attributes.size();
+            this.buffer = new byte[expectedSize > 0 && expectedSize < Integer.MAX_VALUE - 8?
+                (int) expectedSize + 1 : BLOCK_SIZE];
+        }
+        
+        private void open() throws IOException {
+            started = System.nanoTime();
+            source = url.openStream();
+            
+            lock.lock();
+            try {
+                filling = false;
+                grown.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Waits until the buffer holds more bytes than a stream has consumed or the load is complete. If no other
+         * stream is reading from the source in the meantime, the calling stream fills the buffer itself.
+         *
+         * @param position the amount of bytes the stream has consumed
+         * @return the size of the buffer, which is only {@code position} if the load is complete
+         * @throws IOException if the load has failed or stalled, or if an I/O error occurs
+         */
+        private int await(int position) throws IOException {
+            while (true) {
+                lock.lock();
+                try {
+                    long nanos = STALL_TIMEOUT;
+                    while (position == size && !complete && failure == null && filling) {
+                        if (nanos <= 0)
+                            throw new IOException("Loading " + url + " has stalled");
+                        nanos = grown.awaitNanos(nanos);
+                    }
+                    
+                    if (failure != null)
+                        throw new IOException("Loading " + url + " failed", failure);
+                    if (position < size || complete)
+                        return size;
+                    filling = true;
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for " + url);
+                } finally {
+                    lock.unlock();
+                }
+                
+                fill();
+            }
+        }
+        
+        /**
+         * Reads the next block from the source into the buffer.
+         *
+         * @return whether the load is still in flight
+         * @throws IOException if an I/O error occurs
+         */
+        private boolean fill() throws IOException {
+            // only the filling stream modifies the buffer, the others only read what has been appended under the lock
+            if (size == buffer.length) {
+                lock.lock();
+                try {
+                    buffer = Arrays.copyOf(buffer, Math.max(BLOCK_SIZE, buffer.length * 2));
+                } finally {
+                    lock.unlock();
+                }
+            }
+            
+            int read;
+            try {
+                read = source.read(buffer, size, buffer.length - size);
+            } catch (IOException | RuntimeException ex) {
+                throw fail(ex);
+            }
+            
+            lock.lock();
+            try {
+                if (read < 0)
+                    complete = true;
+                else size += read;
+                filling = false;
+                grown.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            
+            if (read < 0) {
+                source.close();
+                loadTimes.record(System.nanoTime() - started);
+                // only cache the contents if the load hasn't been invalidated in the meantime
+                if (loads.remove(url, this))
+                    put(url, new Entry(attributes, size == buffer.length? buffer : Arrays.copyOf(buffer, size)));
+            }
+            return read >= 0;
+        }
+        
+        /**
+         * Aborts the load, failing all streams.
+         *
+         * @param cause the exception which caused the failure
+         * @return the failure to throw
+         */
+        private IOException fail(Exception cause) {
+            IOException failure = cause instanceof IOException? (IOException) cause : new IOException(cause);
+            loads.remove(url, this);
+            lock.lock();
+            try {
+                this.failure = failure;
+                grown.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (IOException ex) {
+                    failure.addSuppressed(ex);
+                }
+            }
+            return failure;
+        }
+        
+        private class LoadStream extends InputStream {
+            
+            private boolean opening;
+            private int position;
+            
+            private LoadStream(boolean opening) {
+                this.opening = opening;
+            }
+            
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0? -1 : b[0] & 0xFF;
+            }
+            
+            @Override
+            public int read(@NotNull byte[] b, int off, int len) throws IOException {
+                if (len == 0)
+                    return 0;
+                if (await(position) == position)
+                    return -1;
+                
+                lock.lock();
+                try {
+                    int n = Math.min(len, size - position);
+                    System.arraycopy(buffer, position, b, off, n);
+                    position += n;
+                    return n;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            
+            @Override
+            public int available() {
+                lock.lock();
+                try {
+                    return size - position;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            
+            @Override
+            public void close() throws IOException {
+                if (!opening)
+                    return;
+                opening = false;
+                
+                // the contents are only cached once the source has been read to its end, so finish the load
+                for (int end = await(position); end > position; end = await(position))
+                    position = end;
+            }
+            
+        }
         
-        private FileAttributes attributes;
-        private byte[] data;
+    }
+    
+    /**
+     * Stream of the remaining contents of a buffer.
+     */
+    private static class BufferInputStream extends InputStream {
+        
+        private final ByteBuffer buffer;
+        
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public int read() {
+            return buffer.hasRemaining()? buffer.get() & 0xFF : -1;
+        }
+        
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+        
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+        
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+        
+    }
+    
+    /**
+     * Stream into a buffer, which drops everything written to it once the buffer is full.
+     */
+    private static class BufferOutputStream extends OutputStream {
+        
+        private final ByteBuffer buffer;
+        private boolean overflowed = false;
+        
+        private BufferOutputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public void write(int b) {
+            if (buffer.hasRemaining())
+                buffer.put((byte) b);
+            else
+                overflowed = true;
+        }
+        
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) {
+            if (overflowed || len > buffer.remaining())
+                overflowed = true;
+            else
+                buffer.put(b, off, len);
+        }
+        
+    }
+    
+    private class Entry {
+        
+        private volatile FileAttributes attributes;
+        private volatile byte[] data;
+        private volatile ByteBuffer buffer;
+        
+        private final Map<ContentCoding, ByteBuffer> variants = new ConcurrentHashMap<>();
+        private final Set<ContentCoding> encodings = ConcurrentHashMap.newKeySet();
+        private volatile Map<URL, Long> dependencies = Collections.emptyMap();
+        
+        private volatile String etag;
+        private volatile long validated = System.currentTimeMillis();
+        private volatile Boolean tracked;
         
         public Entry(@NotNull FileAttributes attributes, @Nullable byte[] data) {
             this.attributes = attributes;
             this.data = data;
         }
         
+        boolean isTracked(URL url) {
+            Boolean tracked = this.tracked;
+            if (tracked == null)
+                this.tracked = tracked = ResourceCache.this.tracked.test(url);
+            return tracked;
+        }
+        
+        /**
+         * Returns the contents, which are either the data on the heap or the buffer off the heap.
+         *
+         * @return the contents or {@code null} if they are not cached
+         */
+        @Nullable
+        Object getSource() {
+            byte[] data = this.data;
+            return data != null? data : buffer;
+        }
+        
+        long getWeight() {
+            Object source = getSource();
+            long weight = source instanceof byte[]? ((byte[]) source).length :
+                source instanceof ByteBuffer? ((ByteBuffer) source).capacity() : 0;
+            for (ByteBuffer variant : variants.values())
+                weight += variant.capacity();
+            return weight;
+        }
+        
+        /**
+         * Drops the contents and their variants, keeping the attributes.
+         */
+        void drop() {
+            data = null;
+            buffer = null;
+            variants.clear();
+            encodings.clear();
+            etag = null;
+        }
+        
     }
     
     private static class CachedBasicFileAttributes implements FileAttributes {
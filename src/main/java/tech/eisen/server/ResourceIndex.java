@@ -0,0 +1,458 @@
+package tech.eisen.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * <p>
+ * An index mapping request paths to the {@link URL URLs} of the resources they resolve to.
+ * </p>
+ * <p>
+ * The index is built once at startup from the resources below a classpath root and from the files of the public
+ * directory, so that resolving a path is a hash lookup instead of probing the class loader and the file system.
+ * Resolution follows these rules, in order of precedence:
+ * <ol>
+ *     <li>{@code /} resolves to {@code <root>/index.html}</li>
+ *     <li>{@code /<path>} resolves to the classpath resource {@code <root>/<path>}</li>
+ *     <li>{@code /<path>} resolves to the classpath resource {@code <root>/<path>.html}</li>
+ *     <li>{@code /<path>} resolves to the file {@code <directory>/<path>}</li>
+ * </ol>
+ * </p>
+ * <p>
+ * Classpath resources can't be added or removed at runtime, so that part of the index is immutable. The directory is
+ * watched by a {@link WatchService} which adds and removes files as they are created and deleted. If the directory
+ * can't be watched, paths missing from the index are looked up in the file system and the misses are remembered for a
+ * short time in a negative-lookup set.
+ * </p>
+ * <p>
+ * The same watch service also watches exploded classpath directories, and every change of a file in them or in the
+ * directory is reported to the {@link #addChangeListener(Consumer) change listeners}, which lets caches drop outdated
+ * contents instead of checking for changes on every request. Resources in jars never change.
+ * </p>
+ */
+public class ResourceIndex implements Closeable {
+    
+    private final static String HTML_EXTENSION = ".html";
+    private final static int MAX_NEGATIVE_LOOKUPS = 10_000;
+    private final static long NEGATIVE_LOOKUP_MILLIS = 5_000;
+    
+    private final ClassLoader classLoader;
+    private final String root;
+    private final Path directory;
+    
+    private Map<String, URL> classPathIndex = Collections.emptyMap();
+    private final Map<String, URL> directoryIndex = new ConcurrentHashMap<>();
+    
+    private final Set<Path> excluded = ConcurrentHashMap.newKeySet();
+    private final Set<String> negativeLookups = ConcurrentHashMap.newKeySet();
+    private volatile long negativeLookupsCleared;
+    
+    private final List<Path> classPathDirectories = new ArrayList<>();
+    private final List<Consumer<URL>> changeListeners = new CopyOnWriteArrayList<>();
+    
+    private WatchService watchService;
+    private volatile boolean watching;
+    
+    /**
+     * Constructs a new, empty index.
+     *
+     * @param classLoader the class loader providing the classpath resources
+     * @param root the classpath root of the resources, such as {@code html}
+     * @param directory the public directory
+     */
+    public ResourceIndex(@NotNull ClassLoader classLoader, @NotNull String root, @NotNull Path directory) {
+        this.classLoader = classLoader;
+        this.root = root;
+        this.directory = directory.toAbsolutePath().normalize();
+    }
+    
+    /**
+     * Indexes the classpath resources and the directory and starts watching the directory for changes.
+     *
+     * @throws IOException if an I/O error occurs while indexing
+     */
+    public void build() throws IOException {
+        Map<String, URL> classPathIndex = new HashMap<>();
+        indexClassPath(classPathIndex);
+        this.classPathIndex = Collections.unmodifiableMap(classPathIndex);
+        
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            watching = true;
+        } catch (IOException | UnsupportedOperationException ex) {
+            System.err.println("Can't watch " + directory + ", falling back to file system lookups: " + ex);
+        }
+        indexDirectory(directory);
+        
+        if (watching) {
+            for (Path classPathDirectory : classPathDirectories)
+                watchTree(classPathDirectory);
+            
+            Thread thread = new Thread(this::watch, "Resource-Watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+    
+    /**
+     * Excludes a file of the directory from the index, such as a file which the server writes itself and which must
+     * not be served. Files have to be excluded before the index is built.
+     *
+     * @param file the file
+     */
+    public void exclude(@NotNull Path file) {
+        excluded.add(file.toAbsolutePath().normalize());
+    }
+    
+    /**
+     * Resolves a request path.
+     *
+     * @param path the decoded request path
+     * @return the URL of the resource or {@code null} if no resource exists for the path
+     */
+    @Nullable
+    public URL find(@NotNull String path) {
+        URL url = classPathIndex.get(path);
+        if (url == null)
+            url = directoryIndex.get(path);
+        if (url != null || watching)
+            return url;
+        
+        return lookUpFile(path);
+    }
+    
+    /**
+     * Returns whether changes of a resource are {@link #addChangeListener(Consumer) reported}, or whether the resource
+     * can't change at all because it is located in a jar. Other resources have to be checked for changes.
+     *
+     * @param url the URL of the resource
+     * @return whether the resource is tracked
+     */
+    public boolean isTracked(@NotNull URL url) {
+        if (url.getProtocol().equals("jar"))
+            return true;
+        if (!watching || !url.getProtocol().equals("file"))
+            return false;
+        
+        Path file;
+        try {
+            file = Paths.get(url.toURI()).toAbsolutePath().normalize();
+        } catch (Exception ex) {
+            return false;
+        }
+        if (file.startsWith(directory))
+            return true;
+        for (Path classPathDirectory : classPathDirectories)
+            if (file.startsWith(classPathDirectory))
+                return true;
+        return false;
+    }
+    
+    /**
+     * <p>
+     * Adds a listener which is notified of the URL of every file which has been created, modified or deleted in the
+     * directory or an exploded classpath directory, while those are {@link #isWatching() watched}.
+     * </p>
+     * <p>
+     * If changes have been lost, the listener is notified with {@code null}, meaning that any resource may have
+     * changed. Listeners are notified on the watching thread.
+     * </p>
+     *
+     * @param listener the listener
+     */
+    public void addChangeListener(@NotNull Consumer<URL> listener) {
+        changeListeners.add(listener);
+    }
+    
+    /**
+     * Returns the distinct URLs of the indexed resources, such as for loading them ahead of the first request.
+     *
+     * @param directory whether to include the files of the public directory
+     * @return the URLs
+     */
+    @NotNull
+    public Set<URL> getResources(boolean directory) {
+        Set<URL> urls = new LinkedHashSet<>(classPathIndex.values());
+        if (directory)
+            urls.addAll(directoryIndex.values());
+        return urls;
+    }
+    
+    /**
+     * Returns the distinct URLs of the indexed resources whose request paths start with a prefix.
+     *
+     * @param prefix the prefix of the request paths, such as {@code /style/}
+     * @return the URLs
+     */
+    @NotNull
+    public Set<URL> findAll(@NotNull String prefix) {
+        Set<URL> urls = new LinkedHashSet<>();
+        for (Map<String, URL> index : Arrays.asList(classPathIndex, directoryIndex))
+            for (Map.Entry<String, URL> entry : index.entrySet())
+                if (entry.getKey().startsWith(prefix))
+                    urls.add(entry.getValue());
+        return urls;
+    }
+    
+    /**
+     * Returns the amount of indexed request paths.
+     *
+     * @return the amount of indexed paths
+     */
+    public int size() {
+        return classPathIndex.size() + directoryIndex.size();
+    }
+    
+    /**
+     * Returns whether the directory is being watched for changes.
+     *
+     * @return whether the directory is being watched
+     */
+    public boolean isWatching() {
+        return watching;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        watching = false;
+        if (watchService != null)
+            watchService.close();
+    }
+    
+    // CLASSPATH
+    
+    private void indexClassPath(Map<String, URL> index) throws IOException {
+        Set<String> names = new LinkedHashSet<>();
+        
+        Enumeration<URL> roots = classLoader.getResources(root);
+        while (roots.hasMoreElements()) {
+            URL url = roots.nextElement();
+            if (url.getProtocol().equals("file")) {
+                try {
+                    Path rootDirectory = Paths.get(url.toURI());
+                    collectDirectoryNames(rootDirectory, names);
+                    classPathDirectories.add(rootDirectory.toAbsolutePath().normalize());
+                } catch (Exception ex) {
+                    throw new IOException("Can't index " + url, ex);
+                }
+            }
+            else collectJarNames(url, names);
+        }
+        
+        // the class loader decides which of several resources with the same name is used
+        for (String name : names) {
+            URL url = classLoader.getResource(name);
+            if (url != null)
+                index.put(name.substring(root.length()), url);
+        }
+        for (String name : names) {
+            if (!name.endsWith(HTML_EXTENSION))
+                continue;
+            String path = name.substring(root.length(), name.length() - HTML_EXTENSION.length());
+            index.putIfAbsent(path, index.get(name.substring(root.length())));
+        }
+        
+        URL indexPage = index.get("/index" + HTML_EXTENSION);
+        if (indexPage != null)
+            index.put("/", indexPage);
+    }
+    
+    private void collectDirectoryNames(Path rootDirectory, Set<String> names) throws IOException {
+        try (Stream<Path> files = Files.walk(rootDirectory)) {
+            files.filter(Files::isRegularFile).forEach(file -> names.add(root + toRequestPath(rootDirectory, file)));
+        }
+    }
+    
+    private void collectJarNames(URL url, Set<String> names) throws IOException {
+        URLConnection connection = url.openConnection();
+        if (!(connection instanceof JarURLConnection))
+            throw new IOException("Can't index resources at " + url);
+        
+        connection.setUseCaches(false);
+        try (JarFile jar = ((JarURLConnection) connection).getJarFile()) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().startsWith(root + "/"))
+                    names.add(entry.getName());
+            }
+        }
+    }
+    
+    // DIRECTORY
+    
+    /**
+     * Indexes a file or all files of a directory tree and watches the directories.
+     *
+     * @param start the file or directory
+     * @throws IOException if an I/O error occurs
+     */
+    private void indexDirectory(Path start) throws IOException {
+        if (!Files.exists(start))
+            return;
+        
+        try (Stream<Path> files = Files.walk(start)) {
+            files.forEach(file -> {
+                try {
+                    if (Files.isDirectory(file)) {
+                        if (watching)
+                            file.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                    }
+                    else if (Files.isRegularFile(file) && !excluded.contains(file))
+                        directoryIndex.put(toRequestPath(directory, file), file.toUri().toURL());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+    
+    private void removeDirectoryEntries(String path) {
+        URL url = directoryIndex.remove(path);
+        if (url != null)
+            notifyChange(url);
+        
+        String prefix = path + "/";
+        directoryIndex.entrySet().removeIf(entry -> {
+            if (!entry.getKey().startsWith(prefix))
+                return false;
+            notifyChange(entry.getValue());
+            return true;
+        });
+    }
+    
+    // CHANGES
+    
+    /**
+     * Watches all directories of a tree, which is only used for classpath directories.
+     *
+     * @param start the root of the tree
+     * @throws IOException if an I/O error occurs
+     */
+    private void watchTree(Path start) throws IOException {
+        try (Stream<Path> files = Files.walk(start)) {
+            files.filter(Files::isDirectory).forEach(file -> {
+                try {
+                    file.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+    
+    private void notifyChange(@Nullable URL url) {
+        for (Consumer<URL> listener : changeListeners) {
+            try {
+                listener.accept(url);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+    
+    private void watch() {
+        while (watching) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            }
+            
+            Path parent = (Path) key.watchable();
+            final boolean inDirectory = parent.startsWith(directory);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                try {
+                    if (event.kind() == OVERFLOW) {
+                        // events have been lost, so start over
+                        if (inDirectory) {
+                            directoryIndex.clear();
+                            indexDirectory(directory);
+                        }
+                        notifyChange(null);
+                        continue;
+                    }
+                    
+                    Path file = parent.resolve((Path) event.context());
+                    if (!inDirectory)
+                        handleClassPathEvent(event.kind(), file);
+                    else if (event.kind() == ENTRY_CREATE)
+                        indexDirectory(file);
+                    else if (event.kind() == ENTRY_DELETE)
+                        removeDirectoryEntries(toRequestPath(directory, file));
+                    
+                    if (event.kind() != ENTRY_DELETE && Files.isRegularFile(file) && !excluded.contains(file))
+                        notifyChange(file.toUri().toURL());
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            key.reset();
+        }
+    }
+    
+    private void handleClassPathEvent(WatchEvent.Kind<?> kind, Path file) throws IOException {
+        if (kind == ENTRY_CREATE && Files.isDirectory(file))
+            watchTree(file);
+        else if (kind == ENTRY_DELETE)
+            notifyChange(file.toUri().toURL());
+    }
+    
+    /**
+     * Looks up a path in the file system, which is only necessary if the directory is not watched.
+     *
+     * @param path the request path
+     * @return the URL of the file or {@code null} if it doesn't exist
+     */
+    @Nullable
+    private URL lookUpFile(String path) {
+        long now = System.currentTimeMillis();
+        if (now - negativeLookupsCleared > NEGATIVE_LOOKUP_MILLIS || negativeLookups.size() > MAX_NEGATIVE_LOOKUPS) {
+            negativeLookups.clear();
+            negativeLookupsCleared = now;
+        }
+        if (negativeLookups.contains(path))
+            return null;
+        
+        try {
+            Path file = directory.resolve(path.startsWith("/")? path.substring(1) : path).normalize();
+            if (file.startsWith(directory) && Files.isRegularFile(file) && !excluded.contains(file))
+                return file.toUri().toURL();
+        } catch (InvalidPathException | IOException ex) {
+            // not a valid file name, so there is no such file either
+        }
+        
+        negativeLookups.add(path);
+        return null;
+    }
+    
+    private static String toRequestPath(Path base, Path file) {
+        StringBuilder builder = new StringBuilder();
+        for (Path name : base.relativize(file))
+            builder.append('/').append(name);
+        return builder.length() == 0? "/" : builder.toString();
+    }
+    
+}
@@ -0,0 +1,300 @@
+package tech.eisen.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import tech.eisen.server.content.ContentCoding;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * A file holding the cached contents of resources along with their compressed variants, so that the cache comes back
+ * right away after a restart, including the output of the pre-processor.
+ * </p>
+ * <p>
+ * The file is memory-mapped when it is restored and the contents are cached as slices of the mapping, so restoring
+ * doesn't copy them. The file is validated by a checksum and a fingerprint of the server configuration the contents
+ * have been produced with. Resources which have been modified since the snapshot was saved are not restored, nor are
+ * contents which have been derived from other resources, such as pages embedding them, once any of those has been
+ * modified.
+ * </p>
+ * <p>
+ * A snapshot is saved into a temporary file which then replaces the snapshot, so mappings of the previous snapshot
+ * remain valid.
+ * </p>
+ */
+class ResourceSnapshot {
+    
+    private final static int MAGIC = 0x45534e50, VERSION = 2;
+    private final static int CHECKSUM_LENGTH = Long.BYTES;
+    
+    private final Path file, temporaryFile;
+    private final String fingerprint;
+    
+    /**
+     * Constructs a new snapshot.
+     *
+     * @param file the snapshot file
+     * @param fingerprint the configuration the contents depend on, such as the port which is inserted into pages
+     */
+    ResourceSnapshot(@NotNull Path file, @NotNull String fingerprint) {
+        this.file = file;
+        this.temporaryFile = getTemporaryFile(file);
+        this.fingerprint = fingerprint;
+    }
+    
+    /**
+     * Restores the resources of the snapshot which haven't been modified into a cache.
+     *
+     * @param cache the cache
+     * @return the amount of restored resources, which is {@code 0} if there is no snapshot or if it has been saved
+     * with another fingerprint
+     * @throws IOException if an I/O error occurs or if the snapshot is corrupt
+     */
+    int restore(@NotNull ResourceCache cache) throws IOException {
+        if (!Files.isRegularFile(file))
+            return 0;
+        
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Snapshot " + file + " is too large");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        
+        List<Record> records;
+        try {
+            records = read(buffer);
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new IOException("Snapshot " + file + " is corrupt", ex);
+        }
+        if (records == null)
+            return 0;
+        
+        int restored = 0;
+        for (Record record : records) {
+            // the source or a resource the contents depend on has been modified or deleted since the snapshot was saved
+            if (!isCurrent(record))
+                continue;
+            cache.restore(record);
+            restored++;
+        }
+        return restored;
+    }
+    
+    /**
+     * Saves the resources which are cached, apart from large ones, replacing the previous snapshot.
+     *
+     * @param cache the cache
+     * @return the amount of saved resources
+     * @throws IOException if an I/O error occurs
+     */
+    int save(@NotNull ResourceCache cache) throws IOException {
+        List<Record> records = cache.getRecords();
+        
+        CRC32 checksum = new CRC32();
+        try (OutputStream fileStream = Files.newOutputStream(temporaryFile);
+             DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new OutputStream() {
+                 @Override
+                 public void write(int b) throws IOException {
+                     checksum.update(b);
+                     fileStream.write(b);
+                 }
+                 
+                 @Override
+                 public void write(@NotNull byte[] b, int off, int len) throws IOException {
+                     checksum.update(b, off, len);
+                     fileStream.write(b, off, len);
+                 }
+             }))) {
+            stream.writeInt(MAGIC);
+            stream.writeInt(VERSION);
+            writeString(stream, fingerprint);
+            stream.writeInt(records.size());
+            
+            for (Record record : records) {
+                writeString(stream, record.url.toString());
+                stream.writeLong(record.lastModified);
+                writeString(stream, record.type != null? record.type : "");
+                writeBuffer(stream, record.contents);
+                
+                stream.writeByte(record.variants.size());
+                for (Map.Entry<ContentCoding, ByteBuffer> variant : record.variants.entrySet()) {
+                    writeString(stream, variant.getKey().getName());
+                    writeBuffer(stream, variant.getValue());
+                }
+                
+                stream.writeInt(record.dependencies.size());
+                for (Map.Entry<URL, Long> dependency : record.dependencies.entrySet()) {
+                    writeString(stream, dependency.getKey().toString());
+                    stream.writeLong(dependency.getValue());
+                }
+            }
+            stream.flush();
+            new DataOutputStream(fileStream).writeLong(checksum.getValue());
+        }
+        
+        try {
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return records.size();
+    }
+    
+    // GETTERS
+    
+    @NotNull
+    Path getFile() {
+        return file;
+    }
+    
+    // STATIC
+    
+    /**
+     * Returns the file a snapshot is written to before it replaces the snapshot.
+     *
+     * @param file the snapshot file
+     * @return the temporary file
+     */
+    @NotNull
+    static Path getTemporaryFile(@NotNull Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+    
+    /**
+     * Reads the records of a snapshot, whose contents are slices of the buffer.
+     *
+     * @param buffer the buffer
+     * @return the records or {@code null} if the snapshot has been saved with another fingerprint
+     * @throws IOException if the snapshot is corrupt
+     */
+    @Nullable
+    private List<Record> read(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 2 * Integer.BYTES + CHECKSUM_LENGTH || buffer.getInt(0) != MAGIC)
+            throw new IOException(file + " is not a snapshot");
+        if (buffer.getInt(Integer.BYTES) != VERSION)
+            return null;
+        
+        ByteBuffer body = buffer.duplicate();
+        body.limit(buffer.limit() - CHECKSUM_LENGTH);
+        CRC32 checksum = new CRC32();
+        checksum.update(body.duplicate());
+        if (checksum.getValue() != buffer.getLong(body.limit()))
+            throw new IOException("Checksum of snapshot " + file + " doesn't match");
+        
+        body.position(2 * Integer.BYTES);
+        if (!fingerprint.equals(readString(body)))
+            return null;
+        
+        final int count = body.getInt();
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            URL url = new URL(readString(body));
+            long lastModified = body.getLong();
+            String type = readString(body);
+            ByteBuffer contents = readBuffer(body);
+            
+            Map<ContentCoding, ByteBuffer> variants = new EnumMap<>(ContentCoding.class);
+            for (int variantCount = body.get(); variantCount > 0; variantCount--) {
+                ContentCoding coding = ContentCoding.fromName(readString(body));
+                ByteBuffer variant = readBuffer(body);
+                if (coding != null)
+                    variants.put(coding, variant);
+            }
+            
+            Map<URL, Long> dependencies = new HashMap<>();
+            for (int dependencyCount = body.getInt(); dependencyCount > 0; dependencyCount--)
+                dependencies.put(new URL(readString(body)), body.getLong());
+            records.add(new Record(url, lastModified, type.isEmpty()? null : type, contents, variants, dependencies));
+        }
+        return records;
+    }
+    
+    private static boolean isCurrent(Record record) throws IOException {
+        if (record.url.openConnection().getLastModified() != record.lastModified)
+            return false;
+        for (Map.Entry<URL, Long> dependency : record.dependencies.entrySet())
+            if (dependency.getKey().openConnection().getLastModified() != dependency.getValue())
+                return false;
+        return true;
+    }
+    
+    private static void writeString(DataOutputStream stream, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        stream.writeInt(bytes.length);
+        stream.write(bytes);
+    }
+    
+    private static String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining())
+            throw new IllegalArgumentException("Invalid length " + length);
+        
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static void writeBuffer(DataOutputStream stream, ByteBuffer buffer) throws IOException {
+        buffer = buffer.duplicate();
+        stream.writeInt(buffer.remaining());
+        if (buffer.hasArray()) {
+            stream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        byte[] block = new byte[Math.min(buffer.remaining(), 8192)];
+        while (buffer.hasRemaining()) {
+            int length = Math.min(block.length, buffer.remaining());
+            buffer.get(block, 0, length);
+            stream.write(block, 0, length);
+        }
+    }
+    
+    private static ByteBuffer readBuffer(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining())
+            throw new IllegalArgumentException("Invalid length " + length);
+        
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice.asReadOnlyBuffer();
+    }
+    
+    // SUBCLASSES
+    
+    /**
+     * The contents of a resource as they are cached, along with their variants and the versions of the other resources
+     * they have been derived from.
+     */
+    static class Record {
+        
+        final URL url;
+        final long lastModified;
+        final String type;
+        final ByteBuffer contents;
+        final Map<ContentCoding, ByteBuffer> variants;
+        final Map<URL, Long> dependencies;
+        
+        Record(@NotNull URL url, long lastModified, @Nullable String type, @NotNull ByteBuffer contents,
+               @NotNull Map<ContentCoding, ByteBuffer> variants, @NotNull Map<URL, Long> dependencies) {
+            this.url = url;
+            this.lastModified = lastModified;
+            this.type = type;
+            this.contents = contents;
+            this.variants = variants;
+            this.dependencies = dependencies;
+        }
+        
+    }
+    
+}
@@ -1,68 +1,83 @@
 package tech.eisen.server;
 
 import org.jetbrains.annotations.NotNull;
-import tech.eisen.server.http.DeserializerHttpRequest;
 import tech.eisen.server.http.HttpEvent;
 import tech.eisen.server.http.HttpPeer;
 import tech.eisen.server.http.HttpRequest;
+import tech.eisen.server.http.HttpRequestParser;
 
 import javax.net.ssl.*;
 import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
 
-// Thread handling the socket from client
-public class ServerThread extends Thread {
+// Task handling the socket (plain or SSL) from client, either on its own thread or on a connection pool
+public class ServerThread implements Runnable {
+    
+    private final static int BUFFER_SIZE = 8192;
     
     private final EisenServer server;
-    private final SSLSocket sslSocket;
+    private final Socket socket;
     
-    public ServerThread(@NotNull EisenServer server, @NotNull SSLSocket sslSocket) {
+    public ServerThread(@NotNull EisenServer server, @NotNull Socket socket) {
         this.server = server;
-        this.sslSocket = sslSocket;
+        this.socket = socket;
     }
     
     @Override
     public void run() {
-        sslSocket.setEnabledCipherSuites(sslSocket.getSupportedCipherSuites());
-        
         try {
-            SSLSession sslSession = sslSocket.getSession();
+            socket.setSoTimeout(server.getKeepAliveTimeout());
+            HttpPeer peer = initPeer();
             
             // Start handling application content
-            InputStream requestStream = sslSocket.getInputStream();
-            OutputStream responseStream = sslSocket.getOutputStream();
+            HttpRequestParser parser = new HttpRequestParser(socket.getInputStream());
+            OutputStream responseStream = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
             
-            //requestStream.read();
-    
-            HttpRequest request;
-            try {
-                request = new DeserializerHttpRequest().fromStream(requestStream);
-            } catch (EOFException ex) {
-                return;
-            }
+            final int maxRequests = server.getMaxKeepAliveRequests();
+            for (int requests = 1; ; requests++) {
+                HttpRequest request;
+                try {
+                    request = parser.parse();
+                } catch (EOFException | SocketTimeoutException ex) {
+                    // client closed the connection or stayed idle for too long
+                    return;
+                }
             
-            HttpPeer peer = new HttpPeer(sslSession.getPeerHost(), sslSession.getPeerPort());
+                HttpEvent event = new HttpEvent(peer, request, responseStream);
+                event.setKeepAlive(requests < maxRequests && request.isKeepAliveRequested());
+                server.handleEvent(event);
+                responseStream.flush();
     
-            //System.err.println("inb4 handling http on " + Thread.currentThread().getId());
-            
-            HttpEvent event = new HttpEvent(peer, request, responseStream);
-            server.handleEvent(event);
-            
-            /* Write data
-            printWriter.println("HTTPS/1.1 200");
-            printWriter.println("content-type: text/plain");
-            printWriter.println("content-length: ");
-            printWriter.println();
-            printWriter.flush();
-            */
+                if (!event.isKeepAlive() || !event.hasWrittenHeaders())
+                    return;
+            }
         } catch (Exception ex) {
             ex.printStackTrace();
         } finally {
             try {
-                sslSocket.close();
+                socket.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
     }
     
+    private HttpPeer initPeer() throws IOException {
+        if (socket instanceof SSLSocket) {
+            // protocols and cipher suites are inherited from the server socket, the handshake happens here
+            long handshakeStart = System.currentTimeMillis();
+            SSLSession sslSession = ((SSLSocket) socket).getSession();
+            if (!sslSession.isValid())
+                throw new SSLHandshakeException("Handshake with " + socket.getInetAddress() + " failed");
+            server.getTlsConfig().recordHandshake(sslSession, handshakeStart);
+            
+            return new HttpPeer(sslSession.getPeerHost(), sslSession.getPeerPort());
+        }
+
+        InetSocketAddress remote = (InetSocketAddress) socket.getRemoteSocketAddress();
+        return new HttpPeer(remote.getHostString(), remote.getPort());
+    }
+    
 }
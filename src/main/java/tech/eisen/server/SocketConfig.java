@@ -0,0 +1,104 @@
+package tech.eisen.server;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * Tuning options for the listening socket of the server and for every accepted socket.
+ */
+public class SocketConfig {
+    
+    private int backlog = 1024;
+    private boolean tcpNoDelay = true;
+    private int receiveBufferSize = 0;
+    private int sendBufferSize = 0;
+    
+    /**
+     * Binds a server socket to a port using this configuration. The receive buffer size is set before binding so
+     * that it is inherited by accepted sockets and can be taken into account for the TCP window scale.
+     *
+     * @param serverSocket the unbound server socket
+     * @param port the port
+     * @throws IOException if the socket can't be bound
+     */
+    public void bind(@NotNull ServerSocket serverSocket, int port) throws IOException {
+        if (receiveBufferSize > 0)
+            serverSocket.setReceiveBufferSize(receiveBufferSize);
+        serverSocket.bind(new InetSocketAddress(port), backlog);
+    }
+    
+    /**
+     * Applies this configuration to an accepted socket.
+     *
+     * @param socket the socket
+     * @throws SocketException if an option can't be set
+     */
+    public void configure(@NotNull Socket socket) throws SocketException {
+        socket.setTcpNoDelay(tcpNoDelay);
+        if (sendBufferSize > 0)
+            socket.setSendBufferSize(sendBufferSize);
+    }
+    
+    // GETTERS
+    
+    /**
+     * Returns the maximum amount of pending connections which have not been accepted yet.
+     *
+     * @return the backlog
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+    
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+    
+    /**
+     * Returns the receive buffer size in bytes or {@code 0} if the system default is used.
+     *
+     * @return the receive buffer size
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+    
+    /**
+     * Returns the send buffer size in bytes or {@code 0} if the system default is used.
+     *
+     * @return the send buffer size
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+    
+    // SETTERS
+    
+    public void setBacklog(int backlog) {
+        if (backlog < 1)
+            throw new IllegalArgumentException("Backlog must be positive");
+        this.backlog = backlog;
+    }
+    
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+    
+    public void setReceiveBufferSize(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("Buffer size must not be negative");
+        this.receiveBufferSize = size;
+    }
+    
+    public void setSendBufferSize(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("Buffer size must not be negative");
+        this.sendBufferSize = size;
+    }
+    
+}
@@ -0,0 +1,360 @@
+package tech.eisen.server;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>
+ * A size-aware W-TinyLFU eviction policy with a budget in bytes.
+ * </p>
+ * <p>
+ * New entries enter a small LRU window which takes 1% of the budget. Entries leaving the window become candidates for
+ * the main space, which is a segmented LRU of a probation and a protected segment, the latter taking 80% of the main
+ * space. A candidate is only admitted if it has been accessed more frequently than the entries it would displace,
+ * as estimated by a {@link FrequencySketch}. Entries in probation are promoted to the protected segment when they
+ * are accessed again.
+ * </p>
+ * <p>
+ * This keeps one-hit wonders, such as files requested once by a crawler, from flushing popular entries out of the
+ * cache, while the window still gives new entries the chance to build up frequency.
+ * </p>
+ * <p>
+ * The policy is guarded by a lock. Reads only {@link Lock#tryLock() try} to acquire it, so that a contended policy
+ * loses some access information rather than making readers wait.
+ * </p>
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+class TinyLfuPolicy<K, V> {
+    
+    private final static double WINDOW_SHARE = 0.01, PROTECTED_SHARE = 0.8;
+    private final static int AVERAGE_WEIGHT = 16 * 1024;
+    
+    private final Lock lock = new ReentrantLock();
+    private final BiConsumer<K, V> evictionListener;
+    
+    private final Map<K, Node<V>>
+        window = new LinkedHashMap<>(),
+        probation = new LinkedHashMap<>(),
+        protectedSegment = new LinkedHashMap<>();
+    private long windowWeight, probationWeight, protectedWeight;
+    
+    private long maximum, windowMaximum, mainMaximum, protectedMaximum;
+    private FrequencySketch sketch;
+    
+    private final AtomicLong evictionCount = new AtomicLong(), evictionWeight = new AtomicLong();
+    private volatile long weightedSize;
+    
+    /**
+     * Constructs a new policy.
+     *
+     * @param maximum the maximum total weight
+     * @param evictionListener the listener notified of evicted entries, while the policy's lock is held
+     */
+    TinyLfuPolicy(long maximum, @NotNull BiConsumer<K, V> evictionListener) {
+        this.evictionListener = evictionListener;
+        setMaximum(maximum);
+    }
+    
+    /**
+     * Records a new or replaced entry.
+     *
+     * @param key the key
+     * @param value the value
+     * @param weight the weight
+     */
+    void onWrite(@NotNull K key, @NotNull V value, long weight) {
+        lock.lock();
+        try {
+            sketch.increment(key);
+            removeNode(key);
+            
+            if (weight > maximum) {
+                evict(key, value, weight);
+                return;
+            }
+            
+            window.put(key, new Node<>(value, weight));
+            windowWeight += weight;
+            evictEntries();
+        } finally {
+            updateWeightedSize();
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Records an access of an entry.
+     *
+     * @param key the key
+     */
+    void onRead(@NotNull K key) {
+        if (!lock.tryLock())
+            return;
+        try {
+            sketch.increment(key);
+            
+            Node<V> node = window.remove(key);
+            if (node != null) {
+                window.put(key, node);
+                return;
+            }
+            
+            node = probation.remove(key);
+            if (node != null) {
+                probationWeight -= node.weight;
+                protectedSegment.put(key, node);
+                protectedWeight += node.weight;
+                demoteProtected();
+                return;
+            }
+            
+            node = protectedSegment.remove(key);
+            if (node != null)
+                protectedSegment.put(key, node);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Changes the weight of an entry without affecting its recency, evicting entries if necessary.
+     *
+     * @param key the key
+     * @param weight the new weight
+     */
+    void onUpdate(@NotNull K key, long weight) {
+        lock.lock();
+        try {
+            Node<V> node;
+            if ((node = window.get(key)) != null) {
+                window.put(key, new Node<>(node.value, weight));
+                windowWeight += weight - node.weight;
+            }
+            else if ((node = probation.get(key)) != null) {
+                probation.put(key, new Node<>(node.value, weight));
+                probationWeight += weight - node.weight;
+            }
+            else if ((node = protectedSegment.get(key)) != null) {
+                protectedSegment.put(key, new Node<>(node.value, weight));
+                protectedWeight += weight - node.weight;
+            }
+            else return;
+            
+            if (weight > maximum) {
+                removeNode(key);
+                evict(key, node.value, weight);
+                return;
+            }
+            demoteProtected();
+            evictEntries();
+        } finally {
+            updateWeightedSize();
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Forgets an entry without counting it as an eviction.
+     *
+     * @param key the key
+     */
+    void onRemove(@NotNull K key) {
+        lock.lock();
+        try {
+            removeNode(key);
+        } finally {
+            updateWeightedSize();
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Forgets all entries without counting them as evictions.
+     */
+    void clear() {
+        lock.lock();
+        try {
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+            windowWeight = probationWeight = protectedWeight = 0;
+        } finally {
+            updateWeightedSize();
+            lock.unlock();
+        }
+    }
+    
+    // GETTERS
+    
+    long getMaximum() {
+        return maximum;
+    }
+    
+    long getWeightedSize() {
+        return weightedSize;
+    }
+    
+    long getEvictionCount() {
+        return evictionCount.get();
+    }
+    
+    long getEvictionWeight() {
+        return evictionWeight.get();
+    }
+    
+    // SETTERS
+    
+    /**
+     * Changes the maximum total weight, evicting entries if necessary.
+     *
+     * @param maximum the maximum total weight
+     */
+    void setMaximum(long maximum) {
+        if (maximum < 0)
+            throw new IllegalArgumentException("Maximum weight must not be negative");
+        
+        lock.lock();
+        try {
+            this.maximum = maximum;
+            this.windowMaximum = (long) (maximum * WINDOW_SHARE);
+            this.mainMaximum = maximum - windowMaximum;
+            this.protectedMaximum = (long) (mainMaximum * PROTECTED_SHARE);
+            
+            int expectedKeys = (int) Math.min(Integer.MAX_VALUE, maximum / AVERAGE_WEIGHT);
+            this.sketch = new FrequencySketch(expectedKeys);
+            
+            demoteProtected();
+            evictEntries();
+        } finally {
+            updateWeightedSize();
+            lock.unlock();
+        }
+    }
+    
+    // PRIVATE
+    
+    private void removeNode(K key) {
+        Node<V> node;
+        if ((node = window.remove(key)) != null)
+            windowWeight -= node.weight;
+        else if ((node = probation.remove(key)) != null)
+            probationWeight -= node.weight;
+        else if ((node = protectedSegment.remove(key)) != null)
+            protectedWeight -= node.weight;
+    }
+    
+    /**
+     * Moves the least recently used entries of the protected segment to probation until it fits its share.
+     */
+    private void demoteProtected() {
+        Iterator<Map.Entry<K, Node<V>>> iter = protectedSegment.entrySet().iterator();
+        while (protectedWeight > protectedMaximum && iter.hasNext()) {
+            Map.Entry<K, Node<V>> eldest = iter.next();
+            iter.remove();
+            protectedWeight -= eldest.getValue().weight;
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationWeight += eldest.getValue().weight;
+        }
+    }
+    
+    /**
+     * Moves entries exceeding the window's share into the main space if they win against its victims.
+     */
+    private void evictEntries() {
+        Iterator<Map.Entry<K, Node<V>>> iter = window.entrySet().iterator();
+        while (windowWeight > windowMaximum && iter.hasNext()) {
+            Map.Entry<K, Node<V>> candidate = iter.next();
+            iter.remove();
+            windowWeight -= candidate.getValue().weight;
+            admit(candidate.getKey(), candidate.getValue());
+        }
+        
+        // the main space may still be too large after the maximum has been lowered
+        while (probationWeight + protectedWeight > mainMaximum) {
+            Map.Entry<K, Node<V>> victim = eldest();
+            if (victim == null)
+                break;
+            removeNode(victim.getKey());
+            evict(victim.getKey(), victim.getValue().value, victim.getValue().weight);
+        }
+    }
+    
+    /**
+     * Admits a candidate into probation if it wins against all the victims it would displace, which are only evicted
+     * once the candidate has won. Otherwise, the candidate itself is evicted.
+     */
+    private void admit(K key, Node<V> candidate) {
+        if (candidate.weight > mainMaximum) {
+            evict(key, candidate.value, candidate.weight);
+            return;
+        }
+            
+        // the victims are the least recently used entries of probation, followed by those of the protected segment
+        long excess = probationWeight + protectedWeight + candidate.weight - mainMaximum;
+        List<Map.Entry<K, Node<V>>> victims = new ArrayList<>();
+        final int candidateFrequency = excess > 0? sketch.frequency(key) : 0;
+        for (Map<K, Node<V>> segment : Arrays.asList(probation, protectedSegment)) {
+            for (Iterator<Map.Entry<K, Node<V>>> iter = segment.entrySet().iterator(); excess > 0 && iter.hasNext(); ) {
+                Map.Entry<K, Node<V>> victim = iter.next();
+                if (candidateFrequency <= sketch.frequency(victim.getKey())) {
+                    evict(key, candidate.value, candidate.weight);
+                    return;
+                }
+                victims.add(victim);
+                excess -= victim.getValue().weight;
+            }
+        }
+        
+        for (Map.Entry<K, Node<V>> victim : victims) {
+            removeNode(victim.getKey());
+            evict(victim.getKey(), victim.getValue().value, victim.getValue().weight);
+        }
+        probation.put(key, candidate);
+        probationWeight += candidate.weight;
+    }
+    
+    private Map.Entry<K, Node<V>> eldest() {
+        if (!probation.isEmpty())
+            return probation.entrySet().iterator().next();
+        if (!protectedSegment.isEmpty())
+            return protectedSegment.entrySet().iterator().next();
+        return null;
+    }
+    
+    private void evict(K key, V value, long weight) {
+        evictionCount.incrementAndGet();
+        evictionWeight.addAndGet(weight);
+        evictionListener.accept(key, value);
+    }
+    
+    private void updateWeightedSize() {
+        weightedSize = windowWeight + probationWeight + protectedWeight;
+    }
+    
+    // SUBCLASSES
+    
+    private static class Node<V> {
+        
+        private final V value;
+        private final long weight;
+        
+        private Node(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+        
+    }
+    
+}
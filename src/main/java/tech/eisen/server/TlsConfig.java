@@ -0,0 +1,224 @@
+package tech.eisen.server;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.net.ssl.*;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Configuration of the TLS layer, which determines the cost of handshakes.
+ * </p>
+ * <p>
+ * By default, only TLS 1.3 and TLS 1.2 are enabled, using AEAD cipher suites with forward secrecy in the server's
+ * order of preference. AES-GCM comes first since it is hardware-accelerated on most servers, ChaCha20-Poly1305 is
+ * offered for clients without such acceleration. Sessions are cached and session tickets are enabled, so reconnecting
+ * clients can resume their previous session instead of performing a full handshake.
+ * </p>
+ */
+public class TlsConfig {
+    
+    private final static String SESSION_TICKET_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+    
+    private final static String[] DEFAULT_PROTOCOLS = {"TLSv1.3", "TLSv1.2"};
+    
+    private final static String[] DEFAULT_CIPHER_SUITES = {
+        // TLS 1.3
+        "TLS_AES_128_GCM_SHA256",
+        "TLS_AES_256_GCM_SHA384",
+        "TLS_CHACHA20_POLY1305_SHA256",
+        // TLS 1.2
+        "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+        "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+        "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+        "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
+        "TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256",
+        "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256"
+    };
+    
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+    
+    private String[] protocols = DEFAULT_PROTOCOLS;
+    private String[] cipherSuites = DEFAULT_CIPHER_SUITES;
+    private int sessionCacheSize = 20480;
+    private int sessionTimeout = 24 * 60 * 60;
+    private boolean sessionTickets = true;
+    
+    /**
+     * Creates and initializes a new SSL context with this configuration's session settings.
+     *
+     * @param keyManagers the key managers
+     * @param trustManagers the trust managers
+     * @return the SSL context
+     * @throws GeneralSecurityException if TLS is not available or the context can't be initialized
+     */
+    @NotNull
+    public SSLContext createContext(KeyManager[] keyManagers, TrustManager[] trustManagers)
+        throws GeneralSecurityException {
+        // must be set before the first handshake, since the provider only reads it once
+        if (System.getProperty(SESSION_TICKET_PROPERTY) == null)
+            System.setProperty(SESSION_TICKET_PROPERTY, Boolean.toString(sessionTickets));
+        
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagers, trustManagers, null);
+        
+        SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+        sessionContext.setSessionCacheSize(sessionCacheSize);
+        sessionContext.setSessionTimeout(sessionTimeout);
+        
+        return sslContext;
+    }
+    
+    /**
+     * Creates the parameters for server sockets and engines of the given context. Protocols and cipher suites which
+     * are not supported by the context are left out.
+     *
+     * @param sslContext the SSL context
+     * @return the SSL parameters
+     * @throws IllegalStateException if none of the configured protocols or cipher suites are supported
+     */
+    @NotNull
+    public SSLParameters createParameters(@NotNull SSLContext sslContext) {
+        SSLParameters supported = sslContext.getSupportedSSLParameters();
+        
+        SSLParameters parameters = sslContext.getDefaultSSLParameters();
+        parameters.setProtocols(retainSupported("protocols", protocols, supported.getProtocols()));
+        parameters.setCipherSuites(retainSupported("cipher suites", cipherSuites, supported.getCipherSuites()));
+        parameters.setUseCipherSuitesOrder(true);
+        
+        return parameters;
+    }
+    
+    private static String[] retainSupported(String what, String[] preferred, String[] supported) {
+        Set<String> supportedSet = new HashSet<>(Arrays.asList(supported));
+        String[] result = Arrays.stream(preferred)
+            .filter(supportedSet::contains)
+            .toArray(String[]::new);
+        
+        if (result.length == 0)
+            throw new IllegalStateException("None of the configured " + what + " are supported: "
+                + String.join(", ", preferred));
+        return result;
+    }
+    
+    /**
+     * Records a completed handshake. A handshake is considered resumed if its session has been created before the
+     * handshake started, which is the case for both TLS 1.2 session resumption and TLS 1.3 pre-shared keys.
+     *
+     * @param session the session of the connection
+     * @param handshakeStart the time in milliseconds at which the handshake started
+     */
+    public void recordHandshake(@NotNull SSLSession session, long handshakeStart) {
+        if (session.getCreationTime() < handshakeStart)
+            resumedHandshakes.incrementAndGet();
+        else
+            fullHandshakes.incrementAndGet();
+    }
+    
+    // GETTERS
+    
+    public long getFullHandshakes() {
+        return fullHandshakes.get();
+    }
+    
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+    
+    /**
+     * Returns the ratio of resumed handshakes to all handshakes or {@code 0} if no handshakes have been made.
+     *
+     * @return the session resumption rate
+     */
+    public double getResumptionRate() {
+        long resumed = resumedHandshakes.get(), total = resumed + fullHandshakes.get();
+        return total == 0? 0 : (double) resumed / total;
+    }
+    
+    @NotNull
+    public String[] getProtocols() {
+        return protocols.clone();
+    }
+    
+    @NotNull
+    public String[] getCipherSuites() {
+        return cipherSuites.clone();
+    }
+    
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+    
+    /**
+     * Returns the time in seconds after which cached sessions expire.
+     *
+     * @return the session timeout
+     */
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+    
+    public boolean isSessionTickets() {
+        return sessionTickets;
+    }
+    
+    // SETTERS
+    
+    /**
+     * Sets the enabled protocols, such as {@code TLSv1.3}.
+     *
+     * @param protocols the protocols
+     */
+    public void setProtocols(@NotNull String... protocols) {
+        if (protocols.length == 0)
+            throw new IllegalArgumentException("At least one protocol is required");
+        this.protocols = protocols.clone();
+    }
+    
+    /**
+     * Sets the enabled cipher suites in the server's order of preference.
+     *
+     * @param cipherSuites the cipher suites
+     */
+    public void setCipherSuites(@NotNull String... cipherSuites) {
+        if (cipherSuites.length == 0)
+            throw new IllegalArgumentException("At least one cipher suite is required");
+        this.cipherSuites = cipherSuites.clone();
+    }
+    
+    /**
+     * Sets the maximum amount of cached sessions.
+     *
+     * @param size the session cache size, or {@code 0} for no limit
+     */
+    public void setSessionCacheSize(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("Session cache size must not be negative");
+        this.sessionCacheSize = size;
+    }
+    
+    /**
+     * Sets the time in seconds after which cached sessions expire.
+     *
+     * @param timeout the session timeout, or {@code 0} for no limit
+     */
+    public void setSessionTimeout(int timeout) {
+        if (timeout < 0)
+            throw new IllegalArgumentException("Session timeout must not be negative");
+        this.sessionTimeout = timeout;
+    }
+    
+    /**
+     * Sets whether stateless session tickets are issued. This only takes effect if the
+     * {@code jdk.tls.server.enableSessionTicketExtension} system property has not been set explicitly.
+     *
+     * @param sessionTickets whether session tickets are enabled
+     */
+    public void setSessionTickets(boolean sessionTickets) {
+        this.sessionTickets = sessionTickets;
+    }
+    
+}
@@ -0,0 +1,62 @@
+package tech.eisen.server;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>
+ * Access to virtual threads, which are only available when running on Java 21 or newer.
+ * </p>
+ * <p>
+ * The server is compiled for Java 8, so the virtual thread API is looked up reflectively at runtime.
+ * </p>
+ */
+public final class VirtualThreads {
+    
+    private final static Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+    
+    static {
+        Method method;
+        try {
+            method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            method = null;
+        }
+        NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = method;
+    }
+    
+    private VirtualThreads() {}
+    
+    /**
+     * Returns whether the running JVM supports virtual threads.
+     *
+     * @return whether virtual threads are supported
+     */
+    public static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+    
+    /**
+     * Creates an executor which runs every task on a new virtual thread.
+     *
+     * @return a new virtual thread executor
+     * @throws UnsupportedOperationException if the running JVM does not support virtual threads
+     */
+    @NotNull
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (!isSupported())
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer, running "
+                + System.getProperty("java.version"));
+        
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available", e);
+        }
+    }
+    
+}
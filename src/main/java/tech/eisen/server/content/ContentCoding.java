@@ -0,0 +1,144 @@
+package tech.eisen.server.content;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The content codings a response body can be encoded with.
+ */
+public enum ContentCoding {
+    
+    IDENTITY("identity"),
+    GZIP("gzip"),
+    DEFLATE("deflate");
+    
+    private final static int BLOCK_SIZE = 8192;
+    
+    private final String name;
+    
+    private ContentCoding(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * Returns the name of this coding as used in {@code Accept-Encoding} and {@code Content-Encoding} headers.
+     *
+     * @return the name
+     */
+    @NotNull
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Encodes the remaining contents of a buffer, consuming them.
+     *
+     * @param content the content
+     * @param level the compression level, between {@link Deflater#BEST_SPEED} and {@link Deflater#BEST_COMPRESSION}
+     * @return the encoded content
+     * @throws IOException if an I/O error occurs
+     */
+    @NotNull
+    public byte[] encode(@NotNull ByteBuffer content, int level) throws IOException {
+        return encode(Collections.singletonList(content), level);
+    }
+    
+    /**
+     * Encodes the remaining contents of several buffers one after the other, consuming them.
+     *
+     * @param contents the segments of the content
+     * @param level the compression level, between {@link Deflater#BEST_SPEED} and {@link Deflater#BEST_COMPRESSION}
+     * @return the encoded content
+     * @throws IOException if an I/O error occurs
+     */
+    @NotNull
+    public byte[] encode(@NotNull List<ByteBuffer> contents, int level) throws IOException {
+        int length = 0;
+        for (ByteBuffer content : contents)
+            length += content.remaining();
+        
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(Math.max(64, length / 2));
+        Deflater deflater = this == DEFLATE? new Deflater(level) : null;
+        try (OutputStream stream = openStream(encoded, deflater, level)) {
+            byte[] block = new byte[Math.min(BLOCK_SIZE, Math.max(1, length))];
+            for (ByteBuffer content : contents) {
+                while (content.hasRemaining()) {
+                    int blockLength = Math.min(block.length, content.remaining());
+                    content.get(block, 0, blockLength);
+                    stream.write(block, 0, blockLength);
+                }
+            }
+        } finally {
+            if (deflater != null)
+                deflater.end();
+        }
+        return encoded.toByteArray();
+    }
+    
+    /**
+     * Opens a stream which encodes what is written to it into another stream. Closing the stream finishes the encoding
+     * and closes the other stream.
+     *
+     * @param target the stream of the encoded content
+     * @param level the compression level, between {@link Deflater#BEST_SPEED} and {@link Deflater#BEST_COMPRESSION}
+     * @return the stream of the content, which is the target itself for {@link #IDENTITY}
+     * @throws IOException if an I/O error occurs
+     */
+    @NotNull
+    public OutputStream openStream(@NotNull OutputStream target, int level) throws IOException {
+        if (this != DEFLATE)
+            return openStream(target, null, level);
+        
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(target, deflater, BLOCK_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+    
+    private OutputStream openStream(OutputStream target, Deflater deflater, int level) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPOutputStream(target, BLOCK_SIZE) {{
+                    def.setLevel(level);
+                }};
+            
+            case DEFLATE:
+                return new DeflaterOutputStream(target, deflater, BLOCK_SIZE);
+            
+            default:
+                return target;
+        }
+    }
+    
+    /**
+     * Returns the coding with a given name.
+     *
+     * @param name the name
+     * @return the coding or {@code null} if there is no such coding
+     */
+    @Nullable
+    public static ContentCoding fromName(@NotNull String name) {
+        for (ContentCoding coding : values())
+            if (coding.name.equals(name))
+                return coding;
+        return null;
+    }
+    
+}
@@ -6,10 +6,16 @@ import org.apache.commons.io.IOUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import tech.eisen.server.EisenServer;
+import tech.eisen.server.ResourceCache;
 import tech.eisen.util.*;
 
 import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class HtmlPreProcessorPipe implements TextPipe {
@@ -30,6 +36,7 @@ public class HtmlPreProcessorPipe implements TextPipe {
     
     private final EisenServer server;
     private final Map<String, String> env = new HashMap<>();
+    private final Map<URL, Long> embedded = new HashMap<>();
     private final boolean constantMode;
     
     public HtmlPreProcessorPipe(@NotNull EisenServer server, @NotNull Map<String, String> environment) {
@@ -56,163 +63,215 @@ public class HtmlPreProcessorPipe implements TextPipe {
         return constantMode;
     }
     
+    /**
+     * Returns the resources which have been embedded so far, including those embedded by other embedded resources,
+     * along with the last-modified dates of the versions which have been embedded.
+     *
+     * @return an unmodifiable map of the urls of the resources to their last-modified dates
+     */
+    @NotNull
+    public Map<URL, Long> getEmbedded() {
+        return Collections.unmodifiableMap(embedded);
+    }
+    
+    /**
+     * Compiles the text of a reader into a {@link HtmlTemplate template} and renders it.
+     *
+     * @param input the reader of the page
+     * @param output the writer of the result
+     * @throws IOException if an I/O error occurs
+     */
     @Override
     public void pipeToWriter(Reader input, Writer output) throws IOException {
-        boolean started = false;
-        StringWriter buffer = null;
-        
-        for (int c = input.read(); c > 0; c = input.read()) {
-            if (!started) {
-                if (c == INITIATOR) {
-                    started = true;
-                    
-                    c = input.read();
-                    if (c == INITIATOR) {
-                        output.write(c);
-                        started = false;
-                    }
-                    else {
-                        buffer = new StringWriter();
-                        buffer.write(c);
-                    }
-                }
+        render(HtmlTemplate.compile(input), output);
+    }
                 
-                else output.write(c);
-                continue;
+    /**
+     * Renders a compiled template by substituting the variables and evaluating the functions it refers to. In constant
+     * mode, references without the {@code const:} modifier are rendered as they have been written.
+     *
+     * @param template the template
+     * @param output the writer of the result
+     * @throws IOException if an I/O error occurs
+     */
+    public void render(@NotNull HtmlTemplate template, @NotNull Writer output) throws IOException {
+        render(template, new Output() {
+            @Override
+            public void write(HtmlTemplate.Literal literal) throws IOException {
+                output.write(literal.getText());
             }
             
-            if (c == '{') {
-                String function = buffer.toString();
-                String json = readJSON((char) c, input);
-    
-                boolean constant = function.startsWith("const:");
-                if (constant)
-                    function = function.substring(6);
-    
-                if (!constantMode || constant) {
-                    JsonObject jsonObj = (JsonObject) new JsonParser().parse(json);
-                    output.write(processFunction(function, jsonObj));
-                }
-                else {
-                    output.write(INITIATOR);
-                    output.write(function);
-                    output.write(json);
-                }
+            @Override
+            public void write(String str) throws IOException {
+                output.write(str);
+            }
+        });
+    }
     
-                started = false;
+    /**
+     * <p>
+     * Renders a compiled template into a list of UTF-8 encoded segments, which can be written to a response one after
+     * the other without assembling the result.
+     * </p>
+     * <p>
+     * The literal chunks of the template have been encoded when it was compiled, so their segments share the encoded
+     * bytes of the template. Only substituted values and the results of functions are encoded by this method.
+     * </p>
+     *
+     * @param template the template
+     * @param segments the list the segments are appended to
+     * @throws IOException if an I/O error occurs
+     */
+    public void render(@NotNull HtmlTemplate template, @NotNull List<ByteBuffer> segments) throws IOException {
+        render(template, new Output() {
+            @Override
+            public void write(HtmlTemplate.Literal literal) {
+                segments.add(literal.getBytes());
             }
             
-            else if (!isIdentifier((char) c)) {
-                String variable = buffer.toString();
-    
-                boolean constant = variable.startsWith("const:");
-                if (constant)
-                    variable = variable.substring(6);
-    
-                if (!constantMode || constant) {
-                    String result = env.get(variable.toLowerCase());
-                    output.write(result == null? INITIATOR + variable : result);
-                }
-                else {
-                    output.write(INITIATOR);
-                    output.write(variable);
-                }
+            @Override
+            public void write(String str) {
+                if (!str.isEmpty())
+                    segments.add(ByteBuffer.wrap(str.getBytes(StandardCharsets.UTF_8)));
+            }
+        });
+    }
     
-                output.write(c);
-                started = false;
+    /**
+     * Renders a compiled template into a stream as UTF-8, so that the result is never held in memory. The literal
+     * chunks of the template have been encoded when it was compiled, only substituted values and the results of
+     * functions are encoded by this method.
+     *
+     * @param template the template
+     * @param stream the stream of the result, which is neither flushed nor closed
+     * @throws IOException if an I/O error occurs
+     */
+    public void render(@NotNull HtmlTemplate template, @NotNull OutputStream stream) throws IOException {
+        render(template, new Output() {
+            @Override
+            public void write(HtmlTemplate.Literal literal) throws IOException {
+                literal.writeBytes(stream);
             }
             
-            else buffer.write(c);
-        }
+            @Override
+            public void write(String str) throws IOException {
+                stream.write(str.getBytes(StandardCharsets.UTF_8));
+            }
+        });
     }
     
-    private static boolean isIdentifier(char c) {
-        return c == '_' || c == '.' || c == ':'
-            || Character.isAlphabetic(c)
-            || Character.isDigit(c);
-    }
+    private void render(HtmlTemplate template, Output output) throws IOException {
+        for (HtmlTemplate.Node node : template.getNodes()) {
+            if (node instanceof HtmlTemplate.Literal) {
+                output.write((HtmlTemplate.Literal) node);
+            }
+            
+            else if (node instanceof HtmlTemplate.Variable) {
+                HtmlTemplate.Variable variable = (HtmlTemplate.Variable) node;
+                String result = null;
+                if (!constantMode || variable.isConstant())
+                    result = env.get(variable.getName().toLowerCase());
+                output.write(result == null? INITIATOR + variable.getName() : result);
+            }
     
-    private static String readJSON(char first, Reader input) throws PreProcessException, IOException {
-        StringWriter jsonBuffer = new StringWriter();
-        jsonBuffer.write(first);
-        
-        for (int c = input.read(), depth = 0; ; c = input.read()) {
-            switch (c) {
-                case -1:
-                    throw new EOFException("unexpected EOF in JSON portion");
-                
-                case '{':
-                    depth++;
-                    jsonBuffer.write(c);
-                    break;
-                
-                case '}':
-                    jsonBuffer.write(c);
-                    if (depth-- == 0)
-                        return jsonBuffer.toString();
-                
-                default:
-                    jsonBuffer.write(c);
+            else {
+                HtmlTemplate.Function function = (HtmlTemplate.Function) node;
+                if (!constantMode || function.isConstant())
+                    processFunction(function, output);
+                else
+                    output.write(INITIATOR + function.getName() + function.getArguments());
             }
         }
     }
     
-    private String processFunction(String name, JsonObject json) throws PreProcessException, IOException {
-        String result;
-        switch (name.toLowerCase()) {
+    private void processFunction(HtmlTemplate.Function function, Output output)
+        throws PreProcessException, IOException {
+        JsonObject json = function.getJSON();
+        switch (function.getName().toLowerCase()) {
             
             // $def{"<var1>": "<value1>", "<var2>": "<value2>", ..., "<varN>", "<valueN>"}
             case "def": {
                 json.entrySet().forEach((entry) -> env.put(entry.getKey(), entry.getValue().getAsString()));
-                return "";
+                return;
             }
             
             // $embed{"src": "<resource_path>", "[type]": "<media_type_or_extension>"}
             case "embed":
-                result = embed(json);
-                return pipeBetweenStrings(result);
+                render(embed(json), output);
+                return;
                 
             // $if{
             //     "<condition>": "<parameter>",
             //     "then": "<value_if_all_conditions_met>",
             //     "else": "<value_if_not_all_conditions_met>"
             // }
-            case "if":
-                result = _if(json);
-                return pipeBetweenStrings(result);
+            case "if": {
+                boolean isTrue = _if(json);
+                HtmlTemplate branch = function.getBranch(isTrue);
+                if (branch != null)
+                    render(branch, output);
+                else if (isTrue)
+                    render(HtmlTemplate.compile(new StringReader(json.get("then").getAsString())), output);
+                else if (json.has("else"))
+                    render(HtmlTemplate.compile(new StringReader(json.get("else").getAsString())), output);
+                return;
+            }
             
             // $literal{"value": "<value_exempted_from_further_pre-processing>"}
             case "literal":
-                result = literal(json);
-                return result;
+                output.write(literal(json));
+                return;
             
-            default: return "UNKNOWN_FUNCTION";
+            default: output.write("UNKNOWN_FUNCTION");
         }
     }
     
-    private String embed(JsonObject json) throws PreProcessException {
+    /**
+     * Returns the template of an embedded resource, which is compiled once per version of the resource.
+     */
+    private HtmlTemplate embed(JsonObject json) throws PreProcessException {
         String src = json.get("src").getAsString();
         
-        final String result;
-        try (Reader reader = new InputStreamReader(server.getResource(src))) {
-            result = IOUtils.toString(reader);
-        } catch (IOException e) {
-            throw new PreProcessException(e);
-        }
-        
+        boolean markdown = false;
         if (json.has("type")) {
             switch (json.get("type").getAsString()) {
                 case "md":
-                case "text/markdown": {
-                    return Processor.process(result, MD_CONFIGURATION);
-                }
+                case "text/markdown":
+                    markdown = true;
             }
         }
         
-        return result;
+        URL url = server.getResourceURL(src);
+        if (url == null)
+            throw new PreProcessException(new FileNotFoundException(src));
+        
+        try {
+            ResourceCache cache = server.getResourceCache();
+            cache.updateAttributes(url);
+            long lastModified = cache.getAttributes(url).lastModifiedTime().toMillis();
+            embedded.put(url, lastModified);
+            
+            String type = markdown? "embed:text/markdown" : "embed";
+            HtmlTemplateCache templates = server.getTemplateCache();
+            HtmlTemplate template = templates.get(url, type, lastModified);
+            if (template == null) {
+                String result;
+                try (Reader reader = new InputStreamReader(server.getResource(url), StandardCharsets.UTF_8)) {
+                    result = IOUtils.toString(reader);
+                }
+                if (markdown)
+                    result = Processor.process(result, MD_CONFIGURATION);
+                
+                template = HtmlTemplate.compile(result);
+                templates.put(url, type, lastModified, template);
+            }
+            return template;
+        } catch (IOException | UncheckedIOException e) {
+            throw new PreProcessException(e);
+        }
     }
     
-    private String _if(JsonObject json) throws PreProcessException {
+    private boolean _if(JsonObject json) throws PreProcessException {
         boolean isTrue = true;
         
         if (json.has("defined")) {
@@ -232,16 +291,24 @@ public class HtmlPreProcessorPipe implements TextPipe {
         
         // TODO add some more conditions
         
-        if (isTrue)
-            return json.get("then").getAsString();
-        else if (json.has("else"))
-            return json.get("else").getAsString();
-        else
-            return "";
+        return isTrue;
     }
     
     private String literal(JsonObject json) {
         return json.get("value").toString();
     }
     
+    // SUBCLASSES
+    
+    /**
+     * The target a template is rendered into.
+     */
+    private static interface Output {
+        
+        abstract void write(HtmlTemplate.Literal literal) throws IOException;
+        
+        abstract void write(String str) throws IOException;
+        
+    }
+
 }
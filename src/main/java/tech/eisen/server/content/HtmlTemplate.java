@@ -0,0 +1,374 @@
+package tech.eisen.server.content;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * <p>
+ * A page which has been parsed once into the nodes the {@link HtmlPreProcessorPipe pre-processor} evaluates, so that
+ * rendering it only walks the nodes instead of scanning the text again.
+ * </p>
+ * <p>
+ * The nodes are literal chunks of text, references of variables and calls of functions, whose arguments are parsed
+ * when the template is compiled. Branches of {@code $if} calls are compiled as well. A template is immutable and may be
+ * rendered by many threads at once.
+ * </p>
+ */
+public final class HtmlTemplate {
+    
+    private final static String CONSTANT_PREFIX = "const:";
+    
+    private final List<Node> nodes;
+    private final Set<String> keys = new HashSet<>(), functions = new HashSet<>();
+    
+    private HtmlTemplate(List<Node> nodes) {
+        this.nodes = Collections.unmodifiableList(nodes);
+        
+        for (Node node : nodes) {
+            if (node instanceof Variable)
+                keys.add(((Variable) node).name.toLowerCase());
+            else if (node instanceof Function)
+                ((Function) node).addDependencies(keys, functions);
+        }
+    }
+    
+    // GETTERS
+    
+    /**
+     * Returns the nodes of the template in the order of the text they have been parsed from.
+     *
+     * @return an unmodifiable list of nodes
+     */
+    @NotNull
+    public List<Node> getNodes() {
+        return nodes;
+    }
+    
+    /**
+     * Returns the keys of the environment the template reads, either by referring to variables or by checking whether
+     * they are defined, including the branches of {@code $if} calls. Variables are looked up in lower case.
+     *
+     * @return an unmodifiable set of keys
+     */
+    @NotNull
+    public Set<String> getKeys() {
+        return Collections.unmodifiableSet(keys);
+    }
+    
+    /**
+     * Returns the names of the functions the template calls in lower case, including the branches of {@code $if}
+     * calls. Resources embedded with {@code $embed} are not compiled along with the template, so their dependencies are
+     * not known.
+     *
+     * @return an unmodifiable set of function names
+     */
+    @NotNull
+    public Set<String> getFunctions() {
+        return Collections.unmodifiableSet(functions);
+    }
+    
+    // STATIC
+    
+    /**
+     * Compiles a template from a string.
+     *
+     * @param input the text of the page
+     * @return the compiled template
+     */
+    @NotNull
+    public static HtmlTemplate compile(@NotNull String input) {
+        try {
+            return compile(new StringReader(input));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+    
+    /**
+     * Compiles a template from the text of a reader.
+     *
+     * @param input the reader of the page
+     * @return the compiled template
+     * @throws IOException if an I/O error occurs or if the text ends within the arguments of a function
+     */
+    @NotNull
+    public static HtmlTemplate compile(@NotNull Reader input) throws IOException {
+        List<Node> nodes = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        StringBuilder buffer = null;
+        boolean started = false;
+        
+        for (int c = input.read(); c > 0; c = input.read()) {
+            if (!started) {
+                if (c == HtmlPreProcessorPipe.INITIATOR) {
+                    started = true;
+                    
+                    c = input.read();
+                    if (c == HtmlPreProcessorPipe.INITIATOR) {
+                        literal.append((char) c);
+                        started = false;
+                    }
+                    else {
+                        buffer = new StringBuilder();
+                        buffer.append((char) c);
+                    }
+                }
+                
+                else literal.append((char) c);
+                continue;
+            }
+            
+            if (c == '{') {
+                flushLiteral(nodes, literal);
+                nodes.add(new Function(buffer.toString(), readJSON((char) c, input)));
+                started = false;
+            }
+            
+            else if (!isIdentifier((char) c)) {
+                flushLiteral(nodes, literal);
+                nodes.add(new Variable(buffer.toString()));
+                literal.append((char) c);
+                started = false;
+            }
+            
+            else buffer.append((char) c);
+        }
+        
+        // an unterminated reference at the end of the text is dropped
+        flushLiteral(nodes, literal);
+        return new HtmlTemplate(nodes);
+    }
+    
+    private static void flushLiteral(List<Node> nodes, StringBuilder literal) {
+        if (literal.length() == 0)
+            return;
+        nodes.add(new Literal(literal.toString()));
+        literal.setLength(0);
+    }
+    
+    private static boolean isIdentifier(char c) {
+        return c == '_' || c == '.' || c == ':'
+            || Character.isAlphabetic(c)
+            || Character.isDigit(c);
+    }
+    
+    private static String readJSON(char first, Reader input) throws IOException {
+        StringWriter jsonBuffer = new StringWriter();
+        jsonBuffer.write(first);
+        
+        for (int c = input.read(), depth = 0; ; c = input.read()) {
+            switch (c) {
+                case -1:
+                    throw new EOFException("unexpected EOF in JSON portion");
+                
+                case '{':
+                    depth++;
+                    jsonBuffer.write(c);
+                    break;
+                
+                case '}':
+                    jsonBuffer.write(c);
+                    if (depth-- == 0)
+                        return jsonBuffer.toString();
+                
+                default:
+                    jsonBuffer.write(c);
+            }
+        }
+    }
+    
+    // SUBCLASSES
+    
+    /**
+     * A node of a template.
+     */
+    public abstract static class Node {
+        
+        private Node() {}
+        
+    }
+    
+    /**
+     * A chunk of text which is rendered as it is. The chunk is encoded once, so that it can be written without encoding
+     * it on every request.
+     */
+    public final static class Literal extends Node {
+        
+        private final String text;
+        private final byte[] bytes;
+        
+        private Literal(String text) {
+            this.text = text;
+            this.bytes = text.getBytes(StandardCharsets.UTF_8);
+        }
+        
+        @NotNull
+        public String getText() {
+            return text;
+        }
+        
+        /**
+         * Returns the text as it has been encoded in UTF-8 when the template has been compiled.
+         *
+         * @return a read-only buffer of the encoded text, which may be consumed
+         */
+        @NotNull
+        public ByteBuffer getBytes() {
+            return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+        
+        void writeBytes(OutputStream stream) throws IOException {
+            stream.write(bytes);
+        }
+        
+    }
+    
+    /**
+     * A reference of a variable such as {@code $user.name} or {@code $const:server.port}.
+     */
+    public final static class Variable extends Node {
+        
+        private final String name;
+        private final boolean constant;
+        
+        private Variable(String reference) {
+            this.constant = reference.startsWith(CONSTANT_PREFIX);
+            this.name = constant? reference.substring(CONSTANT_PREFIX.length()) : reference;
+        }
+        
+        /**
+         * Returns the name of the variable as it has been written, without the {@code const:} modifier.
+         *
+         * @return the name of the variable
+         */
+        @NotNull
+        public String getName() {
+            return name;
+        }
+        
+        public boolean isConstant() {
+            return constant;
+        }
+        
+    }
+    
+    /**
+     * A call of a function such as {@code $embed{"src": "html/header.html"}}.
+     */
+    public final static class Function extends Node {
+        
+        private final String name, arguments;
+        private final boolean constant;
+        private final JsonObject json;
+        private final RuntimeException parseException;
+        private final HtmlTemplate then, otherwise;
+        
+        private Function(String reference, String arguments) {
+            this.constant = reference.startsWith(CONSTANT_PREFIX);
+            this.name = constant? reference.substring(CONSTANT_PREFIX.length()) : reference;
+            this.arguments = arguments;
+            
+            JsonObject json = null;
+            RuntimeException parseException = null;
+            try {
+                json = (JsonObject) new JsonParser().parse(arguments);
+            } catch (RuntimeException ex) {
+                // only a call which is evaluated fails, like it did before templates were compiled
+                parseException = ex;
+            }
+            this.json = json;
+            this.parseException = parseException;
+            
+            boolean conditional = json != null && name.equalsIgnoreCase("if");
+            this.then = conditional? compileBranch(json, "then") : null;
+            this.otherwise = conditional? compileBranch(json, "else") : null;
+        }
+        
+        /**
+         * Returns the name of the function as it has been written, without the {@code const:} modifier.
+         *
+         * @return the name of the function
+         */
+        @NotNull
+        public String getName() {
+            return name;
+        }
+        
+        public boolean isConstant() {
+            return constant;
+        }
+        
+        /**
+         * Returns the arguments as they have been written, including the braces.
+         *
+         * @return the text of the arguments
+         */
+        @NotNull
+        public String getArguments() {
+            return arguments;
+        }
+        
+        /**
+         * Returns the parsed arguments, which must not be modified.
+         *
+         * @return the arguments
+         * @throws RuntimeException if the arguments are not a valid JSON object
+         */
+        @NotNull
+        public JsonObject getJSON() {
+            if (parseException != null)
+                throw parseException;
+            return json;
+        }
+        
+        /**
+         * Returns the compiled branch of an {@code $if} call.
+         *
+         * @param condition whether the conditions are met
+         * @return the compiled {@code then} or {@code else} branch or {@code null} if it is missing or malformed
+         */
+        @Nullable
+        public HtmlTemplate getBranch(boolean condition) {
+            return condition? then : otherwise;
+        }
+        
+        private void addDependencies(Set<String> keys, Set<String> functions) {
+            functions.add(name.toLowerCase());
+            if (json == null || !name.equalsIgnoreCase("if"))
+                return;
+            
+            JsonElement defined = json.get("defined");
+            if (defined != null && defined.isJsonPrimitive())
+                keys.add(defined.getAsString());
+            for (HtmlTemplate branch : new HtmlTemplate[] {then, otherwise}) {
+                if (branch != null) {
+                    keys.addAll(branch.keys);
+                    functions.addAll(branch.functions);
+                }
+            }
+        }
+        
+        @Nullable
+        private static HtmlTemplate compileBranch(JsonObject json, String key) {
+            JsonElement branch = json.get(key);
+            if (branch == null || !branch.isJsonPrimitive())
+                return null;
+            try {
+                return compile(branch.getAsString());
+            } catch (UncheckedIOException ex) {
+                // the branch fails when it is rendered
+                return null;
+            }
+        }
+        
+    }
+    
+}
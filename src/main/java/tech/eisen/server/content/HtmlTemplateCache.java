@@ -0,0 +1,108 @@
+package tech.eisen.server.content;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * A cache of compiled {@link HtmlTemplate templates}, which are valid as long as the last-modified date of the
+ * resource they have been compiled from doesn't change.
+ * </p>
+ * <p>
+ * A resource may be compiled in several ways, such as a page and the markdown it embeds, which are told apart by a
+ * type. The cache is cleared once it holds too many templates.
+ * </p>
+ */
+public class HtmlTemplateCache {
+    
+    private final static int MAX_TEMPLATES = 1024;
+    
+    private final Map<Key, Entry> templates = new ConcurrentHashMap<>();
+    
+    /**
+     * Returns a template if it has been compiled from the current version of a resource.
+     *
+     * @param url the url of the resource
+     * @param type the way the resource has been compiled or {@code null} for a page
+     * @param lastModified the last-modified date of the resource
+     * @return the template or {@code null} if there is no current one
+     */
+    @Nullable
+    public HtmlTemplate get(@NotNull URL url, @Nullable String type, long lastModified) {
+        Entry entry = templates.get(new Key(url, type));
+        return entry != null && entry.lastModified == lastModified? entry.template : null;
+    }
+    
+    /**
+     * Caches a template which has been compiled from a resource, replacing the template of any other version.
+     *
+     * @param url the url of the resource
+     * @param type the way the resource has been compiled or {@code null} for a page
+     * @param lastModified the last-modified date of the resource
+     * @param template the template
+     */
+    public void put(@NotNull URL url, @Nullable String type, long lastModified, @NotNull HtmlTemplate template) {
+        if (templates.size() >= MAX_TEMPLATES)
+            templates.clear();
+        templates.put(new Key(url, type), new Entry(lastModified, template));
+    }
+    
+    /**
+     * Drops all templates.
+     */
+    public void clear() {
+        templates.clear();
+    }
+    
+    // GETTERS
+    
+    public int getSize() {
+        return templates.size();
+    }
+    
+    // SUBCLASSES
+    
+    private static class Key {
+        
+        private final String url;
+        private final String type;
+        
+        private Key(URL url, String type) {
+            // URL.equals resolves host names
+            this.url = url.toExternalForm();
+            this.type = type;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key key = (Key) obj;
+            return url.equals(key.url) && Objects.equals(type, key.type);
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * url.hashCode() + Objects.hashCode(type);
+        }
+        
+    }
+    
+    private static class Entry {
+        
+        private final long lastModified;
+        private final HtmlTemplate template;
+        
+        private Entry(long lastModified, HtmlTemplate template) {
+            this.lastModified = lastModified;
+            this.template = template;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,139 @@
+package tech.eisen.server.content;
+
+import org.apache.tika.Tika;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Resolves the media types of resources, primarily by the extensions of their names.
+ * </p>
+ * <p>
+ * Extensions are looked up in the overrides from the configuration first, then in a table of common types, and
+ * finally by Tika. Each result is memoized per extension, so the resolution happens only once per extension. Resources
+ * with an unknown extension are identified by {@link #sniff(byte[], int) sniffing} a bounded prefix of their contents.
+ * </p>
+ */
+public class MediaTypes {
+    
+    /**
+     * The type of contents which can't be identified.
+     */
+    public final static String DEFAULT_TYPE = "application/octet-stream";
+    
+    /**
+     * The maximum amount of bytes which are used for sniffing.
+     */
+    public final static int SNIFF_LIMIT = 8192;
+    
+    private final static Tika TIKA = new Tika();
+    private final static String UNKNOWN = "";
+    
+    private final static Map<String, String> BUILT_IN = new HashMap<>();
+    
+    static {
+        String[][] types = {
+            {"html", "text/html"}, {"htm", "text/html"}, {"css", "text/css"}, {"csv", "text/csv"},
+            {"txt", "text/plain"}, {"md", "text/markdown"}, {"xml", "application/xml"},
+            {"js", "application/javascript"}, {"mjs", "application/javascript"}, {"json", "application/json"},
+            {"map", "application/json"}, {"wasm", "application/wasm"}, {"pdf", "application/pdf"},
+            {"zip", "application/zip"}, {"gz", "application/x-gzip"}, {"tar", "application/x-tar"},
+            {"bz2", "application/x-bzip2"}, {"svg", "image/svg+xml"}, {"png", "image/png"}, {"jpg", "image/jpeg"},
+            {"jpeg", "image/jpeg"}, {"gif", "image/gif"}, {"webp", "image/webp"}, {"avif", "image/avif"},
+            {"ico", "image/x-icon"}, {"bmp", "image/bmp"}, {"woff", "font/woff"}, {"woff2", "font/woff2"},
+            {"ttf", "font/ttf"}, {"otf", "font/otf"}, {"mp3", "audio/mpeg"}, {"ogg", "audio/ogg"},
+            {"wav", "audio/wav"}, {"mp4", "video/mp4"}, {"webm", "video/webm"}
+        };
+        for (String[] type : types)
+            BUILT_IN.put(type[0], type[1]);
+    }
+    
+    private final Map<String, String> overrides = new ConcurrentHashMap<>();
+    private final Map<String, String> byExtension = new ConcurrentHashMap<>();
+    
+    /**
+     * Resolves the media type of a resource by the extension of its name.
+     *
+     * @param name the name or path of the resource
+     * @return the type or {@code null} if the extension is missing or unknown
+     */
+    @Nullable
+    public String fromName(@NotNull String name) {
+        String extension = getExtension(name);
+        if (extension == null)
+            return null;
+        
+        String type = byExtension.computeIfAbsent(extension, this::resolve);
+        return type == UNKNOWN? null : type;
+    }
+    
+    /**
+     * Identifies the media type of contents by their first bytes.
+     *
+     * @param prefix the array containing the first bytes
+     * @param length the amount of bytes, of which at most {@link #SNIFF_LIMIT} are used
+     * @return the type, which is {@link #DEFAULT_TYPE} if the contents can't be identified
+     */
+    @NotNull
+    public String sniff(@NotNull byte[] prefix, int length) {
+        length = Math.min(length, SNIFF_LIMIT);
+        String type = TIKA.detect(length == prefix.length? prefix : Arrays.copyOf(prefix, length));
+        return type != null? type : DEFAULT_TYPE;
+    }
+    
+    /**
+     * Maps an extension to a media type, taking precedence over any other mapping.
+     *
+     * @param extension the extension, without the leading dot
+     * @param type the media type
+     */
+    public void override(@NotNull String extension, @NotNull String type) {
+        extension = extension.toLowerCase();
+        overrides.put(extension, type);
+        byExtension.remove(extension);
+    }
+    
+    /**
+     * Loads overrides from a properties file, which maps extensions to media types such as in
+     * {@code md=text/markdown}.
+     *
+     * @param file the properties file
+     * @throws IOException if an I/O error occurs
+     */
+    public void load(@NotNull Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        for (String extension : properties.stringPropertyNames())
+            override(extension, properties.getProperty(extension).trim());
+    }
+    
+    private String resolve(String extension) {
+        String type = overrides.get(extension);
+        if (type == null)
+            type = BUILT_IN.get(extension);
+        if (type == null)
+            type = TIKA.detect("resource." + extension);
+        return type == null || type.equals(DEFAULT_TYPE)? UNKNOWN : type;
+    }
+    
+    @Nullable
+    private static String getExtension(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || dot < name.lastIndexOf('/') || dot == name.length() - 1)
+            return null;
+        return name.substring(dot + 1).toLowerCase();
+    }
+    
+}
@@ -0,0 +1,188 @@
+package tech.eisen.server.content;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * A cache of pages which have been rendered from their {@link HtmlTemplate templates}, for pages which don't differ
+ * per request or only differ per user.
+ * </p>
+ * <p>
+ * A page is only served from the cache for the template it has been rendered from, so a page is rendered again once
+ * its template has been compiled again. Pages which differ per user are cached apart from the others, since the user
+ * name is chosen by the client. Either part of the cache is cleared once it holds too many pages.
+ * </p>
+ */
+public class PageCache {
+    
+    private final static int MAX_PAGES = 1024, MAX_USER_PAGES = 4096;
+    
+    private final Map<Key, Page> pages = new ConcurrentHashMap<>(), userPages = new ConcurrentHashMap<>();
+    
+    /**
+     * Returns a page which doesn't differ per request.
+     *
+     * @param url the url of the page
+     * @param template the current template of the page
+     * @return the page or {@code null} if it hasn't been rendered from the template
+     */
+    @Nullable
+    public Page get(@NotNull URL url, @NotNull HtmlTemplate template) {
+        return get(pages, new Key(url, null), template);
+    }
+    
+    /**
+     * Returns a page which differs only per user.
+     *
+     * @param url the url of the page
+     * @param template the current template of the page
+     * @param user the name of the user or {@code null} for requests without credentials
+     * @return the page or {@code null} if it hasn't been rendered from the template for the user
+     */
+    @Nullable
+    public Page get(@NotNull URL url, @NotNull HtmlTemplate template, @Nullable String user) {
+        return get(userPages, new Key(url, user), template);
+    }
+    
+    /**
+     * Caches a page which doesn't differ per request.
+     *
+     * @param url the url of the page
+     * @param page the page
+     */
+    public void put(@NotNull URL url, @NotNull Page page) {
+        put(pages, MAX_PAGES, new Key(url, null), page);
+    }
+    
+    /**
+     * Caches a page which differs only per user.
+     *
+     * @param url the url of the page
+     * @param user the name of the user or {@code null} for requests without credentials
+     * @param page the page
+     */
+    public void put(@NotNull URL url, @Nullable String user, @NotNull Page page) {
+        put(userPages, MAX_USER_PAGES, new Key(url, user), page);
+    }
+    
+    /**
+     * Drops all pages.
+     */
+    public void clear() {
+        pages.clear();
+        userPages.clear();
+    }
+    
+    // GETTERS
+    
+    public int getSize() {
+        return pages.size();
+    }
+    
+    public int getUserSize() {
+        return userPages.size();
+    }
+    
+    // PRIVATE
+    
+    private static Page get(Map<Key, Page> pages, Key key, HtmlTemplate template) {
+        Page page = pages.get(key);
+        return page != null && page.template == template? page : null;
+    }
+    
+    private static void put(Map<Key, Page> pages, int maximum, Key key, Page page) {
+        if (pages.size() >= maximum)
+            pages.clear();
+        pages.put(key, page);
+    }
+    
+    // SUBCLASSES
+    
+    /**
+     * A rendered page along with the compressed variants which have been requested so far.
+     */
+    public static class Page {
+        
+        private final HtmlTemplate template;
+        private final ByteBuffer contents;
+        private final Map<ContentCoding, ByteBuffer> variants = new ConcurrentHashMap<>();
+        
+        /**
+         * Constructs a new page.
+         *
+         * @param template the template the page has been rendered from
+         * @param contents the UTF-8 encoded page
+         */
+        public Page(@NotNull HtmlTemplate template, @NotNull byte[] contents) {
+            this.template = template;
+            this.contents = ByteBuffer.wrap(contents).asReadOnlyBuffer();
+        }
+        
+        /**
+         * Returns the page encoded with a content coding, which is only encoded on the first call.
+         *
+         * @param coding the content coding
+         * @return a read-only buffer of the encoded page, which may be consumed
+         * @throws IOException if an I/O error occurs
+         */
+        @NotNull
+        public ByteBuffer getContents(@NotNull ContentCoding coding) throws IOException {
+            if (coding == ContentCoding.IDENTITY)
+                return contents.duplicate();
+            try {
+                return variants.computeIfAbsent(coding, c -> {
+                    try {
+                        return ByteBuffer.wrap(c.encode(contents.duplicate(), Deflater.DEFAULT_COMPRESSION))
+                            .asReadOnlyBuffer();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }).duplicate();
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+        }
+        
+        public int getLength() {
+            return contents.remaining();
+        }
+        
+    }
+    
+    private static class Key {
+        
+        private final String url;
+        private final String user;
+        
+        private Key(URL url, String user) {
+            // URL.equals resolves host names
+            this.url = url.toExternalForm();
+            this.user = user;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key key = (Key) obj;
+            return url.equals(key.url) && Objects.equals(user, key.user);
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * url.hashCode() + Objects.hashCode(user);
+        }
+        
+    }
+    
+}
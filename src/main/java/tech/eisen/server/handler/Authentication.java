@@ -0,0 +1,38 @@
+package tech.eisen.server.handler;
+
+import org.jetbrains.annotations.NotNull;
+import tech.eisen.server.http.HttpException;
+import tech.eisen.server.http.HttpHeaders;
+import tech.eisen.server.http.HttpStatus;
+import tech.eisen.server.security.PasswordStore;
+
+/**
+ * Checks the Basic credentials of requests to handlers which are only open to registered users.
+ */
+final class Authentication {
+    
+    private Authentication() {}
+    
+    /**
+     * Checks whether a request carries the credentials of a registered user.
+     *
+     * @param passwords the store of the registered users
+     * @param reqHeaders the headers of the request
+     * @throws HttpException with {@code 401 Unauthorized} if the credentials are missing, malformed or wrong
+     */
+    static void authenticate(@NotNull PasswordStore passwords, @NotNull HttpHeaders reqHeaders) throws HttpException {
+        if (reqHeaders.hasHeader("authorization")) {
+            HttpHeaders.Authorization auth;
+            try {
+                auth = reqHeaders.getAuthorization();
+            } catch (IllegalArgumentException ex) {
+                throw new HttpException(HttpStatus.UNAUTHORIZED, "Malformed credentials", ex);
+            }
+            String user = auth.getUser().toLowerCase();
+            if (passwords.isRegistered(user) && passwords.matchPassword(user, auth.getPassword()))
+                return;
+        }
+        throw new HttpException(HttpStatus.UNAUTHORIZED, "Wrong username or password");
+    }
+    
+}
@@ -0,0 +1,113 @@
+package tech.eisen.server.handler;
+
+import org.jetbrains.annotations.NotNull;
+import tech.eisen.server.EisenServer;
+import tech.eisen.server.LatencyHistogram;
+import tech.eisen.server.QueryMap;
+import tech.eisen.server.ResourceCache;
+import tech.eisen.server.http.*;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+public class CacheAdminHandler implements HttpEventHandler {
+    
+    private final EisenServer server;
+    
+    public CacheAdminHandler(@NotNull EisenServer server) {
+        this.server = server;
+    }
+    
+    /**
+     * <p>
+     * GET /admin/cache: lists the statistics of the resource cache.
+     * </p>
+     * <p>
+     * POST /admin/cache?purge=/prefix: drops everything cached of the resources whose request paths start with the
+     * prefix.
+     * </p>
+     * <p>
+     * POST /admin/cache?reload: drops everything cached and warms the cache up again.
+     * </p>
+     * <p>
+     * Every request requires the credentials of a registered user.
+     * </p>
+     *
+     * @param event the http event
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void handle(HttpEvent event) throws IOException, HttpException {
+        Authentication.authenticate(server.getPasswordStore(), event.getRequestHeaders());
+        
+        StringWriter writer = new StringWriter();
+        PrintWriter printer = new PrintWriter(writer);
+        
+        if (event.getRequest().getMethod() == HttpRequestMethod.POST) {
+            QueryMap query = new QueryMap(event.getRequest().getURI().getQuery());
+            if (query.containsKey("purge")) {
+                String prefix = query.get("purge");
+                if (!prefix.startsWith("/"))
+                    throw new HttpException(HttpStatus.BAD_REQUEST, "Prefix must start with /");
+                
+                Set<URL> urls = server.getResourceIndex().findAll(prefix);
+                for (URL url : urls)
+                    server.getResourceCache().invalidate(url);
+                printer.printf("purged %d%n", urls.size());
+            }
+            else if (query.containsKey("reload")) {
+                long before = System.currentTimeMillis();
+                server.reload();
+                printer.printf("reloaded in %dms%n", System.currentTimeMillis() - before);
+            }
+            else throw new HttpException(HttpStatus.BAD_REQUEST, "Either purge or reload is required");
+        }
+        else {
+            printStatistics(printer, server.getResourceCache());
+            printer.printf("templates %d%n", server.getTemplateCache().getSize());
+            printer.printf("pages %d%n", server.getPageCache().getSize());
+            printer.printf("pages.user %d%n", server.getPageCache().getUserSize());
+        }
+        
+        printer.flush();
+        byte[] response = writer.toString().getBytes(StandardCharsets.UTF_8);
+        
+        HttpHeaders resHeaders = event.getResponseHeaders();
+        resHeaders.setContentType("text/plain", StandardCharsets.UTF_8);
+        resHeaders.setContentLength(response.length);
+        resHeaders.set("cache-control", "no-store");
+        event.setStatus(HttpStatus.OK);
+        event.writeHeaders();
+        event.getResponseStream().write(response);
+    }
+    
+    private static void printStatistics(PrintWriter printer, ResourceCache cache) {
+        printer.printf("entries %d%n", cache.getEntryCount());
+        printer.printf("bytes.heap %d%n", cache.getSize());
+        printer.printf("bytes.heap.maximum %d%n", cache.getMaximumSize());
+        printer.printf("bytes.off-heap %d%n", cache.getOffHeapSize());
+        printer.printf("bytes.off-heap.maximum %d%n", cache.getMaximumOffHeapSize());
+        printer.printf("data.hits %d%n", cache.getHitCount());
+        printer.printf("data.misses %d%n", cache.getMissCount());
+        printer.printf("attributes.hits %d%n", cache.getAttributeHitCount());
+        printer.printf("attributes.misses %d%n", cache.getAttributeMissCount());
+        printer.printf("evictions %d%n", cache.getEvictionCount());
+        printer.printf("evictions.bytes %d%n", cache.getEvictedBytes());
+        printer.printf("invalidations %d%n", cache.getInvalidationCount());
+        
+        LatencyHistogram loadTimes = cache.getLoadTimes();
+        printer.printf("loads %d%n", loadTimes.getCount());
+        printer.printf("loads.p50.micros %d%n", loadTimes.getPercentile(50));
+        printer.printf("loads.p99.micros %d%n", loadTimes.getPercentile(99));
+        for (int i = 0; i < loadTimes.getBucketCount(); i++) {
+            long count = loadTimes.getCount(i);
+            if (count == 0)
+                continue;
+            long bound = loadTimes.getUpperBound(i);
+            printer.printf("loads.below.micros.%s %d%n", bound == Long.MAX_VALUE? "inf" : Long.toString(bound), count);
+        }
+    }
+    
+}
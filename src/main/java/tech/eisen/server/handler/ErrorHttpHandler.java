@@ -25,8 +25,11 @@ public class ErrorHttpHandler implements HttpEventHandler {
     
     @Override
     public void handle(HttpEvent event) throws IOException {
-        if (event.hasWrittenHeaders())
+        if (event.hasWrittenHeaders()) {
+            // the response is incomplete, so the client can only tell that it ended by the connection closing
+            event.setKeepAlive(false);
             return;
+        }
         
         HttpStatus status = error.getStatus();
         
@@ -73,25 +76,27 @@ public class ErrorHttpHandler implements HttpEventHandler {
         HttpHeaders resHeaders = event.getResponseHeaders();
         resHeaders.clear();
         resHeaders.setContentType(type, null);
-        resHeaders.setContentLength(bytes.length);
         
         if (status == HttpStatus.UNAUTHORIZED)
             resHeaders.set("www-authenticate", "Basic realm=\"Login\"");
         
         if (bytes.length < 1) {
             resHeaders.setContentEncoding("identity");
-            event.writeHeaders();
-            event.getResponseStream().write(bytes);
         }
         
         else {
             resHeaders.setContentEncoding("gzip");
-            event.writeHeaders();
             
-            GZIPOutputStream gzipStream = new GZIPOutputStream(event.getResponseStream());
-            gzipStream.write(bytes, 0, bytes.length);
-            gzipStream.finish();
+            ByteArrayOutputStream gzipBytes = new ByteArrayOutputStream(bytes.length / 2);
+            try (GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBytes)) {
+                gzipStream.write(bytes, 0, bytes.length);
+            }
+            bytes = gzipBytes.toByteArray();
         }
+        
+        resHeaders.setContentLength(bytes.length);
+        event.writeHeaders();
+        event.getResponseStream().write(bytes);
     }
     
     private static String getStackTraceAsString(Throwable ex) {
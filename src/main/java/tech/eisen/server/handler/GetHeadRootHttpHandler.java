@@ -6,11 +6,18 @@ import tech.eisen.server.EisenServer;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPOutputStream;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.Deflater;
 
-import org.apache.commons.io.IOUtils;
 import tech.eisen.server.ResourceCache;
 import tech.eisen.server.content.*;
 import tech.eisen.server.http.*;
@@ -18,8 +25,6 @@ import tech.eisen.server.http.HttpHeaders;
 
 public class GetHeadRootHttpHandler implements HttpEventHandler {
     
-    private final static ClassLoader CLASS_LOADER = GetHeadRootHttpHandler.class.getClassLoader();
-    
     private final EisenServer server;
     
     public GetHeadRootHttpHandler(@NotNull EisenServer server) {
@@ -55,12 +60,7 @@ public class GetHeadRootHttpHandler implements HttpEventHandler {
     private void handleGetOrHeadURL(HttpEvent event, boolean get, URL url, URI uri) throws IOException,
         HttpException {
         
-        if (uri.getPath().equals("/")) {
-            url = getClass().getResource("/html/index.html");
-        }
-        
         ResourceCache cache = server.getResourceCache();
-        //System.out.println("is " + url + " cached = " + cache.has(url));
         
         FileAttributes attributes;
         final boolean newAttributes;
@@ -76,10 +76,15 @@ public class GetHeadRootHttpHandler implements HttpEventHandler {
             contentType = "application/octet-stream";
         long lastModified = attributes.lastModifiedTime().toMillis();
         
+        if (!contentType.equals("text/html")) {
+            handleGetOrHeadStatic(event, get, url, contentType, lastModified);
+            return;
+        }
+        
         event.setStatus(HttpStatus.OK);
         
         HttpHeaders resHeaders = event.getResponseHeaders();
-        resHeaders.setContentType(contentType, null);
+        resHeaders.setContentType(contentType, StandardCharsets.UTF_8);
         resHeaders.setLastModified(lastModified);
         
         if (!get) {
@@ -87,62 +92,445 @@ public class GetHeadRootHttpHandler implements HttpEventHandler {
             return;
         }
         
-        byte[] bytes;
+        HtmlTemplate template;
+        try {
+            template = getTemplate(cache, newAttributes, url, contentType, lastModified);
+        } catch (IOException ex) {
+            throw new HttpException(HttpStatus.SERVER_ERROR, "Error while loading resource", ex);
+        }
+        PageCache.Page page = getCachedPage(template, event, url);
+        if (page == null && event.isChunkedSupported()) {
+            ContentCoding coding = isCompressionException(contentType)? ContentCoding.IDENTITY : getCoding(event);
+            // compressed pages and pages which embed resources are sent while they are rendered
+            if (coding != ContentCoding.IDENTITY || template.getFunctions().contains("embed")) {
+                if (!isCompressionException(contentType))
+                    resHeaders.set("vary", "accept-encoding");
+                resHeaders.setContentEncoding(coding.getName());
+                OutputStream body = coding.openStream(event.writeChunkedHeaders(), Deflater.DEFAULT_COMPRESSION);
+                createPreProcessor(event).render(template, body);
+                // only a complete body ends with the last chunk, an incomplete one ends with the connection
+                body.close();
+                return;
+            }
+        }
+        
+        List<ByteBuffer> segments = page == null? preProcess(template, event) : null;
+        long length = 0;
+        if (page != null)
+            length = page.getLength();
+        else for (ByteBuffer segment : segments)
+            length += segment.remaining();
+        
+        ContentCoding coding = ContentCoding.IDENTITY;
+        if (isCompressible(length, contentType)) {
+            resHeaders.set("vary", "accept-encoding");
+            coding = getCoding(event);
+        }
+        if (page != null) {
+            // cached pages keep their compressed variants
+            segments = Collections.singletonList(page.getContents(coding));
+            length = segments.get(0).remaining();
+        }
+        // other pre-processed pages differ per request, so they are compressed every time
+        else if (coding != ContentCoding.IDENTITY) {
+            byte[] encoded = coding.encode(segments, Deflater.DEFAULT_COMPRESSION);
+            segments = Collections.singletonList(ByteBuffer.wrap(encoded));
+            length = encoded.length;
+        }
+        
+        resHeaders.setContentEncoding(coding.getName());
+        resHeaders.setContentLength(length);
+        event.writeHeaders();
+        
+        for (ByteBuffer segment : segments)
+            event.writeBody(segment);
+    }
+    
+    /**
+     * <p>
+     * Prepares a resource ahead of its first request, so that the request doesn't pay for loading it.
+     * </p>
+     * <p>
+     * Pages which haven't been cached yet are loaded and run through the constant-mode pass of the pre-processor.
+     * Other resources are loaded and their compressed variants are encoded on a given executor.
+     * </p>
+     *
+     * @param url the url of the resource
+     * @param executor the executor to encode compressed variants with
+     * @throws IOException if an I/O error occurs
+     */
+    public void prepare(@NotNull URL url, @NotNull Executor executor) throws IOException {
+        ResourceCache cache = server.getResourceCache();
+        
+        final boolean newAttributes = cache.updateAttributes(url);
+        FileAttributes attributes = cache.getAttributes(url);
+        String contentType = attributes.getMediaType();
+        if (contentType == null)
+            contentType = "application/octet-stream";
+        
+        if (contentType.equals("text/html")) {
+            if (newAttributes) {
+                try {
+                    getTemplate(cache, true, url, contentType, attributes.lastModifiedTime().toMillis());
+                } catch (IOException | RuntimeException ex) {
+                    // the first request must run the pass again, which it only does for new attributes
+                    cache.invalidate(url);
+                    throw ex;
+                }
+            }
+            return;
+        }
+        
+        ByteBuffer content = cache.getBuffer(url);
+        cache.getETag(url);
+        if (isCompressible(content.remaining(), contentType))
+            cache.prepareVariants(url, executor);
+    }
+    
+    /**
+     * <p>
+     * Handles a request of a static resource, which is never pre-processed.
+     * </p>
+     * <p>
+     * The response carries a strong entity tag of the representation, so that a request with a matching
+     * {@code If-None-Match} header, or a request with an {@code If-Modified-Since} header which is not older than the
+     * resource, is answered with {@code 304 Not Modified} and no body. Neither case touches the contents.
+     * </p>
+     */
+    private void handleGetOrHeadStatic(HttpEvent event, boolean get, URL url, String contentType, long lastModified)
+        throws IOException, HttpException {
+        
+        ResourceCache cache = server.getResourceCache();
         
-        try (InputStream urlStream = cache.openStream(url)) {
-            bytes = contentType.equals("text/html")?
-                preProcess(urlStream, event, newAttributes? cache : null, url, contentType, lastModified) :
-                IOUtils.toByteArray(urlStream);
+        ByteBuffer content;
+        String etag;
+        // large resources are cached off the heap and written from there
+        try {
+            content = cache.getBuffer(url);
+            etag = cache.getETag(url);
         } catch (IOException ex) {
             throw new HttpException(HttpStatus.SERVER_ERROR, "Error while loading resource", ex);
         }
         
-        EncodingStream<?> stream = getEncodingStream(bytes.length, contentType, event);
-        resHeaders.setContentEncoding(stream.getEncoding());
-        resHeaders.setContentLength(bytes.length);
+        HttpHeaders reqHeaders = event.getRequestHeaders(), resHeaders = event.getResponseHeaders();
+        ContentCoding coding = ContentCoding.IDENTITY;
+        ByteBuffer body = content;
+        
+        // ranges are only served of the contents as they are, whose bytes don't depend on when they were compressed
+        boolean ranged = get && reqHeaders.hasHeader("range")
+            && isRangeCurrent(reqHeaders.getIfRange(), etag, lastModified);
+        
+        if (isCompressible(content.remaining(), contentType)) {
+            resHeaders.set("vary", "accept-encoding");
+            if (!ranged)
+                coding = getCoding(event);
+        }
+        resHeaders.setLastModified(lastModified);
+        resHeaders.setAcceptRanges("bytes");
+        
+        // conditional requests are answered before the variant is looked up, which would start compressing it
+        ContentCoding notModified = getNotModifiedCoding(reqHeaders, cache, url, etag, lastModified, coding);
+        if (notModified != null) {
+            resHeaders.setETag(ResourceCache.getETag(etag, notModified));
+            event.setStatus(HttpStatus.NOT_MODIFIED);
+            event.writeHeaders();
+            return;
+        }
+        
+        // static resources are only ever compressed once, in the background
+        if (coding != ContentCoding.IDENTITY) {
+            body = cache.getVariant(url, coding);
+            if (body == null) {
+                coding = ContentCoding.IDENTITY;
+                body = content;
+            }
+        }
+        resHeaders.setETag(ResourceCache.getETag(etag, coding));
+        
+        if (ranged) {
+            List<HttpHeaders.ByteRange> ranges = reqHeaders.getRange().resolve(content.remaining());
+            if (ranges != null) {
+                handleRanges(event, content, contentType, ranges);
+                return;
+            }
+        }
+        
+        event.setStatus(HttpStatus.OK);
+        resHeaders.setContentType(contentType, null);
+        resHeaders.setContentEncoding(coding.getName());
+        resHeaders.setContentLength(body.remaining());
+        event.writeHeaders();
+        
+        if (get)
+            event.writeBody(body);
+    }
+    
+    /**
+     * <p>
+     * Responds to a range request with the requested slices of the contents, which are never copied.
+     * </p>
+     * <p>
+     * A single range is served as it is, multiple ranges as the parts of a {@code multipart/byteranges} body. If none
+     * of the ranges is satisfiable, the response is {@code 416 Range Not Satisfiable}.
+     * </p>
+     */
+    private static void handleRanges(HttpEvent event, ByteBuffer content, String contentType,
+                                     List<HttpHeaders.ByteRange> ranges) throws IOException {
+        HttpHeaders resHeaders = event.getResponseHeaders();
+        final long length = content.remaining();
+        
+        if (ranges.isEmpty()) {
+            event.setStatus(HttpStatus.RANGE_NOT_SATISFIABLE);
+            resHeaders.setUnsatisfiedRange(length);
+            resHeaders.setContentLength(0);
+            event.writeHeaders();
+            return;
+        }
+        
+        event.setStatus(HttpStatus.PARTIAL_CONTENT);
+        resHeaders.setContentEncoding(ContentCoding.IDENTITY.getName());
+        
+        if (ranges.size() == 1) {
+            HttpHeaders.ByteRange range = ranges.get(0);
+            resHeaders.setContentType(contentType, null);
+            resHeaders.setContentRange(range.getFirst(), range.getLast(), length);
+            resHeaders.setContentLength(range.getLength());
+            event.writeHeaders();
+            event.writeBody(slice(content, range));
+            return;
+        }
+        
+        final String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        byte[][] partHeaders = new byte[ranges.size()][];
+        long contentLength = 0;
+        for (int i = 0; i < partHeaders.length; i++) {
+            HttpHeaders.ByteRange range = ranges.get(i);
+            String partHeader = (i == 0? "" : "\r\n") + "--" + boundary + "\r\n"
+                + "content-type: " + contentType + "\r\n"
+                + "content-range: bytes " + range.getFirst() + '-' + range.getLast() + '/' + length + "\r\n\r\n";
+            partHeaders[i] = partHeader.getBytes(StandardCharsets.US_ASCII);
+            contentLength += partHeaders[i].length + range.getLength();
+        }
+        byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += end.length;
+        
+        resHeaders.setContentType("multipart/byteranges; boundary=" + boundary, null);
+        resHeaders.setContentLength(contentLength);
         event.writeHeaders();
         
-        OutputStream resBodyStream = stream.openStream();
-        resBodyStream.write(bytes);
-        stream.finish(resBodyStream);
+        for (int i = 0; i < partHeaders.length; i++) {
+            event.writeBody(ByteBuffer.wrap(partHeaders[i]));
+            event.writeBody(slice(content, ranges.get(i)));
+        }
+        event.writeBody(ByteBuffer.wrap(end));
+    }
+    
+    private static ByteBuffer slice(ByteBuffer content, HttpHeaders.ByteRange range) {
+        ByteBuffer slice = content.duplicate();
+        slice.position(content.position() + (int) range.getFirst());
+        slice.limit(content.position() + (int) range.getLast() + 1);
+        return slice;
     }
     
     /**
-     * Pre-processes data from an input-stream.
+     * Evaluates the {@code If-Range} header of a request, which only allows a range to be served if the client's
+     * representation is still current. Entity tags are compared strongly.
      *
-     * @param stream the stream which's bytes are to be pre-processed
-     * @param event the event
-     * @param cache the cache or null if nothing is to be cached
+     * @param ifRange the raw value of the header or {@code null} if there is none
+     * @param etag the tag of the contents of the resource
+     * @param lastModified the last modified-date of the resource
+     * @return whether the ranges may be served
+     */
+    private static boolean isRangeCurrent(@Nullable String ifRange, String etag, long lastModified) {
+        if (ifRange == null)
+            return true;
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            return ifRange.equals(etag);
+        
+        long millis = HttpUtil.parseHttpTime(ifRange);
+        // HTTP dates have a precision of one second
+        return millis >= 0 && millis / 1000 == lastModified / 1000;
+    }
+    
+    /**
+     * Evaluates the conditional headers of a request. {@code If-Modified-Since} is only evaluated if there is no
+     * {@code If-None-Match} header. No variant of the contents is looked up, so answering a conditional request never
+     * starts compressing the contents.
+     *
+     * @param reqHeaders the request headers
+     * @param cache the cache
+     * @param url the url
+     * @param etag the tag of the contents of the resource
+     * @param lastModified the last modified-date of the resource
+     * @param coding the coding the client accepts
+     * @return the coding of the representation the client has or {@code null} if it isn't current anymore
+     */
+    @Nullable
+    private static ContentCoding getNotModifiedCoding(HttpHeaders reqHeaders, ResourceCache cache, URL url,
+                                                      String etag, long lastModified, ContentCoding coding) {
+        HttpHeaders.EntityTags ifNoneMatch = reqHeaders.getIfNoneMatch();
+        if (ifNoneMatch != null) {
+            // the client may have any of the representations of the contents
+            for (ContentCoding candidate : ContentCoding.values())
+                if (ifNoneMatch.matches(ResourceCache.getETag(etag, candidate)))
+                    return candidate;
+            return null;
+        }
+        
+        HttpHeaders.LastModified ifModifiedSince = reqHeaders.getIfModifiedSince();
+        if (ifModifiedSince == null || ifModifiedSince.getMillis() < 0)
+            return null;
+        // HTTP dates have a precision of one second
+        if (lastModified / 1000 > ifModifiedSince.getMillis() / 1000)
+            return null;
+        // the client has the representation it would be sent now
+        return coding == ContentCoding.IDENTITY || cache.hasVariant(url, coding)? coding : ContentCoding.IDENTITY;
+    }
+    
+    /**
+     * <p>
+     * Returns the compiled template of a page, which is compiled once per version of the page.
+     * </p>
+     * <p>
+     * New attributes mean that the contents have been loaded again, so the constant-mode pass of the pre-processor runs
+     * first and the template is compiled from its result.
+     * </p>
+     *
+     * @param cache the cache
+     * @param newAttributes whether the attributes of the page have been loaded again
      * @param url the url
      * @param type the media type
      * @param lastModified the last modified-date of the url
-     * @return the pre-processed bytes
+     * @return the template
      * @throws IOException if an I/O error occurs
      */
-    private byte[] preProcess(InputStream stream, HttpEvent event,
-                              @Nullable ResourceCache cache, URL url, String type, long lastModified)
-        throws IOException {
-        final Map<String, String> env = new HashMap<>();
-        env.put("server.port", Integer.toString(server.getPort()));
-        
-        byte[] preBytes = null;
-        if (cache != null) {
-            //System.out.println("initial pp: " + url);
-            HtmlPreProcessorPipe htmlPP = new HtmlPreProcessorPipe(server, env, true);
-            preBytes = htmlPP.pipeToBytes(new InputStreamReader(stream));
-            cache.store(url, type, lastModified, preBytes);
+    private HtmlTemplate getTemplate(ResourceCache cache, boolean newAttributes, URL url, String type,
+                                     long lastModified) throws IOException {
+        HtmlTemplateCache templates = server.getTemplateCache();
+        HtmlTemplate template = newAttributes? null : templates.get(url, null, lastModified);
+        if (template != null)
+            return template;
+        
+        try (InputStream stream = cache.openStream(url)) {
+            InputStream source = newAttributes
+                ? new ByteArrayInputStream(preProcessConstants(stream, cache, url, type, lastModified))
+                : stream;
+            template = HtmlTemplate.compile(new InputStreamReader(source, StandardCharsets.UTF_8));
         }
+        templates.put(url, null, lastModified, template);
+        return template;
+    }
+    
+    /**
+     * Renders a page for a request, which only substitutes the values of the request into its compiled template. The
+     * page is rendered into UTF-8 encoded segments, most of which are the literal chunks the template has encoded.
+     *
+     * @param template the template of the page
+     * @param event the http event
+     * @return the segments of the pre-processed page
+     * @throws IOException if an I/O error occurs
+     */
+    private List<ByteBuffer> preProcess(HtmlTemplate template, HttpEvent event) throws IOException {
+        List<ByteBuffer> segments = new ArrayList<>(template.getNodes().size());
+        createPreProcessor(event).render(template, segments);
+        return segments;
+    }
+    
+    private HtmlPreProcessorPipe createPreProcessor(HttpEvent event) {
+        final Map<String, String> env = createEnvironment();
         
-        HttpHeaders reqHeaders = event.getRequestHeaders();
         env.put("user.ip", event.getPeer().getHostName());
         env.put("user.port", Integer.toString(event.getPeer().getPort()));
-        if (reqHeaders.hasHeader("authorization")) {
-            env.put("user.name", reqHeaders.getAuthorization().getUser());
+        String user = getUser(event.getRequestHeaders());
+        if (user != null) {
+            env.put("user.name", user);
         }
         
-        HtmlPreProcessorPipe htmlPP = new HtmlPreProcessorPipe(server, env);
-        InputStream stream2 = preBytes != null? new ByteArrayInputStream(preBytes) : stream;
-        return htmlPP.pipeToBytes(new InputStreamReader(stream2));
+        return new HtmlPreProcessorPipe(server, env);
+    }
+    
+    /**
+     * <p>
+     * Returns a page from the page cache if its template doesn't depend on the request, or only on the name of the
+     * user. The page is rendered and cached if it isn't cached yet.
+     * </p>
+     * <p>
+     * Pages which embed resources during the request are never cached, since an embedded resource may be modified
+     * apart from the page and its dependencies are not known.
+     * </p>
+     *
+     * @param template the template of the page
+     * @param event the http event
+     * @param url the url of the page
+     * @return the page or {@code null} if it must be rendered for every request
+     * @throws IOException if an I/O error occurs
+     */
+    @Nullable
+    private PageCache.Page getCachedPage(HtmlTemplate template, HttpEvent event, URL url) throws IOException {
+        Set<String> keys = template.getKeys();
+        if (template.getFunctions().contains("embed") || keys.contains("user.ip") || keys.contains("user.port"))
+            return null;
+        
+        PageCache pages = server.getPageCache();
+        final boolean perUser = keys.contains("user.name");
+        String user = perUser? getUser(event.getRequestHeaders()) : null;
+        PageCache.Page page = perUser? pages.get(url, template, user) : pages.get(url, template);
+        if (page != null)
+            return page;
+        
+        List<ByteBuffer> segments = preProcess(template, event);
+        int length = 0;
+        for (ByteBuffer segment : segments)
+            length += segment.remaining();
+        ByteBuffer contents = ByteBuffer.allocate(length);
+        for (ByteBuffer segment : segments)
+            contents.put(segment);
+        
+        page = new PageCache.Page(template, contents.array());
+        if (perUser)
+            pages.put(url, user, page);
+        else
+            pages.put(url, page);
+        return page;
+    }
+    
+    @Nullable
+    private static String getUser(HttpHeaders reqHeaders) {
+        if (!reqHeaders.hasHeader("authorization"))
+            return null;
+        try {
+            return reqHeaders.getAuthorization().getUser();
+        } catch (IllegalArgumentException ex) {
+            // malformed credentials are treated like none, as the user is only inserted into pages
+            return null;
+        }
+    }
+    
+    /**
+     * Runs the constant-mode pass of the pre-processor and caches its result in place of the original contents.
+     *
+     * @param stream the stream of the original contents
+     * @param cache the cache
+     * @param url the url
+     * @param type the media type
+     * @param lastModified the last modified-date of the url
+     * @return the pre-processed bytes
+     * @throws IOException if an I/O error occurs
+     */
+    private byte[] preProcessConstants(InputStream stream, ResourceCache cache, URL url, String type,
+                                       long lastModified) throws IOException {
+        HtmlPreProcessorPipe htmlPP = new HtmlPreProcessorPipe(server, createEnvironment(), true);
+        Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
+        byte[] preBytes = htmlPP.pipeToBytes(reader, StandardCharsets.UTF_8);
+        cache.store(url, type, lastModified, preBytes, htmlPP.getEmbedded());
+        return preBytes;
+    }
+    
+    private Map<String, String> createEnvironment() {
+        final Map<String, String> env = new HashMap<>();
+        env.put("server.port", Integer.toString(server.getPort()));
+        return env;
     }
     
     /* @Deprecated
@@ -183,55 +571,23 @@ public class GetHeadRootHttpHandler implements HttpEventHandler {
         else event.writeHeaders();
     } */
     
-    private EncodingStream<?> getEncodingStream(long size, String contentType, HttpEvent event) {
-        if (size <= 256 || isCompressionException(contentType))
-            return new IdentityEncodingStream(event.getResponseStream());
-        
-        HttpHeaders.AcceptEncoding acceptEncoding = event.getRequestHeaders().getAcceptEncoding();
-        if (acceptEncoding == null || acceptEncoding.acceptsEncoding("gzip")) {
-            
-            return new EncodingStream<GZIPOutputStream>() {
-                @Override
-                public GZIPOutputStream openStream() throws IOException {
-                    return new GZIPOutputStream(event.getResponseStream());
-                }
-                
-                @Override
-                public String getEncoding() {
-                    return "gzip";
-                }
+    private static boolean isCompressible(long size, String contentType) {
+        return size > 256 && !isCompressionException(contentType);
+    }
                 
-                @Override
-                public void finish(OutputStream stream) throws IOException {
-                    ((GZIPOutputStream) stream).finish();
-                }
-            };
-        }
-        
-        else return new IdentityEncodingStream(event.getResponseStream());
+    private static ContentCoding getCoding(HttpEvent event) {
+        HttpHeaders.AcceptEncoding acceptEncoding = event.getRequestHeaders().getAcceptEncoding();
+        if (acceptEncoding == null || acceptEncoding.acceptsEncoding(ContentCoding.GZIP.getName()))
+            return ContentCoding.GZIP;
+        if (acceptEncoding.acceptsEncoding(ContentCoding.DEFLATE.getName()))
+            return ContentCoding.DEFLATE;
+        return ContentCoding.IDENTITY;
     }
     
     @Nullable
     private URL findURL(URI uri) {
         String path = uri.getPath();
-        if (path.equals("/"))
-            return CLASS_LOADER.getResource("html/index.html");
-        
-        String htmlURI = "html" + path;
-        URL url = CLASS_LOADER.getResource(htmlURI);
-        if (url == null) {
-            url = CLASS_LOADER.getResource(htmlURI + ".html");
-        }
-        if (url == null) {
-            try {
-                File file = new File(server.getDirectory(), path.substring(1));
-                if (file.isFile())
-                    return file.toURI().toURL();
-            } catch (MalformedURLException e) {
-                return null;
-            }
-        }
-        return url;
+        return path == null? null : server.getResourceIndex().find(path);
     }
     
     private static boolean isCompressionException(String contentType) {
@@ -242,6 +598,8 @@ public class GetHeadRootHttpHandler implements HttpEventHandler {
             case "multipart/x-gzip":
             case "application/x-tar":
             case "application/x-gtar":
+            case "application/zip":
+            case "font/woff2":
                 return true;
             
             case "image/bmp":
@@ -253,37 +611,5 @@ public class GetHeadRootHttpHandler implements HttpEventHandler {
         return contentType.startsWith("video") || contentType.startsWith("audio") || contentType.startsWith("image");
     }
     
-    private static interface EncodingStream<T extends OutputStream> {
-        
-        abstract T openStream() throws IOException;
-        
-        abstract String getEncoding();
-        
-        abstract void finish(OutputStream stream) throws IOException;
-        
-    }
-    
-    private static class IdentityEncodingStream implements EncodingStream<OutputStream> {
-        
-        private final OutputStream stream;
-        
-        public IdentityEncodingStream(OutputStream stream) {
-            this.stream = stream;
-        }
-        
-        @Override
-        public OutputStream openStream() {
-            return stream;
-        }
-        
-        @Override
-        public String getEncoding() {
-            return "identity";
-        }
-        
-        @Override
-        public void finish(OutputStream stream) {}
-        
-    }
-    
 }
+    
\ No newline at end of file
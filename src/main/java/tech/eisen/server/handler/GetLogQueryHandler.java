@@ -20,8 +20,17 @@ public class GetLogQueryHandler implements HttpEventHandler {
         this.server = server;
     }
     
+    /**
+     * GET /log: lists the entries of the tracker log, which may be filtered by topic, date range and day of the week.
+     * The log holds the host names of visitors, so every request requires the credentials of a registered user.
+     *
+     * @param event the http event
+     * @throws IOException if an I/O error occurs
+     */
     @Override
-    public void handle(HttpEvent event) throws IOException {
+    public void handle(HttpEvent event) throws IOException, HttpException {
+        Authentication.authenticate(server.getPasswordStore(), event.getRequestHeaders());
+        
         StringWriter writer = new StringWriter();
         @SuppressWarnings("MismatchedQueryAndUpdateOfCollection")
         QueryMap query = new QueryMap(event.getRequest().getURI().getQuery());
@@ -60,10 +69,7 @@ public class GetLogQueryHandler implements HttpEventHandler {
         responseHeaders.setContentLength(response.length);
         event.setStatus(HttpStatus.OK);
         event.writeHeaders();
-        
-        try (OutputStream bodyStream = event.getResponseStream()) {
-            bodyStream.write(response);
-        }
+        event.getResponseStream().write(response);
     }
     
     private static DayOfWeek parseDayOfWeek(String str) {
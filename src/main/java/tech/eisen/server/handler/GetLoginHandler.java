@@ -36,7 +36,12 @@ public class GetLoginHandler implements HttpEventHandler {
         
         if (!fail) {
             PasswordStore passwords = server.getPasswordStore();
-            HttpHeaders.Authorization auth = reqHeaders.getAuthorization();
+            HttpHeaders.Authorization auth;
+            try {
+                auth = reqHeaders.getAuthorization();
+            } catch (IllegalArgumentException ex) {
+                throw new HttpException(HttpStatus.UNAUTHORIZED, "Malformed credentials", ex);
+            }
             String user = auth.getUser().toLowerCase();
             char[] pw = auth.getPassword();
             System.out.println(user + "; " + new String(pw));
@@ -53,7 +58,7 @@ public class GetLoginHandler implements HttpEventHandler {
         else {
             event.setStatus(HttpStatus.MOVED_PERMANENTLY);
             resHeaders.setLocation("/");
-            //resHeaders.setContentLength(1);
+            resHeaders.setContentLength(0);
             //resHeaders.setContentType("text/plain", null);
             event.writeHeaders();
             //event.getResponseStream().write('\n');
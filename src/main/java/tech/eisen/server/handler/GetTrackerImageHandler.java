@@ -13,9 +13,14 @@ import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class GetTrackerImageHandler implements HttpEventHandler {
     
@@ -37,6 +42,9 @@ public class GetTrackerImageHandler implements HttpEventHandler {
     
     private final EisenServer server;
     
+    // serializes appends to the log file without pinning virtual threads the way a monitor would
+    private final Lock logLock = new ReentrantLock();
+    
     public GetTrackerImageHandler(@NotNull EisenServer server) {
         this.server = server;
     }
@@ -72,8 +80,8 @@ public class GetTrackerImageHandler implements HttpEventHandler {
             String topic = queryMap.get("topic");
             String meta = queryMap.getOrDefault("meta", "");
             
-            try (Writer writer = new FileWriter(server.getTrackerLogFile(), true);
-                 CSVPrinter printer = new CSVPrinter(writer, Main.CSV_FORMAT)) {
+            StringBuilder record = new StringBuilder();
+            try (CSVPrinter printer = new CSVPrinter(record, Main.CSV_FORMAT)) {
                 printer.print(LocalDate.now().toString());
                 printer.print(LocalTime.now().toString());
                 printer.print(event.getPeer().getHostName());
@@ -81,6 +89,8 @@ public class GetTrackerImageHandler implements HttpEventHandler {
                 printer.print(meta);
                 printer.println();
             }
+            
+            appendToLog(record.toString().getBytes(StandardCharsets.UTF_8));
         }
         
         byte[] response = imageToBytes(createRandomTrackerImage(4, 4));
@@ -90,9 +100,16 @@ public class GetTrackerImageHandler implements HttpEventHandler {
         responseHeaders.setContentType("image/png", null);
         responseHeaders.setContentLength(response.length);
         event.writeHeaders();
-        
-        try (OutputStream bodyStream = event.getResponseStream()) {
-            bodyStream.write(response);
+        event.getResponseStream().write(response);
+    }
+    
+    private void appendToLog(byte[] record) throws IOException {
+        logLock.lock();
+        try {
+            Files.write(server.getTrackerLogFile().toPath(), record,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } finally {
+            logLock.unlock();
         }
     }
     
@@ -0,0 +1,196 @@
+package tech.eisen.server.handler.match;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import tech.eisen.server.handler.HttpEventHandler;
+import tech.eisen.server.http.HttpRequestMethod;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Routes requests to handlers using one tree of path segments per {@link HttpRequestMethod}.
+ * </p>
+ * <p>
+ * Routes are registered using patterns made of segments separated by {@code /}:
+ * <ul>
+ *     <li>{@code /a/b} is an exact route, matching only the path {@code /a/b}</li>
+ *     <li>{@code /a/{name}} is a parameterized route, matching any single segment in place of {@code {name}}</li>
+ *     <li>{@code /a/*} is a prefix route, matching {@code /a} and any path below it</li>
+ * </ul>
+ * Empty segments are ignored, so that {@code /a/} and {@code /a} are the same path.
+ * </p>
+ * <p>
+ * A lookup descends the tree once, which makes its cost linear in the length of the path. Precedence is
+ * deterministic and independent of the order of registration:
+ * <ol>
+ *     <li>a static segment is preferred over a parameter at the same position</li>
+ *     <li>an exact or parameterized route is preferred over a prefix route ending at the same node</li>
+ *     <li>if the descent fails, the longest prefix route passed on the way is chosen</li>
+ * </ol>
+ * </p>
+ */
+public class RequestRouter {
+    
+    private final static String PREFIX_SEGMENT = "*";
+    
+    private final Map<HttpRequestMethod, Node> trees = new EnumMap<>(HttpRequestMethod.class);
+    
+    /**
+     * Registers a route.
+     *
+     * @param method the request method
+     * @param pattern the path pattern
+     * @param handler the handler
+     * @throws IllegalArgumentException if the pattern is malformed or an equivalent route has been registered
+     */
+    public void add(@NotNull HttpRequestMethod method, @NotNull String pattern, @NotNull HttpEventHandler handler) {
+        Node node = trees.computeIfAbsent(method, m -> new Node());
+        List<String> segments = split(pattern);
+        
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            
+            if (segment.equals(PREFIX_SEGMENT)) {
+                if (i != segments.size() - 1)
+                    throw new IllegalArgumentException("'*' must be the last segment of " + pattern);
+                if (node.prefixHandler != null)
+                    throw new IllegalArgumentException("Duplicate prefix route " + method + " " + pattern);
+                node.prefixHandler = handler;
+                return;
+            }
+            
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                String name = segment.substring(1, segment.length() - 1);
+                if (name.isEmpty())
+                    throw new IllegalArgumentException("Unnamed parameter in " + pattern);
+                if (node.paramChild == null) {
+                    node.paramChild = new Node();
+                    node.paramName = name;
+                }
+                else if (!node.paramName.equals(name))
+                    throw new IllegalArgumentException("Parameter {" + name + "} of " + pattern
+                        + " conflicts with {" + node.paramName + "}");
+                node = node.paramChild;
+            }
+            else node = node.staticChildren.computeIfAbsent(segment, s -> new Node());
+        }
+        
+        if (node.exactHandler != null)
+            throw new IllegalArgumentException("Duplicate route " + method + " " + pattern);
+        node.exactHandler = handler;
+    }
+    
+    /**
+     * Finds the route of a request.
+     *
+     * @param method the request method
+     * @param path the decoded request path
+     * @return the route or {@code null} if no route matches
+     */
+    @Nullable
+    public Route route(@NotNull HttpRequestMethod method, @Nullable String path) {
+        Node node = trees.get(method);
+        if (node == null || path == null)
+            return null;
+        
+        List<String> params = Collections.emptyList();
+        
+        HttpEventHandler prefixHandler = null;
+        List<String> prefixParams = params;
+        
+        final int length = path.length();
+        for (int start = 0; node != null; ) {
+            if (node.prefixHandler != null) {
+                prefixHandler = node.prefixHandler;
+                prefixParams = params;
+            }
+            
+            while (start < length && path.charAt(start) == '/')
+                start++;
+            if (start == length) {
+                if (node.exactHandler != null)
+                    return new Route(node.exactHandler, params);
+                break;
+            }
+            
+            int end = path.indexOf('/', start);
+            if (end < 0)
+                end = length;
+            String segment = path.substring(start, end);
+            start = end;
+            
+            Node child = node.staticChildren.get(segment);
+            if (child == null && node.paramChild != null) {
+                params = new ArrayList<>(params);
+                params.add(node.paramName);
+                params.add(segment);
+                child = node.paramChild;
+            }
+            node = child;
+        }
+        
+        return prefixHandler == null? null : new Route(prefixHandler, prefixParams);
+    }
+    
+    private static List<String> split(String pattern) {
+        if (!pattern.startsWith("/"))
+            throw new IllegalArgumentException("Pattern must start with '/': " + pattern);
+        
+        List<String> result = new ArrayList<>();
+        for (String segment : pattern.split("/"))
+            if (!segment.isEmpty())
+                result.add(segment);
+        return result;
+    }
+    
+    // SUBCLASSES
+    
+    private static class Node {
+        
+        private final Map<String, Node> staticChildren = new HashMap<>();
+        private Node paramChild;
+        private String paramName;
+        
+        private HttpEventHandler exactHandler, prefixHandler;
+        
+    }
+    
+    /**
+     * The result of routing a request.
+     */
+    public static class Route {
+        
+        private final HttpEventHandler handler;
+        private final Map<String, String> parameters;
+        
+        private Route(HttpEventHandler handler, List<String> namesAndValues) {
+            this.handler = handler;
+            if (namesAndValues.isEmpty())
+                this.parameters = Collections.emptyMap();
+            else {
+                Map<String, String> parameters = new HashMap<>();
+                for (int i = 0; i < namesAndValues.size(); i += 2)
+                    parameters.put(namesAndValues.get(i), namesAndValues.get(i + 1));
+                this.parameters = Collections.unmodifiableMap(parameters);
+            }
+        }
+        
+        @NotNull
+        public HttpEventHandler getHandler() {
+            return handler;
+        }
+        
+        /**
+         * Returns the values of the parameters in the route's pattern.
+         *
+         * @return the parameter values by name
+         */
+        @NotNull
+        public Map<String, String> getParameters() {
+            return parameters;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,26 @@
+package tech.eisen.server.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * A response stream which can take buffers as they are, without copying their contents onto the heap.
+ * </p>
+ * <p>
+ * The buffer may be retained until the response has been sent, so it must not be modified afterwards.
+ * </p>
+ *
+ * @see HttpEvent#writeBody(ByteBuffer)
+ */
+public interface ByteBufferSink {
+    
+    /**
+     * Writes the remaining contents of a buffer, consuming them.
+     *
+     * @param buffer the buffer
+     * @throws IOException if an I/O error occurs
+     */
+    abstract void write(ByteBuffer buffer) throws IOException;
+    
+}
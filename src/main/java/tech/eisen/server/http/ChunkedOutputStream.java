@@ -0,0 +1,106 @@
+package tech.eisen.server.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * A stream which frames a response body in chunks of the chunked transfer coding, so that the body can be sent before
+ * its length is known.
+ * </p>
+ * <p>
+ * Small writes are collected into chunks of up to {@value #CHUNK_SIZE} bytes. Closing the stream writes the last chunk,
+ * but leaves the response stream open, since it belongs to the connection.
+ * </p>
+ *
+ * @see HttpEvent#writeChunkedHeaders()
+ */
+class ChunkedOutputStream extends OutputStream {
+    
+    private final static int CHUNK_SIZE = 8192;
+    
+    private final static byte[] CRLF = {'\r', '\n'};
+    private final static byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    
+    private final OutputStream stream;
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+    private int count = 0;
+    private boolean closed = false;
+    
+    ChunkedOutputStream(@NotNull OutputStream stream) {
+        this.stream = stream;
+    }
+    
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == buffer.length)
+            writeBuffer();
+        buffer[count++] = (byte) b;
+    }
+    
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len > buffer.length - count)
+            writeBuffer();
+        // large writes become a chunk of their own instead of being copied
+        if (len >= buffer.length) {
+            writeChunk(b, off, len);
+            return;
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+    
+    /**
+     * Writes the collected bytes as a chunk and flushes the response stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeBuffer();
+        stream.flush();
+    }
+    
+    /**
+     * Writes the collected bytes as a chunk followed by the last chunk, which ends the body. The response stream is
+     * not closed.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        writeBuffer();
+        stream.write(LAST_CHUNK);
+        closed = true;
+    }
+    
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+    }
+    
+    private void writeBuffer() throws IOException {
+        writeChunk(buffer, 0, count);
+        count = 0;
+    }
+    
+    private void writeChunk(byte[] b, int off, int len) throws IOException {
+        // an empty chunk would end the body
+        if (len == 0)
+            return;
+        stream.write(Integer.toHexString(len).getBytes(StandardCharsets.US_ASCII));
+        stream.write(CRLF);
+        stream.write(b, off, len);
+        stream.write(CRLF);
+    }
+    
+}
@@ -3,6 +3,9 @@ package tech.eisen.server.http;
 import org.jetbrains.annotations.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
 
 public class HttpEvent {
     
@@ -10,13 +13,17 @@ public class HttpEvent {
     
     private final static byte[] CRLF = {'\r', '\n'};
     
+    private final static int COPY_BLOCK_SIZE = 8192;
+    
     private final HttpPeer peer;
     private final HttpRequest request;
     private final OutputStream responseStream;
     private final HttpHeaders headers = new HttpHeaders();
     
     private boolean writtenHeaders = false;
+    private boolean keepAlive = false;
     private HttpStatus status;
+    private Map<String, String> pathParameters = Collections.emptyMap();
     
     public HttpEvent(@NotNull HttpPeer peer, @NotNull HttpRequest request, @NotNull OutputStream responseStream) {
         this.peer = peer;
@@ -25,7 +32,14 @@ public class HttpEvent {
     }
     
     /**
+     * <p>
      * Writes the HTTP version, status code and headers to the response stream.
+     * </p>
+     * <p>
+     * If the connection is to be kept alive, the response must be framed so that the client can tell where it ends.
+     * This is the case if a {@code Content-Length} header has been set or if the response has no body at all.
+     * Otherwise, the connection is closed after this event. Either way, a {@code Connection} header is written.
+     * </p>
      *
      * @throws IOException if an I/O error occurs
      * @throws IllegalStateException if the status has not been set yet
@@ -37,14 +51,18 @@ public class HttpEvent {
         if (status == null)
             throw new IllegalStateException("Can't write headers before status has been set");
         
+        if (keepAlive && !isFramed())
+            keepAlive = false;
+        headers.setConnection(keepAlive? "keep-alive" : "close");
+        
         responseStream.write(HTTP_1_1_BYTES);
         responseStream.write(Integer.toString(status.getCode()).getBytes());
         responseStream.write(' ');
         responseStream.write(status.toString().getBytes());
         responseStream.write(CRLF);
     
-        for (String header : headers.getNames()) {
-            String line = header + ": " + headers.getRawValue(header);
+        for (int i = 0; i < headers.size(); i++) {
+            String line = headers.getName(i) + ": " + headers.getRawValue(i);
             responseStream.write(line.getBytes());
             responseStream.write(CRLF);
         }
@@ -53,6 +71,83 @@ public class HttpEvent {
         this.writtenHeaders = true;
     }
     
+    /**
+     * <p>
+     * Writes the remaining contents of a buffer to the response stream, consuming them.
+     * </p>
+     * <p>
+     * If the response stream is a {@link ByteBufferSink}, the buffer is handed over without copying its contents,
+     * so that direct and memory-mapped buffers are written to the socket from outside the heap. Otherwise, the
+     * contents are copied to the stream in small blocks.
+     * </p>
+     *
+     * @param buffer the buffer, which must not be modified afterwards
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeBody(@NotNull ByteBuffer buffer) throws IOException {
+        if (responseStream instanceof ByteBufferSink) {
+            ((ByteBufferSink) responseStream).write(buffer);
+            return;
+        }
+        if (buffer.hasArray()) {
+            responseStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        
+        byte[] block = new byte[Math.min(COPY_BLOCK_SIZE, buffer.remaining())];
+        while (buffer.hasRemaining()) {
+            int length = Math.min(block.length, buffer.remaining());
+            buffer.get(block, 0, length);
+            responseStream.write(block, 0, length);
+        }
+    }
+    
+    /**
+     * <p>
+     * Writes the headers of a response whose length is not known up front and returns the stream its body is written
+     * to. The body is sent with {@code Transfer-Encoding: chunked}, so the connection may still be kept alive.
+     * </p>
+     * <p>
+     * Closing the returned stream ends the body, but leaves the response stream open.
+     * </p>
+     *
+     * @return the stream of the body
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalStateException if the status has not been set yet or if the client doesn't support chunked
+     * responses
+     *
+     * @see #isChunkedSupported()
+     */
+    @NotNull
+    public OutputStream writeChunkedHeaders() throws IOException, IllegalStateException {
+        if (!isChunkedSupported())
+            throw new IllegalStateException("HTTP/" + request.getVersion() + " doesn't support chunked responses");
+        
+        headers.setTransferEncoding("chunked");
+        writeHeaders();
+        return new ChunkedOutputStream(responseStream);
+    }
+    
+    /**
+     * Returns whether the response may be sent with {@code Transfer-Encoding: chunked}, which HTTP/1.0 clients don't
+     * understand.
+     *
+     * @return whether chunked responses are supported
+     */
+    public boolean isChunkedSupported() {
+        return !request.getVersion().equals("1.0");
+    }
+    
+    private boolean isFramed() {
+        if (request.getMethod() == HttpRequestMethod.HEAD || headers.hasHeader("content-length")
+            || headers.hasHeader("transfer-encoding"))
+            return true;
+        
+        int code = status.getCode();
+        return code < 200 || code == 204 || code == 304;
+    }
+    
     /**
      * Returns whether the headers have already been written once during this event. This method can be used for error
      * handling through the same response stream as the event uses.
@@ -91,6 +186,16 @@ public class HttpEvent {
         return headers;
     }
     
+    /**
+     * Returns the values of the parameters in the pattern of the route which matched the request.
+     *
+     * @return the parameter values by name
+     */
+    @NotNull
+    public Map<String, String> getPathParameters() {
+        return pathParameters;
+    }
+    
     @NotNull
     public HttpStatus getStatus() {
         return status;
@@ -100,4 +205,29 @@ public class HttpEvent {
         this.status = status;
     }
     
+    public void setPathParameters(@NotNull Map<String, String> pathParameters) {
+        this.pathParameters = pathParameters;
+    }
+    
+    /**
+     * Returns whether the connection will be kept alive for further requests after this event. This can only be
+     * {@code true} if the response has been properly framed.
+     *
+     * @return whether the connection is kept alive
+     * @see #writeHeaders()
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Sets whether the connection should be kept alive for further requests after this event.
+     * Handlers must not close the response stream if the connection is kept alive.
+     *
+     * @param keepAlive whether the connection should be kept alive
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+    
 }
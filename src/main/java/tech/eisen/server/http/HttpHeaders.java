@@ -6,23 +6,80 @@ import java.nio.charset.Charset;
 import java.util.*;
 import java.util.regex.Pattern;
 
+/**
+ * <p>
+ * The headers of a request or a response.
+ * </p>
+ * <p>
+ * Headers are stored in insertion order in flat arrays, which are scanned linearly. This is faster than hashing for
+ * the small amount of headers messages usually carry. Names are stored in lowercase; names contained in the static
+ * table of known headers are matched case-insensitively against that table without allocation and stored as the
+ * table's constants.
+ * </p>
+ * <p>
+ * Only the raw values are stored when setting a header from a string. Typed values such as {@link AcceptEncoding} or
+ * {@link Authorization} are parsed the first time they are requested, so that the cost of parsing is only paid for
+ * headers which are actually used.
+ * </p>
+ */
 public class HttpHeaders {
     
     private final static Pattern
         LIST_SEPARATOR = Pattern.compile("[ ]*,[ ]*"),
         VALUE_SEPARATOR = Pattern.compile("[ ]*;[ ]*");
     
+    private final static int INITIAL_CAPACITY = 8;
+    
     private final static String
         ACCEPT_ENCODING = "accept-encoding",
+        ACCEPT_RANGES = "accept-ranges",
         AUTHORIZATION = "authorization",
+        CONNECTION = "connection",
         CONTENT_ENCODING = "content-encoding",
         CONTENT_LENGTH = "content-length",
+        CONTENT_RANGE = "content-range",
         CONTENT_TYPE = "content-type",
+        ETAG = "etag",
+        IF_MODIFIED_SINCE = "if-modified-since",
+        IF_NONE_MATCH = "if-none-match",
+        IF_RANGE = "if-range",
         LAST_MODIFIED = "last-modified",
         LOCATION = "location",
         MAX_REDIRECTS = "max-redirects",
+        RANGE = "range",
+        TRANSFER_ENCODING = "transfer-encoding",
         USER_AGENT = "user-agent";
     
+    /**
+     * Lowercase names of common request and response headers.
+     */
+    private final static String[] KNOWN_NAMES = {
+        "accept", ACCEPT_ENCODING, "accept-language", ACCEPT_RANGES, "age", AUTHORIZATION, "cache-control",
+        CONNECTION, CONTENT_ENCODING, CONTENT_LENGTH, CONTENT_RANGE, CONTENT_TYPE, "cookie", "date", "dnt", ETAG,
+        "expires", "host", "if-match", IF_MODIFIED_SINCE, IF_NONE_MATCH, IF_RANGE, "if-unmodified-since",
+        "keep-alive", LAST_MODIFIED, LOCATION, MAX_REDIRECTS, "origin", "pragma", RANGE, "referer", "server",
+        "set-cookie", "te", TRANSFER_ENCODING, "upgrade", "upgrade-insecure-requests", USER_AGENT, "vary", "via",
+        "www-authenticate"
+    };
+    /**
+     * Known names grouped by their length.
+     */
+    private final static String[][] KNOWN_NAMES_BY_LENGTH;
+    
+    static {
+        int maxLength = 0;
+        for (String name : KNOWN_NAMES)
+            maxLength = Math.max(maxLength, name.length());
+        
+        KNOWN_NAMES_BY_LENGTH = new String[maxLength + 1][0];
+        for (String name : KNOWN_NAMES) {
+            String[] names = KNOWN_NAMES_BY_LENGTH[name.length()];
+            names = Arrays.copyOf(names, names.length + 1);
+            names[names.length - 1] = name;
+            KNOWN_NAMES_BY_LENGTH[name.length()] = names;
+        }
+    }
+    
     private static HeaderValue parse(String name, String rawValue) {
         switch (name) {
             case ACCEPT_ENCODING:
@@ -37,68 +94,208 @@ public class HttpHeaders {
                 return new NumericHeader(rawValue);
             case CONTENT_TYPE:
                 return new RawHeader(rawValue);
+            case IF_MODIFIED_SINCE:
             case LAST_MODIFIED:
                 return new LastModified(rawValue);
+            case IF_NONE_MATCH:
+                return new EntityTags(rawValue);
             case LOCATION:
                 return new RawHeader(rawValue);
             case MAX_REDIRECTS:
                 return new NumericHeader(rawValue);
+            case RANGE:
+                return new Range(rawValue);
             default:
                 return new RawHeader(rawValue);
         }
     }
     
-    private final Map<String, HeaderValue> entryMap = new HashMap<>();
+    /**
+     * Returns the constant of a known header name, matched case-insensitively.
+     *
+     * @param name the name
+     * @return the lowercase constant or {@code null} if the header is not known
+     */
+    @Nullable
+    static String knownName(@NotNull String name) {
+        final int length = name.length();
+        if (length < KNOWN_NAMES_BY_LENGTH.length)
+            for (String known : KNOWN_NAMES_BY_LENGTH[length])
+                if (known.equalsIgnoreCase(name))
+                    return known;
+        return null;
+    }
+    
+    /**
+     * Returns the constant of a known header name given as US-ASCII bytes, matched case-insensitively.
+     *
+     * @param bytes the array containing the name
+     * @param start the start of the name
+     * @param end the end of the name (exclusive)
+     * @return the lowercase constant or {@code null} if the header is not known
+     */
+    @Nullable
+    static String knownName(@NotNull byte[] bytes, int start, int end) {
+        final int length = end - start;
+        if (length < KNOWN_NAMES_BY_LENGTH.length)
+            for (String known : KNOWN_NAMES_BY_LENGTH[length])
+                if (equalsIgnoreCase(known, bytes, start))
+                    return known;
+        return null;
+    }
+    
+    private static boolean equalsIgnoreCase(String lower, byte[] bytes, int start) {
+        for (int i = 0; i < lower.length(); i++) {
+            int b = bytes[start + i];
+            if (b >= 'A' && b <= 'Z')
+                b += 'a' - 'A';
+            if (b != lower.charAt(i))
+                return false;
+        }
+        return true;
+    }
+    
+    private String[] names = new String[INITIAL_CAPACITY];
+    private String[] rawValues = new String[INITIAL_CAPACITY];
+    private HeaderValue[] values = new HeaderValue[INITIAL_CAPACITY];
+    private int size;
     
     // MISC METHODS
     
     public void clear() {
-        entryMap.clear();
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(rawValues, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
     }
     
+    /**
+     * Returns a snapshot of the header names in insertion order.
+     *
+     * @return the header names
+     */
     public Set<String> getNames() {
-        return Collections.unmodifiableSet(entryMap.keySet());
+        return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(names).subList(0, size)));
     }
     
     public boolean hasHeader(String name) {
-        return entryMap.containsKey(name.toLowerCase());
+        return indexOf(name) >= 0;
+    }
+    
+    /**
+     * Returns the amount of headers.
+     *
+     * @return the amount of headers
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the lowercase name of the header at a given index.
+     *
+     * @param index the index in insertion order
+     * @return the name
+     */
+    public String getName(int index) {
+        checkIndex(index);
+        return names[index];
+    }
+    
+    /**
+     * Returns the raw value of the header at a given index.
+     *
+     * @param index the index in insertion order
+     * @return the raw value
+     */
+    public String getRawValue(int index) {
+        checkIndex(index);
+        return rawValues[index];
+    }
+    
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    
+    private int indexOf(String name) {
+        // identity first, since known names and the constants of this class are the same instances
+        for (int i = 0; i < size; i++)
+            if (names[i] == name)
+                return i;
+        for (int i = 0; i < size; i++)
+            if (names[i].equalsIgnoreCase(name))
+                return i;
+        return -1;
     }
     
     // GENERIC GETTERS
     
+    /**
+     * Returns the typed value of a header, which is parsed when this method is called for the first time.
+     *
+     * @param field the header name
+     * @return the value or {@code null} if the header is not set
+     */
     public HeaderValue get(@NotNull String field) {
-        return entryMap.get(field.toLowerCase());
+        final int index = indexOf(field);
+        if (index < 0)
+            return null;
+        HeaderValue value = values[index];
+        if (value == null)
+            value = values[index] = parse(names[index], rawValues[index]);
+        return value;
     }
     
     public String getRawValue(@NotNull String field) {
-        HeaderValue value = entryMap.get(field.toLowerCase());
-        return value == null? null : value.getRawValue();
+        final int index = indexOf(field);
+        return index < 0? null : rawValues[index];
     }
     
     // SPECIFIC GETTERS
     
     public AcceptEncoding getAcceptEncoding() {
-        return (AcceptEncoding) entryMap.get(ACCEPT_ENCODING);
+        return (AcceptEncoding) get(ACCEPT_ENCODING);
     }
     
     public Authorization getAuthorization() {
-        return (Authorization) entryMap.get(AUTHORIZATION);
+        return (Authorization) get(AUTHORIZATION);
+    }
+    
+    public String getConnection() {
+        return getRawValue(CONNECTION);
     }
     
     public List<String> getContentEncoding() {
-        return ((ContentEncoding) entryMap.get(CONTENT_ENCODING)).getEncoding();
+        return ((ContentEncoding) get(CONTENT_ENCODING)).getEncoding();
     }
     
     public long getContentLength() {
-        return ((NumericHeader) entryMap.get(CONTENT_LENGTH)).longValue();
+        return ((NumericHeader) get(CONTENT_LENGTH)).longValue();
     }
     
     public String getContentType() {
         return getRawValue(CONTENT_TYPE);
     }
     
+    public String getETag() {
+        return getRawValue(ETAG);
+    }
+    
+    public String getIfRange() {
+        return getRawValue(IF_RANGE);
+    }
+    
+    public LastModified getIfModifiedSince() {
+        return (LastModified) get(IF_MODIFIED_SINCE);
+    }
+    
+    public EntityTags getIfNoneMatch() {
+        return (EntityTags) get(IF_NONE_MATCH);
+    }
+    
     public LastModified getLastModified() {
-        return (LastModified) entryMap.get(LAST_MODIFIED);
+        return (LastModified) get(LAST_MODIFIED);
     }
     
     public String getLocation() {
@@ -106,7 +303,11 @@ public class HttpHeaders {
     }
     
     public int getMaxRedirects() {
-        return ((NumericHeader) entryMap.get(MAX_REDIRECTS)).intValue();
+        return ((NumericHeader) get(MAX_REDIRECTS)).intValue();
+    }
+    
+    public Range getRange() {
+        return (Range) get(RANGE);
     }
     
     public String getUserAgent() {
@@ -116,12 +317,27 @@ public class HttpHeaders {
     // GENERIC SETTERS
     
     public void set(@NotNull String name, HeaderValue value) {
-        entryMap.put(name.toLowerCase(), value);
+        put(name, value.getRawValue(), value);
     }
     
     public void set(@NotNull String name, String rawValue) {
-        name = name.toLowerCase();
-        entryMap.put(name, parse(name, rawValue));
+        put(name, rawValue, null);
+    }
+    
+    private void put(String name, String rawValue, @Nullable HeaderValue value) {
+        int index = indexOf(name);
+        if (index < 0) {
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+                rawValues = Arrays.copyOf(rawValues, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            String known = knownName(name);
+            names[size] = known != null? known : name.toLowerCase();
+            index = size++;
+        }
+        rawValues[index] = rawValue;
+        values[index] = value;
     }
     
     // SPECIFIC SETTERS
@@ -130,20 +346,56 @@ public class HttpHeaders {
         set(ACCEPT_ENCODING, acceptEncoding);
     }
     
+    public void setAcceptRanges(String unit) {
+        set(ACCEPT_RANGES, unit);
+    }
+    
     public void setAuthorization(Authorization authorization) {
         set(AUTHORIZATION, authorization);
     }
     
+    public void setConnection(String connection) {
+        set(CONNECTION, connection);
+    }
+    
     public void setContentEncoding(String... encoding) {
         set(CONTENT_ENCODING, new ContentEncoding(encoding));
     }
     
+    public void setTransferEncoding(String encoding) {
+        set(TRANSFER_ENCODING, encoding);
+    }
+    
     public void setContentLength(long contentLength) {
         set(CONTENT_LENGTH, Long.toString(contentLength));
     }
     
+    /**
+     * Sets the range of the representation which a partial response carries.
+     *
+     * @param first the position of the first byte
+     * @param last the position of the last byte (inclusive)
+     * @param length the length of the complete representation
+     */
+    public void setContentRange(long first, long last, long length) {
+        set(CONTENT_RANGE, "bytes " + first + '-' + last + '/' + length);
+    }
+    
+    /**
+     * Sets the length of the complete representation for a response to an unsatisfiable range request.
+     *
+     * @param length the length of the complete representation
+     */
+    public void setUnsatisfiedRange(long length) {
+        set(CONTENT_RANGE, "bytes */" + length);
+    }
+    
     public void setContentType(String type, @Nullable Charset charset) {
-        set(CONTENT_TYPE, charset == null? type : type + "; " + charset.name());
+        set(CONTENT_TYPE, charset == null? type : type + "; charset=" + charset.name());
+    }
+    
+    public void setETag(String etag) {
+        set(ETAG, etag);
     }
     
     public void setLastModified(long millis) {
@@ -159,7 +411,7 @@ public class HttpHeaders {
     }
     
     public void setUserAgent(String agentString) {
-        set(MAX_REDIRECTS, agentString);
+        set(USER_AGENT, agentString);
     }
     
     // SUBCLASSES
@@ -283,10 +535,15 @@ public class HttpHeaders {
             if (!method.equals("Basic"))
                 throw new IllegalArgumentException("Unsupported authorization method: \"" + method + "\"");
             
+            if (methodAndCredentials.length < 2)
+                throw new IllegalArgumentException("Missing credentials");
+            
             String credentials = methodAndCredentials[1];
             credentials = new String(Base64.getDecoder().decode(credentials));
             
             String[] userAndPassword = credentials.split(":", 2);
+            if (userAndPassword.length < 2)
+                throw new IllegalArgumentException("Credentials lack a password");
             this.user = userAndPassword[0];
             this.password = userAndPassword[1].toCharArray();
             this.raw = raw;
@@ -330,7 +587,7 @@ public class HttpHeaders {
         
         public ContentEncoding(@NotNull String... encodings) {
             this.encoding = Arrays.asList(encodings);
-            this.raw = encoding.stream().reduce("", (a, b) -> a + ", " + b);
+            this.raw = String.join(", ", encoding);
             
             if (encoding.isEmpty())
                 throw new IllegalArgumentException("content-encoding must not be empty");
@@ -356,9 +613,195 @@ public class HttpHeaders {
         
     }
     
+    /**
+     * List of entity tags such as in {@code If-None-Match}, which may also be {@code *}.
+     */
+    public static class EntityTags implements HeaderValue {
+        
+        private final String raw;
+        private final boolean any;
+        private final List<String> tags;
+        
+        public EntityTags(@NotNull String raw) {
+            this.raw = raw.trim();
+            this.any = this.raw.equals("*");
+            this.tags = any? Collections.emptyList() : Arrays.asList(LIST_SEPARATOR.split(this.raw));
+        }
+        
+        /**
+         * Returns whether any of the tags matches a given tag, using the weak comparison which ignores whether either
+         * tag is weak.
+         *
+         * @param etag the tag, including its quotes
+         * @return whether the tag matches
+         */
+        public boolean matches(@NotNull String etag) {
+            if (any)
+                return true;
+            String opaque = opaqueTag(etag);
+            for (String tag : tags)
+                if (opaqueTag(tag).equals(opaque))
+                    return true;
+            return false;
+        }
+        
+        /**
+         * Returns whether the list is {@code *}, which matches any current representation.
+         *
+         * @return whether any tag matches
+         */
+        public boolean matchesAny() {
+            return any;
+        }
+        
+        /**
+         * Returns the tags, including their quotes and weakness indicators.
+         *
+         * @return the tags
+         */
+        @NotNull
+        public List<String> getTags() {
+            return tags;
+        }
+        
+        @Override
+        public String getRawValue() {
+            return raw;
+        }
+        
+        private static String opaqueTag(String tag) {
+            return tag.startsWith("W/")? tag.substring(2) : tag;
+        }
+        
+    }
+    
+    /**
+     * <p>
+     * The byte ranges of a representation requested with a {@code Range} header.
+     * </p>
+     * <p>
+     * A header which is syntactically invalid, uses another unit or requests more than {@link #MAX_RANGES} ranges is
+     * not rejected but {@link #resolve(long) resolves} to {@code null}, since such a header must be ignored.
+     * </p>
+     */
+    public static class Range implements HeaderValue {
+        
+        /**
+         * The maximum amount of ranges which are served, so that a request can't multiply the size of a response.
+         */
+        public final static int MAX_RANGES = 16;
+        
+        private final String raw;
+        private final long[] firsts, lasts;
+        
+        public Range(@NotNull String raw) {
+            this.raw = raw.trim();
+            
+            long[] firsts = null, lasts = null;
+            if (this.raw.regionMatches(true, 0, "bytes=", 0, 6)) {
+                String[] specs = LIST_SEPARATOR.split(this.raw.substring(6).trim());
+                if (specs.length <= MAX_RANGES) {
+                    firsts = new long[specs.length];
+                    lasts = new long[specs.length];
+                    for (int i = 0; i < specs.length && firsts != null; i++) {
+                        int dash = specs[i].indexOf('-');
+                        firsts[i] = dash < 0? -2 : parsePosition(specs[i].substring(0, dash));
+                        lasts[i] = dash < 0? -2 : parsePosition(specs[i].substring(dash + 1));
+                        // -1 stands for an omitted position, -2 for an invalid one
+                        if (firsts[i] == -2 || lasts[i] == -2 || firsts[i] == -1 && lasts[i] == -1
+                            || lasts[i] >= 0 && firsts[i] > lasts[i])
+                            firsts = lasts = null;
+                    }
+                }
+            }
+            this.firsts = firsts;
+            this.lasts = lasts;
+        }
+        
+        /**
+         * Resolves the requested ranges against the length of a representation, in the order they were requested.
+         * Ranges which start beyond the end of the representation are left out.
+         *
+         * @param length the length of the representation
+         * @return the satisfiable ranges, which are empty if none is satisfiable, or {@code null} if the header must
+         * be ignored
+         */
+        @Nullable
+        public List<ByteRange> resolve(long length) {
+            if (firsts == null)
+                return null;
+            
+            List<ByteRange> ranges = new ArrayList<>(firsts.length);
+            for (int i = 0; i < firsts.length; i++) {
+                if (firsts[i] < 0) {
+                    // a suffix of the representation
+                    if (lasts[i] > 0 && length > 0)
+                        ranges.add(new ByteRange(Math.max(0, length - lasts[i]), length - 1));
+                }
+                else if (firsts[i] < length)
+                    ranges.add(new ByteRange(firsts[i], lasts[i] < 0? length - 1 : Math.min(lasts[i], length - 1)));
+            }
+            return ranges;
+        }
+        
+        @Override
+        public String getRawValue() {
+            return raw;
+        }
+        
+        private static long parsePosition(String str) {
+            if (str.isEmpty())
+                return -1;
+            if (str.length() > 18)
+                return -2;
+            for (int i = 0; i < str.length(); i++)
+                if (str.charAt(i) < '0' || str.charAt(i) > '9')
+                    return -2;
+            return Long.parseLong(str);
+        }
+        
+    }
+    
+    /**
+     * A satisfiable range of bytes of a representation.
+     */
+    public static class ByteRange {
+        
+        private final long first, last;
+        
+        public ByteRange(long first, long last) {
+            this.first = first;
+            this.last = last;
+        }
+        
+        /**
+         * Returns the position of the first byte.
+         *
+         * @return the first position
+         */
+        public long getFirst() {
+            return first;
+        }
+        
+        /**
+         * Returns the position of the last byte, which is part of the range.
+         *
+         * @return the last position
+         */
+        public long getLast() {
+            return last;
+        }
+        
+        public long getLength() {
+            return last - first + 1;
+        }
+        
+    }
+    
     public static class LastModified implements HeaderValue {
         
         private final String value;
+        private long millis = Long.MIN_VALUE;
         
         public LastModified(String value) {
             this.value = value;
@@ -366,6 +809,18 @@ public class HttpHeaders {
         
         public LastModified(long millis) {
             this.value = HttpUtil.toHttpTime(millis);
+            this.millis = millis - millis % 1000;
+        }
+        
+        /**
+         * Returns the time in milliseconds since the epoch, which is always a multiple of one second.
+         *
+         * @return the time or {@code -1} if the value is not a valid HTTP date
+         */
+        public long getMillis() {
+            if (millis == Long.MIN_VALUE)
+                millis = HttpUtil.parseHttpTime(value);
+            return millis;
         }
         
         @Override
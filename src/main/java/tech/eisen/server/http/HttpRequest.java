@@ -45,4 +45,48 @@ public class HttpRequest {
         return stream;
     }
     
+    /**
+     * Returns whether the client wants the connection to be kept alive after this request. HTTP/1.1 connections
+     * are persistent unless the client sends {@code Connection: close}, HTTP/1.0 connections are only persistent if
+     * the client sends {@code Connection: keep-alive}.
+     * Requests with a body are never kept alive since handlers are not required to consume the body, and neither are
+     * requests whose body has {@link #hasValidContentLength() no valid length}.
+     *
+     * @return whether the connection should be kept alive
+     */
+    public boolean isKeepAliveRequested() {
+        if (headers.hasHeader("transfer-encoding") || !hasValidContentLength()
+            || headers.hasHeader("content-length") && headers.getContentLength() > 0)
+            return false;
+        
+        String connection = headers.getConnection();
+        if (version.equals("1.0"))
+            return connection != null && hasToken(connection, "keep-alive");
+        else
+            return connection == null || !hasToken(connection, "close");
+    }
+    
+    /**
+     * Returns whether the {@code Content-Length} header is either missing or a non-negative number. Where the body of
+     * a request without a valid length ends can't be told, so the request can only be rejected.
+     *
+     * @return whether the length of the body is valid
+     */
+    public boolean hasValidContentLength() {
+        if (!headers.hasHeader("content-length"))
+            return true;
+        try {
+            return headers.getContentLength() >= 0;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    private static boolean hasToken(String list, String token) {
+        for (String element : list.split(","))
+            if (element.trim().equalsIgnoreCase(token))
+                return true;
+        return false;
+    }
+    
 }
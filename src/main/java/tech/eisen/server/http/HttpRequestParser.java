@@ -0,0 +1,321 @@
+package tech.eisen.server.http;
+
+import eisenwave.torrens.error.FileSyntaxException;
+import eisenwave.torrens.error.FileVersionException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A parser for HTTP/1.x request heads which works directly on bytes.
+ * </p>
+ * <p>
+ * Unlike {@link DeserializerHttpRequest}, the parser reads from its source in large chunks into a buffer which is
+ * reused for all requests of a connection. Lines are scanned in place and the request method, the protocol version
+ * and {@link HttpHeaders known header names} are matched against constants, so that the only objects created per
+ * request are the request itself, its {@link URI} and the header values.
+ * </p>
+ * <p>
+ * Since the parser may read ahead of the current request, the body and any pipelined requests are only available
+ * through the parser: each parsed request's {@link HttpRequest#getStream() stream} reads from the parser's buffer
+ * before reading from the source.
+ * </p>
+ */
+public class HttpRequestParser {
+    
+    private final static int INITIAL_BUFFER_SIZE = 8192;
+    private final static int MAX_HEADER_SIZE = 64 * 1024;
+    
+    private final static HttpRequestMethod[] METHODS = HttpRequestMethod.values();
+    private final static byte[][] METHOD_NAMES = new byte[METHODS.length][];
+    
+    private final static byte[]
+        HTTP_PREFIX = ascii("HTTP/"),
+        VERSION_1_1 = ascii("1.1"),
+        VERSION_1_0 = ascii("1.0");
+    
+    static {
+        for (int i = 0; i < METHODS.length; i++)
+            METHOD_NAMES[i] = ascii(METHODS[i].name());
+    }
+    
+    private static byte[] ascii(String str) {
+        return str.getBytes(StandardCharsets.US_ASCII);
+    }
+    
+    @Nullable
+    private final InputStream source;
+    private final InputStream body = new BodyStream();
+    
+    private byte[] buffer;
+    private int position, limit;
+    
+    // bounds of the last line read, excluding the line break
+    private int lineStart, lineEnd;
+    private int headerSize;
+    
+    /**
+     * Constructs a new parser which reads requests from a stream.
+     *
+     * @param source the stream, which doesn't need to be buffered
+     */
+    public HttpRequestParser(@NotNull InputStream source) {
+        this.source = source;
+        this.buffer = new byte[INITIAL_BUFFER_SIZE];
+    }
+    
+    /**
+     * Constructs a new parser which reads requests from a region of an array. The array is not copied, so it must
+     * not be modified while requests parsed from it are in use.
+     *
+     * @param array the array
+     * @param offset the offset of the region
+     * @param length the length of the region
+     */
+    public HttpRequestParser(@NotNull byte[] array, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > array.length)
+            throw new IndexOutOfBoundsException();
+        this.source = null;
+        this.buffer = array;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+    
+    /**
+     * Parses the head of the next request. Empty lines preceding the request line are skipped.
+     *
+     * @return the request, whose stream reads the remaining data after the head
+     * @throws EOFException if the input ends before the head is complete
+     * @throws FileSyntaxException if the head is malformed or exceeds the maximum size
+     * @throws FileVersionException if the HTTP version is not supported
+     * @throws IOException if reading from the source fails
+     */
+    @NotNull
+    public HttpRequest parse() throws IOException {
+        headerSize = 0;
+        for (readLine(); lineEnd == lineStart; readLine())
+            continue;
+        
+        HttpRequest result = parseRequestLine();
+        HttpHeaders headers = result.getHeaders();
+        
+        for (readLine(); ; readLine()) {
+            final int start = skipWhitespace(lineStart, lineEnd);
+            if (start == lineEnd)
+                return result;
+            
+            final int colon = indexOf(':', start, lineEnd);
+            if (colon == lineEnd)
+                throw new FileSyntaxException("Header line is missing a colon");
+            
+            String name = headerName(start, trimWhitespace(start, colon));
+            final int valueStart = skipWhitespace(colon + 1, lineEnd);
+            final int valueEnd = trimWhitespace(valueStart, lineEnd);
+            headers.set(name, new String(buffer, valueStart, valueEnd - valueStart, StandardCharsets.ISO_8859_1));
+        }
+    }
+    
+    // REQUEST LINE
+    
+    private HttpRequest parseRequestLine() throws IOException {
+        final int methodEnd = indexOf(' ', lineStart, lineEnd);
+        HttpRequestMethod method = matchMethod(lineStart, methodEnd);
+        
+        final int uriStart = skipSpaces(methodEnd, lineEnd);
+        final int uriEnd = indexOf(' ', uriStart, lineEnd);
+        if (uriStart == uriEnd || uriEnd == lineEnd)
+            throw new FileSyntaxException("Malformed request line");
+        URI uri;
+        try {
+            uri = new URI(new String(buffer, uriStart, uriEnd - uriStart, StandardCharsets.ISO_8859_1));
+        } catch (URISyntaxException ex) {
+            throw new FileSyntaxException(ex);
+        }
+        
+        String version = matchVersion(skipSpaces(uriEnd, lineEnd), trimWhitespace(uriEnd, lineEnd));
+        return new HttpRequest(version, method, uri, body);
+    }
+    
+    private HttpRequestMethod matchMethod(int start, int end) throws FileSyntaxException {
+        for (int i = 0; i < METHOD_NAMES.length; i++)
+            if (equalsIgnoreCase(METHOD_NAMES[i], start, end))
+                return METHODS[i];
+        throw new FileSyntaxException("Unknown request method: '"
+            + new String(buffer, start, end - start, StandardCharsets.ISO_8859_1) + "'");
+    }
+    
+    private String matchVersion(int start, int end) throws IOException {
+        final int numberStart = start + HTTP_PREFIX.length;
+        if (numberStart > end || !equalsIgnoreCase(HTTP_PREFIX, start, numberStart))
+            throw new FileSyntaxException("Malformed request line");
+        
+        if (equalsIgnoreCase(VERSION_1_1, numberStart, end))
+            return "1.1";
+        if (equalsIgnoreCase(VERSION_1_0, numberStart, end))
+            return "1.0";
+        throw new FileVersionException("unknown HTTP version: '"
+            + new String(buffer, numberStart, end - numberStart, StandardCharsets.ISO_8859_1) + "'");
+    }
+    
+    // HEADERS
+    
+    private String headerName(int start, int end) {
+        String known = HttpHeaders.knownName(buffer, start, end);
+        if (known != null)
+            return known;
+        
+        final int length = end - start;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = (char) toLowerCase(buffer[start + i]);
+        return new String(chars);
+    }
+    
+    // SCANNING
+    
+    /**
+     * Reads the next line into the buffer and sets its bounds. Both CRLF and LF are accepted as line breaks.
+     *
+     * @throws IOException if the input ends before the line break or the head becomes too large
+     */
+    private void readLine() throws IOException {
+        int scan = position;
+        while (true) {
+            for (; scan < limit; scan++) {
+                if (buffer[scan] != '\n')
+                    continue;
+                
+                headerSize += scan + 1 - position;
+                if (headerSize > MAX_HEADER_SIZE)
+                    throw new FileSyntaxException("Request header exceeds " + MAX_HEADER_SIZE + " bytes");
+                
+                lineStart = position;
+                lineEnd = scan > position && buffer[scan - 1] == '\r'? scan - 1 : scan;
+                position = scan + 1;
+                return;
+            }
+            
+            final int scanned = scan - position;
+            if (!fill())
+                throw new EOFException("Couldn't read line due to unexpected EOF");
+            scan = position + scanned;
+        }
+    }
+    
+    /**
+     * Moves the unread data to the start of the buffer, grows the buffer if it is full and reads more data from the
+     * source.
+     *
+     * @return false if there is no source or the source has reached its end
+     * @throws IOException if reading from the source fails or the buffer can't grow any further
+     */
+    private boolean fill() throws IOException {
+        if (source == null)
+            return false;
+        
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            if (buffer.length >= MAX_HEADER_SIZE)
+                throw new FileSyntaxException("Request header exceeds " + MAX_HEADER_SIZE + " bytes");
+            buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_HEADER_SIZE));
+        }
+        
+        final int read = source.read(buffer, limit, buffer.length - limit);
+        if (read < 0)
+            return false;
+        limit += read;
+        return true;
+    }
+    
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; i++)
+            if (buffer[i] == c)
+                return i;
+        return end;
+    }
+    
+    private int skipSpaces(int start, int end) {
+        while (start < end && buffer[start] == ' ')
+            start++;
+        return start;
+    }
+    
+    private int skipWhitespace(int start, int end) {
+        while (start < end && isWhitespace(buffer[start]))
+            start++;
+        return start;
+    }
+    
+    private int trimWhitespace(int start, int end) {
+        while (end > start && isWhitespace(buffer[end - 1]))
+            end--;
+        return end;
+    }
+    
+    private boolean equalsIgnoreCase(byte[] lowerOrUpper, int start, int end) {
+        if (end - start != lowerOrUpper.length)
+            return false;
+        for (int i = 0; i < lowerOrUpper.length; i++)
+            if (toLowerCase(buffer[start + i]) != toLowerCase(lowerOrUpper[i]))
+                return false;
+        return true;
+    }
+    
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+    
+    private static int toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z'? b + ('a' - 'A') : b;
+    }
+    
+    // SUBCLASSES
+    
+    /**
+     * The stream of all parsed requests, which drains the buffer before reading from the source.
+     */
+    private class BodyStream extends InputStream {
+        
+        @Override
+        public int read() throws IOException {
+            if (position == limit && !fill())
+                return -1;
+            return buffer[position++] & 0xFF;
+        }
+        
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off)
+                throw new IndexOutOfBoundsException();
+            if (len == 0)
+                return 0;
+            // large reads bypass the buffer once it is drained
+            if (position == limit)
+                return source == null? -1 : source.read(b, off, len);
+            
+            final int count = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+        
+        @Override
+        public int available() throws IOException {
+            return limit - position + (source == null? 0 : source.available());
+        }
+        
+    }
+    
+}
@@ -33,6 +33,7 @@ public enum HttpStatus {
     FORBIDDEN(403),
     NOT_FOUND(404),
     METHOD_NOT_ALLOWED(405),
+    RANGE_NOT_SATISFIABLE(416),
     
     SERVER_ERROR(500),
     NOT_IMPLEMENTED(501),
@@ -6,6 +6,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOError;
 import java.io.IOException;
 import java.net.URLConnection;
+import java.time.DateTimeException;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -25,6 +26,20 @@ public final class HttpUtil {
         return toHttpTime(Instant.ofEpochMilli(millis));
     }
     
+    /**
+     * Parses a date in the format of HTTP headers such as {@code If-Modified-Since}.
+     *
+     * @param time the date
+     * @return the time in milliseconds since the epoch or {@code -1} if the date is not valid
+     */
+    public static long parseHttpTime(String time) {
+        try {
+            return Instant.from(RFC_1123_DATE_TIME.parse(time.trim())).toEpochMilli();
+        } catch (DateTimeException ex) {
+            return -1;
+        }
+    }
+    
     public static String guessContentType(String fname, byte[] bytes) {
         System.out.println(fname);
         String[] ext = fname.split("\\.");
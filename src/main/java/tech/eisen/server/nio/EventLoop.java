@@ -0,0 +1,102 @@
+package tech.eisen.server.nio;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single thread multiplexing many connections through one {@link Selector}. All state of a connection is only ever
+ * accessed on the event loop it belongs to; other threads submit work through {@link #execute(Runnable)}.
+ */
+class EventLoop implements Runnable {
+    
+    private final static long MAX_IDLE_CHECK_INTERVAL = 1000;
+    
+    private final NioServer server;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final long idleCheckInterval;
+    
+    EventLoop(NioServer server) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+        
+        int timeout = server.getKeepAliveTimeout();
+        this.idleCheckInterval = timeout > 0? Math.min(timeout, MAX_IDLE_CHECK_INTERVAL) : MAX_IDLE_CHECK_INTERVAL;
+    }
+    
+    /**
+     * Runs a task on this event loop.
+     *
+     * @param task the task
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+    
+    /**
+     * Hands a freshly accepted, non-blocking channel to this event loop.
+     *
+     * @param channel the channel
+     */
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                new NioConnection(server, this, channel).register(selector);
+            } catch (IOException | RuntimeException ex) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    ex.addSuppressed(e);
+                }
+                ex.printStackTrace();
+            }
+        });
+    }
+    
+    @Override
+    public void run() {
+        long lastIdleCheck = System.currentTimeMillis();
+        
+        //noinspection InfiniteLoopStatement
+        while (true) {
+            // the loop must never exit, since that would strand every connection registered with the selector
+            try {
+                selector.select(idleCheckInterval);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            
+            for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            
+            Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+            while (iter.hasNext()) {
+                SelectionKey key = iter.next();
+                iter.remove();
+                
+                if (key.isValid())
+                    ((NioConnection) key.attachment()).onReady(key.readyOps());
+            }
+            
+            long now = System.currentTimeMillis();
+            if (now - lastIdleCheck >= idleCheckInterval) {
+                for (SelectionKey key : selector.keys())
+                    if (key.isValid())
+                        ((NioConnection) key.attachment()).checkIdle(now);
+                lastIdleCheck = now;
+            }
+        }
+    }
+    
+}
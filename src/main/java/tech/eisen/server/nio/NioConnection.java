@@ -0,0 +1,545 @@
+package tech.eisen.server.nio;
+
+import tech.eisen.server.http.ByteBufferSink;
+import tech.eisen.server.http.HttpEvent;
+import tech.eisen.server.http.HttpHeaders;
+import tech.eisen.server.http.HttpPeer;
+import tech.eisen.server.http.HttpRequest;
+import tech.eisen.server.http.HttpRequestParser;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.*;
+
+/**
+ * <p>
+ * The state of a single connection of a {@link NioServer}. Apart from {@link #handle(HttpRequest, boolean)}, which
+ * runs on a worker, all methods are only invoked on the connection's {@link EventLoop}.
+ * </p>
+ * <p>
+ * Network data is kept in {@code netIn} and {@code netOut}, decrypted data in {@code appIn}. All three buffers are
+ * kept in write mode (the position marks the end of the data) between method calls.
+ * </p>
+ */
+class NioConnection {
+    
+    private final static int MAX_HEADER_SIZE = 64 * 1024;
+    private final static int MAX_BODY_SIZE = 1024 * 1024;
+    private final static ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    
+    private final NioServer server;
+    private final EventLoop loop;
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final HttpPeer peer;
+    
+    private SelectionKey key;
+    private ByteBuffer netIn, appIn, netOut;
+    private ByteBuffer[] response;
+    
+    private State state = State.HANDSHAKING;
+    private boolean runningTasks = false;
+    private boolean keepAlive = false;
+    private final long handshakeStart = System.currentTimeMillis();
+    private long lastActivity = handshakeStart;
+    private int requests = 0;
+    
+    NioConnection(NioServer server, EventLoop loop, SocketChannel channel) throws IOException {
+        this.server = server;
+        this.loop = loop;
+        this.channel = channel;
+        
+        InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+        this.peer = new HttpPeer(remote.getHostString(), remote.getPort());
+        this.engine = server.createEngine(remote);
+        
+        SSLSession session = engine.getSession();
+        this.netIn = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+        this.netOut = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+        this.appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+        
+        engine.beginHandshake();
+    }
+    
+    void register(Selector selector) throws IOException {
+        this.key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+    
+    // EVENTS
+    
+    void onReady(int readyOps) {
+        guard(() -> {
+            if ((readyOps & SelectionKey.OP_WRITE) != 0)
+                onWritable();
+            if (state != State.CLOSED && (readyOps & SelectionKey.OP_READ) != 0)
+                onReadable();
+        });
+    }
+    
+    void checkIdle(long now) {
+        int timeout = server.getKeepAliveTimeout();
+        if (timeout > 0 && state != State.HANDLING && !runningTasks && now - lastActivity > timeout)
+            close();
+    }
+    
+    private void onReadable() throws IOException {
+        int read = channel.read(netIn);
+        if (read < 0) {
+            close();
+            return;
+        }
+        if (read > 0)
+            lastActivity = System.currentTimeMillis();
+        
+        process();
+    }
+    
+    private void onWritable() throws IOException {
+        if (!flush())
+            return;
+        
+        if (state == State.WRITING)
+            writeResponse();
+        else
+            process();
+    }
+    
+    // TLS
+    
+    /**
+     * Drives the engine until it needs more network data, a delegated task is running or written data could not
+     * be flushed. Afterwards, a complete request is dispatched if one has been received.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void process() throws IOException {
+        while (state != State.CLOSED && !runningTasks) {
+            SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+            
+            if (status == NEED_TASK) {
+                runDelegatedTasks();
+                break;
+            }
+            if (status == NEED_WRAP) {
+                if (!wrap(EMPTY))
+                    break;
+                continue;
+            }
+            if (!unwrap())
+                break;
+        }
+        
+        if (state == State.CLOSED || runningTasks)
+            return;
+        
+        if (state == State.HANDSHAKING && engine.getHandshakeStatus() == NOT_HANDSHAKING) {
+            state = State.READING;
+            server.getTlsConfig().recordHandshake(engine.getSession(), handshakeStart);
+        }
+        
+        // a response may only be blocked on reading if the client initiated a new handshake while it was written
+        if (state == State.WRITING && engine.getHandshakeStatus() != NEED_UNWRAP) {
+            writeResponse();
+            return;
+        }
+        if (state == State.READING)
+            dispatchRequest();
+        updateInterest();
+    }
+    
+    /**
+     * Decrypts a single record from {@code netIn} into {@code appIn}.
+     *
+     * @return whether any progress has been made
+     * @throws IOException if an I/O error occurs
+     */
+    private boolean unwrap() throws IOException {
+        if (netIn.position() == 0)
+            return false;
+        
+        SSLEngineResult result;
+        netIn.flip();
+        try {
+            result = engine.unwrap(netIn, appIn);
+        } finally {
+            netIn.compact();
+        }
+        
+        switch (result.getStatus()) {
+            case BUFFER_OVERFLOW:
+                appIn = enlarge(appIn, appIn.capacity() + engine.getSession().getApplicationBufferSize());
+                return true;
+            
+            case BUFFER_UNDERFLOW:
+                int packetSize = engine.getSession().getPacketBufferSize();
+                if (netIn.capacity() < packetSize)
+                    netIn = enlarge(netIn, packetSize);
+                return false;
+            
+            case CLOSED:
+                close();
+                return false;
+            
+            default:
+                return result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+        }
+    }
+    
+    /**
+     * Encrypts all of the given data and flushes it.
+     *
+     * @param srcs the plain data, which is gathered from all buffers
+     * @return whether all encrypted data could be written to the channel
+     * @throws IOException if an I/O error occurs
+     */
+    private boolean wrap(ByteBuffer... srcs) throws IOException {
+        do {
+            SSLEngineResult result = engine.wrap(srcs, netOut);
+            
+            switch (result.getStatus()) {
+                case BUFFER_OVERFLOW:
+                    if (!flush())
+                        return false;
+                    int packetSize = engine.getSession().getPacketBufferSize();
+                    if (netOut.capacity() < packetSize)
+                        netOut = enlarge(netOut, packetSize);
+                    break;
+                
+                case CLOSED:
+                    flush();
+                    close();
+                    return false;
+                
+                default:
+                    if (result.getHandshakeStatus() == NEED_TASK)
+                        return flush();
+            }
+        } while (hasRemaining(srcs));
+        
+        return flush();
+    }
+    
+    private void runDelegatedTasks() {
+        runningTasks = true;
+        updateInterest();
+        
+        try {
+            server.getWorkers().execute(() -> {
+                for (Runnable task = engine.getDelegatedTask(); task != null; task = engine.getDelegatedTask())
+                    task.run();
+                
+                loop.execute(() -> guard(() -> {
+                    runningTasks = false;
+                    if (state == State.WRITING)
+                        writeResponse();
+                    else
+                        process();
+                }));
+            });
+        } catch (RejectedExecutionException ex) {
+            close();
+        }
+    }
+    
+    /**
+     * Writes as much of {@code netOut} to the channel as possible.
+     *
+     * @return whether all data has been written
+     * @throws IOException if an I/O error occurs
+     */
+    private boolean flush() throws IOException {
+        netOut.flip();
+        try {
+            if (channel.write(netOut) > 0)
+                lastActivity = System.currentTimeMillis();
+            return !netOut.hasRemaining();
+        } finally {
+            netOut.compact();
+            updateInterest();
+        }
+    }
+    
+    // HTTP
+    
+    /**
+     * Hands the next request to a worker if it has been fully received.
+     *
+     * @throws IOException if the request is malformed or too large
+     */
+    private void dispatchRequest() throws IOException {
+        appIn.flip();
+        HttpRequest request;
+        try {
+            // skip line breaks which some clients send after a request body
+            while (appIn.hasRemaining() && isLineBreak(appIn.get(appIn.position())))
+                appIn.get();
+            
+            int headerLength = findHeaderEnd(appIn);
+            if (headerLength < 0) {
+                if (appIn.remaining() > MAX_HEADER_SIZE)
+                    throw new IOException("Request header exceeds " + MAX_HEADER_SIZE + " bytes");
+                return;
+            }
+            
+            request = parse(appIn, headerLength, false);
+            HttpHeaders headers = request.getHeaders();
+            if (headers.hasHeader("transfer-encoding"))
+                throw new IOException("Transfer-encoded request bodies are not supported");
+            
+            // a malformed length is answered with 400 Bad Request, after which the connection is closed
+            long bodyLength = headers.hasHeader("content-length") && request.hasValidContentLength()?
+                headers.getContentLength() : 0;
+            if (bodyLength < 0 || bodyLength > MAX_BODY_SIZE)
+                throw new IOException("Request body exceeds " + MAX_BODY_SIZE + " bytes");
+            if (appIn.remaining() < headerLength + bodyLength)
+                return;
+            
+            // parse again from a copy, so that the body remains readable through the request's stream after the
+            // buffer has been compacted
+            if (bodyLength > 0)
+                request = parse(appIn, headerLength + (int) bodyLength, true);
+            appIn.position(appIn.position() + headerLength + (int) bodyLength);
+        } catch (RuntimeException ex) {
+            throw new IOException("Malformed request", ex);
+        } finally {
+            appIn.compact();
+        }
+        
+        boolean keepAlive = ++requests < server.getMaxRequests() && request.isKeepAliveRequested();
+        state = State.HANDLING;
+        updateInterest();
+        
+        try {
+            HttpRequest handled = request;
+            server.getWorkers().execute(() -> handle(handled, keepAlive));
+        } catch (RejectedExecutionException ex) {
+            close();
+        }
+    }
+    
+    private static boolean isLineBreak(byte b) {
+        return b == '\r' || b == '\n';
+    }
+    
+    private static int findHeaderEnd(ByteBuffer buffer) {
+        final int start = buffer.position(), limit = buffer.limit();
+        for (int i = start; i < limit; i++) {
+            if (buffer.get(i) != '\n')
+                continue;
+            if (i + 1 < limit && buffer.get(i + 1) == '\n')
+                return i + 2 - start;
+            if (i + 2 < limit && buffer.get(i + 1) == '\r' && buffer.get(i + 2) == '\n')
+                return i + 3 - start;
+        }
+        return -1;
+    }
+    
+    private static HttpRequest parse(ByteBuffer buffer, int length, boolean copy) throws IOException {
+        final int offset = buffer.arrayOffset() + buffer.position();
+        if (!copy)
+            return new HttpRequestParser(buffer.array(), offset, length).parse();
+        
+        byte[] request = Arrays.copyOfRange(buffer.array(), offset, offset + length);
+        return new HttpRequestParser(request, 0, length).parse();
+    }
+    
+    /**
+     * Handles a request on a worker and passes the buffered response back to the event loop.
+     *
+     * @param request the request
+     * @param keepAlive whether the connection may be kept alive
+     */
+    private void handle(HttpRequest request, boolean keepAlive) {
+        ResponseBuffer responseStream = new ResponseBuffer();
+        HttpEvent event = new HttpEvent(peer, request, responseStream);
+        event.setKeepAlive(keepAlive);
+        
+        boolean success;
+        try {
+            server.getHandler().handle(event);
+            success = event.hasWrittenHeaders();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            success = false;
+        }
+        
+        ByteBuffer[] response = responseStream.toByteBuffers();
+        boolean keep = success && event.isKeepAlive();
+        boolean send = success;
+        loop.execute(() -> guard(() -> {
+            if (state != State.HANDLING)
+                return;
+            if (send)
+                sendResponse(response, keep);
+            else
+                close();
+        }));
+    }
+    
+    private void sendResponse(ByteBuffer[] response, boolean keepAlive) throws IOException {
+        this.response = response;
+        this.keepAlive = keepAlive;
+        this.state = State.WRITING;
+        writeResponse();
+    }
+    
+    private void writeResponse() throws IOException {
+        if (runningTasks)
+            return;
+        
+        boolean flushed = wrap(response);
+        if (state == State.CLOSED)
+            return;
+        if (engine.getHandshakeStatus() == NEED_TASK) {
+            runDelegatedTasks();
+            return;
+        }
+        if (!flushed || hasRemaining(response)) {
+            updateInterest();
+            return;
+        }
+        
+        response = null;
+        if (!keepAlive) {
+            close();
+            return;
+        }
+        
+        state = State.READING;
+        lastActivity = System.currentTimeMillis();
+        process();
+    }
+    
+    // MISC
+    
+    private static boolean hasRemaining(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers)
+            if (buffer.hasRemaining())
+                return true;
+        return false;
+    }
+    
+    private void updateInterest() {
+        if (key == null || !key.isValid())
+            return;
+        
+        int ops = 0;
+        if (netOut.position() > 0)
+            ops |= SelectionKey.OP_WRITE;
+        if (!runningTasks && (state == State.HANDSHAKING || state == State.READING
+            || state == State.WRITING && engine.getHandshakeStatus() == NEED_UNWRAP))
+            ops |= SelectionKey.OP_READ;
+        key.interestOps(ops);
+    }
+    
+    private void close() {
+        if (state == State.CLOSED)
+            return;
+        state = State.CLOSED;
+        
+        try {
+            engine.closeOutbound();
+            if (!runningTasks)
+                engine.wrap(EMPTY, netOut);
+            netOut.flip();
+            channel.write(netOut);
+        } catch (IOException ignored) {
+            // best-effort close_notify
+        } finally {
+            if (key != null)
+                key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    private void guard(IOAction action) {
+        try {
+            action.run();
+        } catch (SSLException ex) {
+            // handshake failures and protocol errors are common with scanners and old clients
+            close();
+        } catch (IOException | RuntimeException ex) {
+            ex.printStackTrace();
+            close();
+        }
+    }
+    
+    private static ByteBuffer enlarge(ByteBuffer buffer, int capacity) {
+        ByteBuffer result = buffer.isDirect()? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        buffer.flip();
+        result.put(buffer);
+        return result;
+    }
+    
+    // SUBCLASSES
+    
+    private static enum State {
+        HANDSHAKING,
+        READING,
+        HANDLING,
+        WRITING,
+        CLOSED
+    }
+    
+    private static interface IOAction {
+        
+        abstract void run() throws IOException;
+        
+    }
+    
+    /**
+     * Byte buffer which exposes its contents without copying them. Buffers written to it are kept as they are and
+     * gathered with the other contents when the response is encrypted.
+     */
+    private static class ResponseBuffer extends ByteArrayOutputStream implements ByteBufferSink {
+        
+        private final List<ByteBuffer> buffers = new ArrayList<>(1);
+        private int mark = 0;
+        
+        ResponseBuffer() {
+            super(8192);
+        }
+        
+        @Override
+        public void write(ByteBuffer buffer) {
+            closeSegment();
+            buffers.add(buffer.slice());
+            buffer.position(buffer.limit());
+        }
+        
+        ByteBuffer[] toByteBuffers() {
+            closeSegment();
+            return buffers.toArray(new ByteBuffer[0]);
+        }
+        
+        /**
+         * Adds the bytes written since the last segment as a buffer. Growing the array doesn't change its previous
+         * instance, so the segment stays valid.
+         */
+        private void closeSegment() {
+            if (count > mark)
+                buffers.add(ByteBuffer.wrap(buf, mark, count - mark));
+            mark = count;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,141 @@
+package tech.eisen.server.nio;
+
+import org.jetbrains.annotations.NotNull;
+import tech.eisen.server.SocketConfig;
+import tech.eisen.server.TlsConfig;
+import tech.eisen.server.handler.HttpEventHandler;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>
+ * A non-blocking HTTPS server engine.
+ * </p>
+ * <p>
+ * Connections are accepted on the thread calling {@link #run()} and then multiplexed by a small, fixed amount of
+ * event loops, which perform all TLS and socket I/O through {@link SSLEngine SSL engines}. Only complete requests are
+ * handed to the worker executor, where the handler writes its response into memory. The response is then encrypted
+ * and written by the connection's event loop.
+ * </p>
+ * <p>
+ * Idle connections therefore don't occupy any thread, no matter how many of them are kept alive.
+ * </p>
+ */
+public class NioServer {
+    
+    private final SSLContext sslContext;
+    private final TlsConfig tlsConfig;
+    private final SSLParameters sslParameters;
+    private final int port;
+    private final SocketConfig socketConfig;
+    private final HttpEventHandler handler;
+    private final Executor workers;
+    private final EventLoop[] eventLoops;
+    
+    private final int keepAliveTimeout;
+    private final int maxRequests;
+    
+    /**
+     * Constructs a new server engine.
+     *
+     * @param sslContext the context from which the engine of each connection is created
+     * @param tlsConfig the TLS configuration, which also records the handshakes
+     * @param port the port to listen on
+     * @param socketConfig the options for the listening and the accepted sockets
+     * @param eventLoops the amount of event loops
+     * @param handler the handler for complete requests
+     * @param workers the executor on which the handler and delegated TLS tasks are run
+     * @param keepAliveTimeout the time in milliseconds after which idle connections are closed, or {@code 0}
+     * @param maxRequests the maximum amount of requests per connection
+     */
+    public NioServer(@NotNull SSLContext sslContext, @NotNull TlsConfig tlsConfig,
+                     int port, @NotNull SocketConfig socketConfig, int eventLoops,
+                     @NotNull HttpEventHandler handler, @NotNull Executor workers,
+                     int keepAliveTimeout, int maxRequests) {
+        if (eventLoops < 1)
+            throw new IllegalArgumentException("At least one event loop is required");
+        
+        this.sslContext = sslContext;
+        this.tlsConfig = tlsConfig;
+        this.sslParameters = tlsConfig.createParameters(sslContext);
+        this.port = port;
+        this.socketConfig = socketConfig;
+        this.handler = handler;
+        this.workers = workers;
+        this.eventLoops = new EventLoop[eventLoops];
+        this.keepAliveTimeout = keepAliveTimeout;
+        this.maxRequests = maxRequests;
+    }
+    
+    /**
+     * Starts the event loops and accepts connections on the current thread until an I/O error occurs.
+     *
+     * @throws IOException if the server socket can't be opened or an I/O error occurs while accepting
+     */
+    public void run() throws IOException {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            socketConfig.bind(serverChannel.socket(), port);
+            
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new EventLoop(this);
+                Thread thread = new Thread(eventLoops[i], "Event-Loop-" + (i + 1));
+                thread.setDaemon(true);
+                thread.start();
+            }
+            
+            //noinspection InfiniteLoopStatement
+            for (int next = 0; ; next = (next + 1) % eventLoops.length) {
+                SocketChannel channel = serverChannel.accept();
+                
+                try {
+                    channel.configureBlocking(false);
+                    socketConfig.configure(channel.socket());
+                } catch (IOException ex) {
+                    // the client may have reset the connection already, which must not stop the server
+                    ex.printStackTrace();
+                    channel.close();
+                    continue;
+                }
+                
+                eventLoops[next].register(channel);
+            }
+        }
+    }
+    
+    // PACKAGE-PRIVATE
+    
+    SSLEngine createEngine(InetSocketAddress remote) {
+        SSLEngine engine = sslContext.createSSLEngine(remote.getHostString(), remote.getPort());
+        engine.setUseClientMode(false);
+        engine.setSSLParameters(sslParameters);
+        return engine;
+    }
+    
+    TlsConfig getTlsConfig() {
+        return tlsConfig;
+    }
+    
+    HttpEventHandler getHandler() {
+        return handler;
+    }
+    
+    Executor getWorkers() {
+        return workers;
+    }
+    
+    int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+    
+    int getMaxRequests() {
+        return maxRequests;
+    }
+    
+}
@@ -0,0 +1,64 @@
+package tech.eisen.server;
+
+import java.util.concurrent.*;
+
+/**
+ * <p>
+ * Compares the connection execution modes of the server under a load of mostly blocked connections, as is typical
+ * for connections waiting on socket reads or resource I/O.
+ * </p>
+ * <p>
+ * This is not a unit test. Run it using {@code main} with optional arguments
+ * {@code <connections> <blockMillis> <rounds>}.
+ * </p>
+ */
+public class ConnectionExecutorBenchmark {
+    
+    public static void main(String... args) throws Exception {
+        final int connections = args.length > 0? Integer.parseInt(args[0]) : 10_000;
+        final int blockMillis = args.length > 1? Integer.parseInt(args[1]) : 50;
+        final int rounds = args.length > 2? Integer.parseInt(args[2]) : 5;
+        
+        System.out.printf("%d connections, each blocked for %dms, %d rounds%n", connections, blockMillis, rounds);
+        
+        for (int round = 0; round < rounds; round++) {
+            System.out.printf("round %d:%n", round + 1);
+            
+            run("thread-per-connection", task -> new Thread(task).start(), connections, blockMillis);
+            
+            ConnectionPool pool = new ConnectionPool(64, 256, connections, ConnectionPool.RejectionPolicy.CALLER_RUNS);
+            run("pool(64..256)", pool, connections, blockMillis);
+            pool.shutdown();
+            
+            if (VirtualThreads.isSupported()) {
+                ExecutorService virtual = VirtualThreads.newVirtualThreadPerTaskExecutor();
+                run("virtual-threads", virtual, connections, blockMillis);
+                virtual.shutdown();
+            }
+            else System.out.println("  virtual-threads: unsupported on Java " + System.getProperty("java.version"));
+        }
+    }
+    
+    private static void run(String name, Executor executor, int connections, int blockMillis)
+        throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(connections);
+        Runnable connection = () -> {
+            try {
+                Thread.sleep(blockMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                done.countDown();
+            }
+        };
+        
+        long before = System.nanoTime();
+        for (int i = 0; i < connections; i++)
+            executor.execute(connection);
+        done.await();
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - before);
+        
+        System.out.printf("  %s: %dms (%.0f connections/s)%n", name, millis, connections * 1000D / Math.max(1, millis));
+    }
+    
+}
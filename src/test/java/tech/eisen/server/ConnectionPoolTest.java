@@ -0,0 +1,77 @@
+package tech.eisen.server;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConnectionPoolTest {
+    
+    @Test
+    public void testCloseRejection() throws InterruptedException {
+        ConnectionPool pool = new ConnectionPool(1, 1, 1, ConnectionPool.RejectionPolicy.CLOSE);
+        CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+        
+        try {
+            pool.execute(() -> {
+                started.countDown();
+                awaitQuietly(release);
+            });
+            started.await();
+            pool.execute(() -> {});
+            
+            assertEquals(1, pool.getActiveConnections());
+            assertEquals(1, pool.getQueuedConnections());
+            
+            try {
+                pool.execute(() -> {});
+                fail("saturated pool must reject");
+            } catch (RejectedExecutionException ignored) {}
+            
+            assertEquals(1, pool.getRejectedConnections());
+        } finally {
+            release.countDown();
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        
+        assertEquals(0, pool.getActiveConnections());
+    }
+    
+    @Test
+    public void testCallerRunsRejection() throws InterruptedException {
+        ConnectionPool pool = new ConnectionPool(1, 1, 0, ConnectionPool.RejectionPolicy.CALLER_RUNS);
+        CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+        
+        try {
+            pool.execute(() -> {
+                started.countDown();
+                awaitQuietly(release);
+            });
+            started.await();
+            
+            Thread caller = Thread.currentThread();
+            boolean[] ranOnCaller = {false};
+            pool.execute(() -> ranOnCaller[0] = Thread.currentThread() == caller);
+            
+            assertTrue(ranOnCaller[0]);
+            assertEquals(1, pool.getRejectedConnections());
+        } finally {
+            release.countDown();
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        }
+    }
+    
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+}
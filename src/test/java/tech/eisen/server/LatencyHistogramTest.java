@@ -0,0 +1,32 @@
+package tech.eisen.server;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    
+    @Test
+    public void testBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        
+        histogram.record(500);
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(1));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(3));
+        histogram.record(TimeUnit.DAYS.toNanos(365));
+        
+        assertEquals(4, histogram.getCount());
+        assertEquals(1, histogram.getCount(0));
+        assertEquals(1, histogram.getCount(1));
+        assertEquals(1, histogram.getCount(2));
+        assertEquals(1, histogram.getCount(histogram.getBucketCount() - 1));
+        
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(4, histogram.getPercentile(75));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+    }
+    
+}
@@ -0,0 +1,346 @@
+package tech.eisen.server;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import tech.eisen.server.content.ContentCoding;
+import tech.eisen.server.content.MediaTypes;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+public class ResourceCacheTest {
+    
+    private final static byte[] CONTENTS = new byte[100_000];
+    
+    static {
+        for (int i = 0; i < CONTENTS.length; i++)
+            CONTENTS[i] = (byte) i;
+    }
+    
+    private final AtomicInteger opened = new AtomicInteger();
+    private final CountDownLatch released = new CountDownLatch(1);
+    
+    @Test
+    public void testSingleFlight() throws Exception {
+        URL url = new URL("test", null, -1, "/resource.txt", new GatedHandler());
+        ResourceCache cache = new ResourceCache();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        
+        try {
+            InputStream leader = cache.openStream(url);
+            List<Future<byte[]>> followers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                InputStream follower = cache.openStream(url);
+                followers.add(executor.submit(() -> IOUtils.toByteArray(follower)));
+            }
+            
+            // the leading stream is closed without being read, which must still complete the load
+            released.countDown();
+            leader.close();
+            
+            for (Future<byte[]> follower : followers)
+                assertArrayEquals(CONTENTS, follower.get(10, TimeUnit.SECONDS));
+            assertArrayEquals(CONTENTS, cache.getAllBytes(url));
+            assertEquals(1, opened.get());
+            assertEquals(1L, cache.getHitCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testIdleLeader() throws Exception {
+        URL url = new URL("test", null, -1, "/idle.txt", new GatedHandler());
+        released.countDown();
+        ResourceCache cache = new ResourceCache();
+        
+        // the leading stream is neither read nor closed, so the follower has to read from the source itself
+        InputStream leader = cache.openStream(url);
+        InputStream follower = cache.openStream(url);
+        assertArrayEquals(CONTENTS, IOUtils.toByteArray(follower));
+        assertArrayEquals(CONTENTS, IOUtils.toByteArray(leader));
+        assertArrayEquals(CONTENTS, cache.getAllBytes(url));
+        assertEquals(1, opened.get());
+    }
+    
+    @Test
+    public void testFailure() throws Exception {
+        URL url = new URL("test", null, -1, "/failure.txt", new GatedHandler());
+        ResourceCache cache = new ResourceCache();
+        
+        InputStream leader = cache.openStream(url);
+        InputStream follower = cache.openStream(url);
+        released.countDown();
+        
+        try {
+            IOUtils.toByteArray(leader);
+            fail();
+        } catch (IOException ignored) {}
+        try {
+            IOUtils.toByteArray(follower);
+            fail();
+        } catch (IOException ignored) {}
+        
+        // the failed load is forgotten, so the next miss loads again
+        try {
+            cache.openStream(url).close();
+            fail();
+        } catch (IOException ignored) {}
+        assertEquals(2, opened.get());
+    }
+    
+    @Test
+    public void testOffHeap() throws Exception {
+        Path file = Files.createTempFile("large", ".txt");
+        Files.write(file, CONTENTS);
+        URL fileUrl = file.toUri().toURL();
+        URL otherUrl = new URL("test", null, -1, "/large.txt", new GatedHandler());
+        released.countDown();
+        
+        ResourceCache cache = new ResourceCache();
+        cache.setOffHeapThreshold(CONTENTS.length);
+        
+        for (URL url : Arrays.asList(fileUrl, otherUrl)) {
+            ByteBuffer buffer = cache.getBuffer(url);
+            assertTrue(buffer.isDirect());
+            assertTrue(buffer.isReadOnly());
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            assertArrayEquals(CONTENTS, bytes);
+            
+            assertArrayEquals(CONTENTS, IOUtils.toByteArray(cache.openStream(url)));
+        }
+        assertEquals(2L * CONTENTS.length, cache.getOffHeapSize());
+        assertEquals(0L, cache.getSize());
+        assertEquals(2L, cache.getHitCount());
+        
+        cache.setMaximumOffHeapSize(CONTENTS.length);
+        assertTrue(cache.getOffHeapSize() <= CONTENTS.length);
+        assertTrue(cache.getEvictionCount() >= 1);
+    }
+    
+    @Test
+    public void testVariants() throws Exception {
+        URL url = new URL("test", null, -1, "/variants.txt", new GatedHandler());
+        released.countDown();
+        
+        ResourceCache cache = new ResourceCache();
+        cache.setEncodingExecutor(Runnable::run);
+        
+        assertNull(cache.getVariant(url, ContentCoding.GZIP));
+        assertArrayEquals(CONTENTS, cache.getAllBytes(url));
+        
+        // checking for the variant doesn't prepare it, the first access only prepares it
+        assertFalse(cache.hasVariant(url, ContentCoding.GZIP));
+        assertNull(cache.getVariant(url, ContentCoding.GZIP));
+        ByteBuffer gzip = cache.getVariant(url, ContentCoding.GZIP);
+        assertNotNull(gzip);
+        assertTrue(cache.hasVariant(url, ContentCoding.GZIP));
+        assertArrayEquals(CONTENTS, IOUtils.toByteArray(new GZIPInputStream(toStream(gzip))));
+        
+        cache.prepareVariants(url);
+        ByteBuffer deflate = cache.getVariant(url, ContentCoding.DEFLATE);
+        assertNotNull(deflate);
+        assertArrayEquals(CONTENTS, IOUtils.toByteArray(new InflaterInputStream(toStream(deflate))));
+        
+        assertEquals((long) CONTENTS.length + gzip.capacity() + deflate.capacity(), cache.getSize());
+        cache.setMaximumSize(0);
+        assertNull(cache.getVariant(url, ContentCoding.GZIP));
+        assertEquals(0L, cache.getSize());
+    }
+    
+    @Test
+    public void testOffHeapVariants() throws Exception {
+        Path file = Files.createTempFile("large", ".txt");
+        Files.write(file, CONTENTS);
+        URL url = file.toUri().toURL();
+        byte[] random = new byte[CONTENTS.length];
+        new Random(42).nextBytes(random);
+        Path randomFile = Files.createTempFile("random", ".bin");
+        Files.write(randomFile, random);
+        URL randomUrl = randomFile.toUri().toURL();
+        
+        ResourceCache cache = new ResourceCache();
+        cache.setOffHeapThreshold(CONTENTS.length);
+        cache.setEncodingExecutor(Runnable::run);
+        
+        cache.getBuffer(url);
+        cache.prepareVariants(url);
+        ByteBuffer gzip = cache.getVariant(url, ContentCoding.GZIP);
+        assertNotNull(gzip);
+        // the variant is kept off the heap along with the contents
+        assertTrue(gzip.isDirect());
+        assertEquals((long) gzip.remaining(), gzip.capacity());
+        assertArrayEquals(CONTENTS, IOUtils.toByteArray(new GZIPInputStream(toStream(gzip))));
+        
+        ByteBuffer deflate = cache.getVariant(url, ContentCoding.DEFLATE);
+        assertNotNull(deflate);
+        assertArrayEquals(CONTENTS, IOUtils.toByteArray(new InflaterInputStream(toStream(deflate))));
+        assertEquals((long) CONTENTS.length + gzip.capacity() + deflate.capacity(), cache.getOffHeapSize());
+        
+        // contents which don't shrink have no variants
+        cache.getBuffer(randomUrl);
+        cache.prepareVariants(randomUrl);
+        assertNull(cache.getVariant(randomUrl, ContentCoding.GZIP));
+    }
+    
+    @Test
+    public void testRevalidation() throws Exception {
+        Path file = Files.createTempFile("changing", ".txt");
+        Files.write(file, CONTENTS);
+        URL url = file.toUri().toURL();
+        
+        ResourceCache cache = new ResourceCache();
+        cache.setRevalidationInterval(60_000);
+        assertTrue(cache.updateAttributes(url));
+        assertArrayEquals(CONTENTS, cache.getAllBytes(url));
+        
+        // changes of untracked resources are only noticed after the interval
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 10_000));
+        assertFalse(cache.updateAttributes(url));
+        cache.setRevalidationInterval(0);
+        assertTrue(cache.updateAttributes(url));
+        assertFalse(cache.updateAttributes(url));
+        
+        // tracked resources are never checked, their changes are pushed
+        cache.setTracked(tracked -> true);
+        cache.invalidate(url);
+        assertTrue(cache.updateAttributes(url));
+        assertArrayEquals(CONTENTS, cache.getAllBytes(url));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 20_000));
+        assertFalse(cache.updateAttributes(url));
+        assertEquals((long) CONTENTS.length, cache.getSize());
+        
+        cache.invalidate(url);
+        assertFalse(cache.has(url));
+        assertEquals(0L, cache.getSize());
+    }
+    
+    @Test
+    public void testETag() throws Exception {
+        Path file = Files.createTempFile("tagged", ".txt");
+        Files.write(file, CONTENTS);
+        URL url = file.toUri().toURL();
+        ResourceCache cache = new ResourceCache();
+        
+        String etag = cache.getETag(url);
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+        assertEquals(etag, cache.getETag(url));
+        assertEquals(etag.substring(0, etag.length() - 1) + "-gzip\"",
+            ResourceCache.getETag(etag, ContentCoding.GZIP));
+        
+        byte[] changed = CONTENTS.clone();
+        changed[changed.length / 2]++;
+        Files.write(file, changed);
+        cache.invalidate(url);
+        assertFalse(etag.equals(cache.getETag(url)));
+    }
+    
+    @Test
+    public void testSniffing() throws Exception {
+        URL url = new URL("test", null, -1, "/unknown", new GatedHandler());
+        released.countDown();
+        ResourceCache cache = new ResourceCache();
+        
+        assertEquals(MediaTypes.DEFAULT_TYPE, cache.getAttributes(url).getMediaType());
+        // the prefix has been taken from the load of the contents, which have been cached along the way
+        assertArrayEquals(CONTENTS, cache.getAllBytes(url));
+        assertEquals(1, opened.get());
+        assertEquals(MediaTypes.DEFAULT_TYPE, cache.getAttributes(url).getMediaType());
+    }
+    
+    @Test
+    public void testStatistics() throws Exception {
+        Path file = Files.createTempFile("counted", ".txt");
+        Files.write(file, CONTENTS);
+        URL url = file.toUri().toURL();
+        ResourceCache cache = new ResourceCache();
+        
+        cache.getAttributes(url);
+        cache.getAttributes(url);
+        cache.getAllBytes(url);
+        cache.getAllBytes(url);
+        
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(1, cache.getAttributeMissCount());
+        assertEquals(1, cache.getAttributeHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getLoadTimes().getCount());
+        
+        cache.invalidate(url);
+        assertEquals(1, cache.getInvalidationCount());
+        assertEquals(0, cache.getEntryCount());
+    }
+    
+    private static InputStream toStream(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new ByteArrayInputStream(bytes);
+    }
+    
+    /**
+     * Serves {@link #CONTENTS} in small blocks, of which all but the first are withheld until {@link #released}.
+     * Paths starting with {@code /failure} fail after the first block.
+     */
+    private class GatedHandler extends URLStreamHandler {
+        
+        @Override
+        protected URLConnection openConnection(URL url) {
+            return new URLConnection(url) {
+                
+                @Override
+                public void connect() {}
+                
+                @Override
+                public long getContentLengthLong() {
+                    return CONTENTS.length;
+                }
+                
+                @Override
+                public InputStream getInputStream() {
+                    opened.incrementAndGet();
+                    final boolean failing = url.getPath().startsWith("/failure");
+                    return new ByteArrayInputStream(CONTENTS) {
+                        
+                        @Override
+                        public synchronized int read(byte[] b, int off, int len) {
+                            if (pos > 0) {
+                                try {
+                                    released.await();
+                                } catch (InterruptedException ex) {
+                                    throw new IllegalStateException(ex);
+                                }
+                                if (failing)
+                                    throw new IllegalStateException("failure");
+                            }
+                            return super.read(b, off, Math.min(len, 1000));
+                        }
+                        
+                    };
+                }
+                
+            };
+        }
+        
+    }
+    
+}
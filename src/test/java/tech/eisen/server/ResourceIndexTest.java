@@ -0,0 +1,115 @@
+package tech.eisen.server;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class ResourceIndexTest {
+    
+    @Test
+    public void testResolution() throws IOException {
+        Path classPath = Files.createTempDirectory("classpath");
+        Path directory = Files.createTempDirectory("public");
+        write(classPath.resolve("html/index.html"));
+        write(classPath.resolve("html/about.html"));
+        write(classPath.resolve("html/about"));
+        write(classPath.resolve("html/style/site.css"));
+        write(directory.resolve("about.html"));
+        write(directory.resolve("files/a.txt"));
+        write(directory.resolve("secret.txt"));
+        
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {classPath.toUri().toURL()}, null);
+             ResourceIndex index = new ResourceIndex(loader, "html", directory)) {
+            index.exclude(directory.resolve("secret.txt"));
+            index.build();
+            
+            assertEquals(loader.getResource("html/index.html"), index.find("/"));
+            assertEquals(loader.getResource("html/about"), index.find("/about"));
+            assertEquals(loader.getResource("html/about.html"), index.find("/about.html"));
+            assertEquals(loader.getResource("html/style/site.css"), index.find("/style/site.css"));
+            assertEquals(directory.resolve("files/a.txt").toUri().toURL(), index.find("/files/a.txt"));
+            assertNull(index.find("/style"));
+            assertNull(index.find("/files"));
+            assertNull(index.find("/../public/files/a.txt"));
+            assertNull(index.find("/secret.txt"));
+            
+            // every resource is listed once, although it may be found under several paths
+            assertEquals(4, index.getResources(false).size());
+            assertEquals(6, index.getResources(true).size());
+            assertEquals(1, index.findAll("/style/").size());
+            assertEquals(3, index.findAll("/about").size());
+            assertTrue(index.getResources(true).contains(directory.resolve("files/a.txt").toUri().toURL()));
+        }
+    }
+    
+    @Test
+    public void testWatching() throws Exception {
+        Path directory = Files.createTempDirectory("public");
+        
+        try (URLClassLoader loader = new URLClassLoader(new URL[0], null);
+             ResourceIndex index = new ResourceIndex(loader, "html", directory)) {
+            index.build();
+            if (!index.isWatching())
+                return;
+            
+            assertNull(index.find("/new/file.txt"));
+            write(directory.resolve("new/file.txt"));
+            assertTrue(awaitIndexed(index, "/new/file.txt", true));
+            
+            Files.delete(directory.resolve("new/file.txt"));
+            assertTrue(awaitIndexed(index, "/new/file.txt", false));
+        }
+    }
+    
+    @Test
+    public void testChangeListener() throws Exception {
+        Path directory = Files.createTempDirectory("public");
+        write(directory.resolve("files/a.txt"));
+        
+        try (URLClassLoader loader = new URLClassLoader(new URL[0], null);
+             ResourceIndex index = new ResourceIndex(loader, "html", directory)) {
+            Set<URL> changed = ConcurrentHashMap.newKeySet();
+            index.addChangeListener(url -> {
+                if (url != null)
+                    changed.add(url);
+            });
+            index.build();
+            if (!index.isWatching())
+                return;
+            
+            URL url = index.find("/files/a.txt");
+            assertTrue(index.isTracked(url));
+            assertTrue(index.isTracked(new URL("jar:file:/app.jar!/html/index.html")));
+            
+            Files.write(directory.resolve("files/a.txt"), "changed".getBytes());
+            for (int i = 0; i < 200 && !changed.contains(url); i++)
+                Thread.sleep(50);
+            assertTrue(changed.contains(url));
+        }
+    }
+    
+    private static boolean awaitIndexed(ResourceIndex index, String path, boolean indexed)
+        throws InterruptedException {
+        // some watch services poll, so allow for a generous delay
+        for (int i = 0; i < 200; i++) {
+            if ((index.find(path) != null) == indexed)
+                return true;
+            Thread.sleep(50);
+        }
+        return false;
+    }
+    
+    private static void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, file.getFileName().toString().getBytes());
+    }
+    
+}
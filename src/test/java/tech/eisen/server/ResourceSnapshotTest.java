@@ -0,0 +1,107 @@
+package tech.eisen.server;
+
+import org.junit.Test;
+import tech.eisen.server.content.ContentCoding;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ResourceSnapshotTest {
+    
+    private final static byte[] CONTENTS = new byte[10_000];
+    
+    static {
+        Arrays.fill(CONTENTS, (byte) 'a');
+    }
+    
+    @Test
+    public void testRestore() throws Exception {
+        Path directory = Files.createTempDirectory("snapshot");
+        URL page = write(directory.resolve("page.html"));
+        URL style = write(directory.resolve("style.css"));
+        
+        ResourceCache cache = new ResourceCache();
+        long lastModified = cache.getAttributes(page).lastModifiedTime().toMillis();
+        cache.store(page, "text/html", lastModified, "pre-processed".getBytes());
+        cache.getAllBytes(style);
+        cache.prepareVariants(style, Runnable::run);
+        
+        ResourceSnapshot snapshot = new ResourceSnapshot(directory.resolve("cache.snapshot"), "port=80");
+        assertEquals(2, snapshot.save(cache));
+        
+        ResourceCache restored = new ResourceCache();
+        assertEquals(2, snapshot.restore(restored));
+        assertEquals("pre-processed", restored.getAsString(page));
+        assertEquals("text/html", restored.getAttributes(page).getMediaType());
+        assertArrayEquals(CONTENTS, restored.getAllBytes(style));
+        assertEquals(cache.getETag(style), restored.getETag(style));
+        assertNotNull(restored.getVariant(style, ContentCoding.GZIP));
+        
+        // the restored contents are saved again, replacing the mapped snapshot
+        assertEquals(2, snapshot.save(restored));
+        assertArrayEquals(CONTENTS, restored.getAllBytes(style));
+        
+        // modified resources and other configurations are not restored
+        Files.setLastModifiedTime(directory.resolve("style.css"), FileTime.fromMillis(lastModified - 60_000));
+        assertEquals(1, snapshot.restore(new ResourceCache()));
+        assertEquals(0, new ResourceSnapshot(snapshot.getFile(), "port=8080").restore(new ResourceCache()));
+    }
+    
+    @Test
+    public void testDependencies() throws Exception {
+        Path directory = Files.createTempDirectory("snapshot");
+        URL page = write(directory.resolve("page.html"));
+        URL header = write(directory.resolve("header.html"));
+        
+        ResourceCache cache = new ResourceCache();
+        long lastModified = cache.getAttributes(page).lastModifiedTime().toMillis();
+        long headerModified = cache.getAttributes(header).lastModifiedTime().toMillis();
+        cache.store(page, "text/html", lastModified, "embedded".getBytes(),
+            Collections.singletonMap(header, headerModified));
+        
+        ResourceSnapshot snapshot = new ResourceSnapshot(directory.resolve("cache.snapshot"), "port=80");
+        assertEquals(1, snapshot.save(cache));
+        assertEquals(1, snapshot.restore(new ResourceCache()));
+        
+        // the page itself hasn't been modified, but what it has embedded has
+        Files.setLastModifiedTime(directory.resolve("header.html"), FileTime.fromMillis(headerModified - 60_000));
+        assertEquals(0, snapshot.restore(new ResourceCache()));
+    }
+    
+    @Test
+    public void testCorruption() throws Exception {
+        Path directory = Files.createTempDirectory("snapshot");
+        URL style = write(directory.resolve("style.css"));
+        
+        ResourceCache cache = new ResourceCache();
+        cache.getAllBytes(style);
+        ResourceSnapshot snapshot = new ResourceSnapshot(directory.resolve("cache.snapshot"), "");
+        snapshot.save(cache);
+        
+        byte[] bytes = Files.readAllBytes(snapshot.getFile());
+        bytes[bytes.length / 2]++;
+        Files.write(snapshot.getFile(), bytes, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            snapshot.restore(new ResourceCache());
+            fail();
+        } catch (IOException ignored) {}
+        
+        Files.delete(snapshot.getFile());
+        assertEquals(0, snapshot.restore(new ResourceCache()));
+    }
+    
+    private static URL write(Path file) throws IOException {
+        Files.write(file, CONTENTS);
+        return file.toUri().toURL();
+    }
+    
+}
@@ -0,0 +1,91 @@
+package tech.eisen.server;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TinyLfuPolicyTest {
+    
+    @Test
+    public void testBudget() {
+        Set<Integer> evicted = new HashSet<>();
+        TinyLfuPolicy<Integer, Integer> policy = new TinyLfuPolicy<>(1000, (key, value) -> evicted.add(key));
+        
+        for (int i = 0; i < 100; i++) {
+            policy.onWrite(i, i, 50);
+            assertTrue(policy.getWeightedSize() <= 1000);
+        }
+        assertEquals(100 - policy.getWeightedSize() / 50, policy.getEvictionCount());
+        assertEquals(policy.getEvictionCount() * 50, policy.getEvictionWeight());
+        assertEquals((long) evicted.size(), policy.getEvictionCount());
+        
+        // entries larger than the budget are rejected right away
+        policy.onWrite(1000, 1000, 1001);
+        assertTrue(evicted.contains(1000));
+        
+        policy.setMaximum(100);
+        assertTrue(policy.getWeightedSize() <= 100);
+        policy.clear();
+        assertEquals(0L, policy.getWeightedSize());
+    }
+    
+    @Test
+    public void testAdmission() {
+        Set<Integer> evicted = new HashSet<>();
+        TinyLfuPolicy<Integer, Integer> policy = new TinyLfuPolicy<>(1_000_000, (key, value) -> evicted.add(key));
+        
+        // the main space is filled with a rare entry, followed by a popular one and others
+        for (int round = 0; round < 5; round++)
+            policy.onRead(2);
+        for (int i = 1; i < 10; i++)
+            policy.onWrite(i, i, 110_000);
+        assertTrue(evicted.isEmpty());
+        
+        // a candidate which only wins against the first of the two victims it needs displaces neither
+        for (int round = 0; round < 2; round++)
+            policy.onRead(100);
+        policy.onWrite(100, 100, 220_000);
+        assertEquals(new HashSet<>(Arrays.asList(100)), evicted);
+        
+        // a candidate which wins against both displaces them
+        for (int round = 0; round < 10; round++)
+            policy.onRead(101);
+        policy.onWrite(101, 101, 220_000);
+        assertEquals(new HashSet<>(Arrays.asList(100, 1, 2)), evicted);
+        
+        // a candidate which doesn't fit into the main space is rejected without displacing anything
+        for (int round = 0; round < 20; round++)
+            policy.onRead(102);
+        policy.onWrite(102, 102, 995_000);
+        assertEquals(new HashSet<>(Arrays.asList(100, 1, 2, 102)), evicted);
+    }
+    
+    @Test
+    public void testScanResistance() {
+        Set<Integer> evicted = new HashSet<>();
+        TinyLfuPolicy<Integer, Integer> policy = new TinyLfuPolicy<>(100 * 1024, (key, value) -> evicted.add(key));
+        
+        for (int i = 0; i < 10; i++)
+            policy.onWrite(i, i, 1024);
+        for (int round = 0; round < 5; round++)
+            for (int i = 0; i < 10; i++)
+                policy.onRead(i);
+        
+        // a scan of entries which are only requested once, while the popular entries are still requested
+        for (int i = 100; i < 10_000; i++) {
+            policy.onWrite(i, i, 1024);
+            if (i % 100 == 0)
+                for (int j = 0; j < 10; j++)
+                    policy.onRead(j);
+        }
+        
+        for (int i = 0; i < 10; i++)
+            assertFalse("popular entry " + i + " has been evicted", evicted.contains(i));
+        assertTrue(policy.getWeightedSize() <= 100 * 1024);
+    }
+    
+}
@@ -0,0 +1,102 @@
+package tech.eisen.server.content;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class HtmlTemplateTest {
+    
+    @Test
+    public void testCompile() {
+        HtmlTemplate template = HtmlTemplate.compile("<p>$$5 for $user.name, $const:server.port!</p>");
+        List<HtmlTemplate.Node> nodes = template.getNodes();
+        assertEquals(5, nodes.size());
+        assertEquals("<p>$5 for ", ((HtmlTemplate.Literal) nodes.get(0)).getText());
+        
+        HtmlTemplate.Variable user = (HtmlTemplate.Variable) nodes.get(1);
+        assertEquals("user.name", user.getName());
+        assertFalse(user.isConstant());
+        assertEquals(", ", ((HtmlTemplate.Literal) nodes.get(2)).getText());
+        
+        HtmlTemplate.Variable port = (HtmlTemplate.Variable) nodes.get(3);
+        assertEquals("server.port", port.getName());
+        assertTrue(port.isConstant());
+        assertEquals("!</p>", ((HtmlTemplate.Literal) nodes.get(4)).getText());
+        
+        // a reference which isn't terminated is dropped
+        assertEquals(1, HtmlTemplate.compile("text $end").getNodes().size());
+        
+        try {
+            HtmlTemplate.compile(new StringReader("$if{\"then\": "));
+            fail();
+        } catch (EOFException ignored) {
+        } catch (IOException ex) {
+            fail(ex.toString());
+        }
+    }
+    
+    @Test
+    public void testDependencies() {
+        HtmlTemplate template = HtmlTemplate.compile(
+            "$User.Name, $const:server.port $const:Embed{\"src\": \"a\"}");
+        assertEquals(new HashSet<>(Arrays.asList("user.name", "server.port")), template.getKeys());
+        assertEquals(Collections.singleton("embed"), template.getFunctions());
+        
+        assertTrue(HtmlTemplate.compile("<p>static</p>").getKeys().isEmpty());
+    }
+    
+    @Test
+    public void testRender() throws IOException {
+        Map<String, String> env = new HashMap<>();
+        env.put("User.Name", "jan");
+        env.put("server.port", "8080");
+        HtmlTemplate template = HtmlTemplate.compile("$USER.name, $const:server.port $unknown!");
+        
+        assertEquals("jan, 8080 $unknown!", render(new HtmlPreProcessorPipe(null, env), template));
+        assertEquals("$USER.name, 8080 $unknown!", render(new HtmlPreProcessorPipe(null, env, true), template));
+        
+        // rendering doesn't change the template, which renders like the text it has been compiled from
+        assertEquals("jan, 8080 $unknown!", new HtmlPreProcessorPipe(null, env).pipeBetweenStrings(
+            "$USER.name, $const:server.port $unknown!"));
+        assertEquals("jan, 8080 $unknown!", render(new HtmlPreProcessorPipe(null, env), template));
+    }
+    
+    @Test
+    public void testRenderSegments() throws IOException {
+        Map<String, String> env = new HashMap<>();
+        env.put("user.name", "J\u00fcrgen");
+        HtmlTemplate template = HtmlTemplate.compile("<p>Gr\u00fc\u00dfe, $user.name!</p>");
+        
+        List<ByteBuffer> segments = new ArrayList<>();
+        new HtmlPreProcessorPipe(null, env).render(template, segments);
+        assertEquals(3, segments.size());
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (ByteBuffer segment : segments) {
+            byte[] array = new byte[segment.remaining()];
+            segment.get(array);
+            bytes.write(array);
+        }
+        assertEquals("<p>Gr\u00fc\u00dfe, J\u00fcrgen!</p>", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new HtmlPreProcessorPipe(null, env).render(template, stream);
+        assertArrayEquals(bytes.toByteArray(), stream.toByteArray());
+        
+        // consuming the segments doesn't consume the encoded literals of the template
+        HtmlTemplate.Literal literal = (HtmlTemplate.Literal) template.getNodes().get(0);
+        assertEquals(12, literal.getBytes().remaining());
+    }
+    
+    private static String render(HtmlPreProcessorPipe pipe, HtmlTemplate template) throws IOException {
+        StringWriter writer = new StringWriter();
+        pipe.render(template, writer);
+        return writer.toString();
+    }
+    
+}
@@ -0,0 +1,39 @@
+package tech.eisen.server.content;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class MediaTypesTest {
+    
+    @Test
+    public void testFromName() {
+        MediaTypes types = new MediaTypes();
+        assertEquals("text/html", types.fromName("/html/index.html"));
+        assertEquals("text/css", types.fromName("style/SITE.CSS"));
+        assertEquals("font/woff2", types.fromName("fonts/a.woff2"));
+        assertNull(types.fromName("/html/about"));
+        assertNull(types.fromName("/files.d/readme"));
+        assertNull(types.fromName("/file."));
+        assertNull(types.fromName("/file.unknown"));
+    }
+    
+    @Test
+    public void testOverrides() throws Exception {
+        MediaTypes types = new MediaTypes();
+        assertEquals("text/plain", types.fromName("a.txt"));
+        
+        Path file = Files.createTempFile("mime", ".properties");
+        Files.write(file, Arrays.asList("txt = text/x-custom", "unknown=application/x-unknown"));
+        types.load(file);
+        
+        assertEquals("text/x-custom", types.fromName("a.txt"));
+        assertEquals("application/x-unknown", types.fromName("a.unknown"));
+        assertEquals("text/html", types.fromName("a.html"));
+    }
+    
+}
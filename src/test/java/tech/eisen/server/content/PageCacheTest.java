@@ -0,0 +1,73 @@
+package tech.eisen.server.content;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class PageCacheTest {
+    
+    @Test
+    public void testTemplates() throws IOException {
+        URL url = new URL("file:/html/index.html");
+        HtmlTemplate template = HtmlTemplate.compile("<p>page</p>");
+        PageCache cache = new PageCache();
+        assertNull(cache.get(url, template));
+        
+        PageCache.Page page = new PageCache.Page(template, "<p>page</p>".getBytes(StandardCharsets.UTF_8));
+        cache.put(url, page);
+        assertSame(page, cache.get(url, template));
+        // pages are only cached for the template they have been rendered from
+        assertNull(cache.get(url, HtmlTemplate.compile("<p>page</p>")));
+        assertNull(cache.get(url, template, null));
+    }
+    
+    @Test
+    public void testUsers() throws IOException {
+        URL url = new URL("file:/html/index.html");
+        HtmlTemplate template = HtmlTemplate.compile("<p>$user.name</p>");
+        PageCache cache = new PageCache();
+        
+        PageCache.Page jan = new PageCache.Page(template, "<p>jan</p>".getBytes(StandardCharsets.UTF_8));
+        PageCache.Page anonymous = new PageCache.Page(template, "<p>$user.name</p>".getBytes(StandardCharsets.UTF_8));
+        cache.put(url, "jan", jan);
+        cache.put(url, null, anonymous);
+        assertSame(jan, cache.get(url, template, "jan"));
+        assertSame(anonymous, cache.get(url, template, null));
+        assertNull(cache.get(url, template, "eve"));
+        assertNull(cache.get(url, template));
+        assertEquals(2, cache.getUserSize());
+        
+        cache.clear();
+        assertNull(cache.get(url, template, "jan"));
+    }
+    
+    @Test
+    public void testVariants() throws IOException {
+        byte[] contents = "<p>compressible compressible compressible</p>".getBytes(StandardCharsets.UTF_8);
+        PageCache.Page page = new PageCache.Page(HtmlTemplate.compile(""), contents);
+        assertEquals(contents.length, page.getContents(ContentCoding.IDENTITY).remaining());
+        
+        ByteBuffer gzip = page.getContents(ContentCoding.GZIP);
+        byte[] encoded = new byte[gzip.remaining()];
+        gzip.get(encoded);
+        // the variant is encoded once and may be consumed by every caller
+        assertEquals(encoded.length, page.getContents(ContentCoding.GZIP).remaining());
+        
+        try (GZIPInputStream stream = new GZIPInputStream(new ByteArrayInputStream(encoded))) {
+            byte[] decoded = new byte[contents.length];
+            int length = 0;
+            for (int n; length < decoded.length && (n = stream.read(decoded, length, decoded.length - length)) > 0; )
+                length += n;
+            assertEquals(contents.length, length);
+            assertArrayEquals(contents, decoded);
+        }
+    }
+    
+}
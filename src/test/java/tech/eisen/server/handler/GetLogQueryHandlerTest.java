@@ -0,0 +1,40 @@
+package tech.eisen.server.handler;
+
+import org.junit.Test;
+import tech.eisen.server.EisenServer;
+import tech.eisen.server.Verbosity;
+import tech.eisen.server.http.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class GetLogQueryHandlerTest {
+    
+    @Test
+    public void testRequiresCredentials() throws Exception {
+        EisenServer server = new EisenServer(0, Files.createTempDirectory("log").toFile(), Verbosity.QUIT);
+        server.getPasswordStore().setPassword("admin", "secret".toCharArray());
+        GetLogQueryHandler handler = new GetLogQueryHandler(server);
+        
+        for (String authorization : new String[] {null, "Basic", "Basic YWRtaW46d3Jvbmc="}) {
+            HttpRequest request = new HttpRequest("1.1", HttpRequestMethod.GET, URI.create("/log"),
+                new ByteArrayInputStream(new byte[0]));
+            if (authorization != null)
+                request.getHeaders().set("Authorization", authorization);
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            
+            try {
+                handler.handle(new HttpEvent(new HttpPeer("localhost", 0), request, response));
+                fail();
+            } catch (HttpException ex) {
+                assertEquals(HttpStatus.UNAUTHORIZED, ex.getStatus());
+            }
+            assertEquals(0, response.size());
+        }
+    }
+    
+}
@@ -0,0 +1,84 @@
+package tech.eisen.server.handler.match;
+
+import org.junit.Test;
+import tech.eisen.server.handler.HttpEventHandler;
+import tech.eisen.server.http.HttpRequestMethod;
+
+import static org.junit.Assert.*;
+
+public class RequestRouterTest {
+    
+    private final HttpEventHandler
+        root = event -> {},
+        files = event -> {},
+        user = event -> {},
+        userPosts = event -> {},
+        self = event -> {};
+    
+    private RequestRouter createRouter() {
+        RequestRouter router = new RequestRouter();
+        router.add(HttpRequestMethod.GET, "/", root);
+        router.add(HttpRequestMethod.GET, "/files/*", files);
+        router.add(HttpRequestMethod.GET, "/users/{name}/posts", userPosts);
+        router.add(HttpRequestMethod.GET, "/users/{name}", user);
+        router.add(HttpRequestMethod.GET, "/users/me", self);
+        return router;
+    }
+    
+    @Test
+    public void testExactAndPrefix() {
+        RequestRouter router = createRouter();
+        assertSame(root, router.route(HttpRequestMethod.GET, "/").getHandler());
+        assertSame(files, router.route(HttpRequestMethod.GET, "/files").getHandler());
+        assertSame(files, router.route(HttpRequestMethod.GET, "/files/a/b.txt").getHandler());
+        assertNull(router.route(HttpRequestMethod.GET, "/files.txt"));
+        assertNull(router.route(HttpRequestMethod.HEAD, "/"));
+    }
+    
+    @Test
+    public void testParameters() {
+        RequestRouter router = createRouter();
+        
+        RequestRouter.Route route = router.route(HttpRequestMethod.GET, "/users/jan/posts/");
+        assertSame(userPosts, route.getHandler());
+        assertEquals("jan", route.getParameters().get("name"));
+        
+        // static segments take precedence over parameters
+        route = router.route(HttpRequestMethod.GET, "/users/me");
+        assertSame(self, route.getHandler());
+        assertTrue(route.getParameters().isEmpty());
+        
+        assertNull(router.route(HttpRequestMethod.GET, "/users/jan/comments"));
+    }
+    
+    @Test
+    public void testLongestPrefixAsFallback() {
+        RequestRouter router = createRouter();
+        router.add(HttpRequestMethod.GET, "/*", root);
+        router.add(HttpRequestMethod.GET, "/users/{name}/*", files);
+        
+        assertSame(root, router.route(HttpRequestMethod.GET, "/unknown").getHandler());
+        assertSame(userPosts, router.route(HttpRequestMethod.GET, "/users/jan/posts").getHandler());
+        
+        RequestRouter.Route route = router.route(HttpRequestMethod.GET, "/users/jan/comments");
+        assertSame(files, route.getHandler());
+        assertEquals("jan", route.getParameters().get("name"));
+    }
+    
+    @Test
+    public void testConflicts() {
+        RequestRouter router = createRouter();
+        assertRejected(router, "/users/{id}");
+        assertRejected(router, "/files/*");
+        assertRejected(router, "/a/*/b");
+        assertRejected(router, "relative");
+    }
+    
+    private void assertRejected(RequestRouter router, String pattern) {
+        try {
+            router.add(HttpRequestMethod.GET, pattern, root);
+            fail(pattern);
+        } catch (IllegalArgumentException ignored) {}
+    }
+    
+}
@@ -0,0 +1,51 @@
+package tech.eisen.server.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ChunkedOutputStreamTest {
+    
+    @Test
+    public void testChunks() throws IOException {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        OutputStream stream = new ChunkedOutputStream(response);
+        stream.write("Hello".getBytes(StandardCharsets.US_ASCII));
+        stream.write(new byte[0]);
+        stream.write(',');
+        stream.flush();
+        stream.write(" World".getBytes(StandardCharsets.US_ASCII));
+        stream.close();
+        stream.close();
+        
+        assertEquals("6\r\nHello,\r\n6\r\n World\r\n0\r\n\r\n", response.toString("US-ASCII"));
+        
+        try {
+            stream.write('!');
+            fail();
+        } catch (IOException ignored) {}
+    }
+    
+    @Test
+    public void testLargeWrites() throws IOException {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        OutputStream stream = new ChunkedOutputStream(response);
+        byte[] large = new byte[20_000];
+        Arrays.fill(large, (byte) 'a');
+        stream.write('b');
+        stream.write(large);
+        stream.close();
+        
+        String body = response.toString("US-ASCII");
+        assertTrue(body.startsWith("1\r\nb\r\n4e20\r\naaa"));
+        assertTrue(body.endsWith("aaa\r\n0\r\n\r\n"));
+        assertEquals(6 + 6 + large.length + 2 + 5, body.length());
+    }
+    
+}
@@ -0,0 +1,84 @@
+package tech.eisen.server.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+
+import static org.junit.Assert.*;
+
+public class HttpEventTest {
+    
+    @Test
+    public void testKeepAliveRequiresFraming() throws IOException {
+        HttpEvent framed = createEvent(HttpRequestMethod.GET);
+        framed.setKeepAlive(true);
+        framed.setStatus(HttpStatus.OK);
+        framed.getResponseHeaders().setContentLength(0);
+        framed.writeHeaders();
+        assertTrue(framed.isKeepAlive());
+        assertEquals("keep-alive", framed.getResponseHeaders().getConnection());
+        
+        HttpEvent unframed = createEvent(HttpRequestMethod.GET);
+        unframed.setKeepAlive(true);
+        unframed.setStatus(HttpStatus.OK);
+        unframed.writeHeaders();
+        assertFalse(unframed.isKeepAlive());
+        assertEquals("close", unframed.getResponseHeaders().getConnection());
+    }
+    
+    @Test
+    public void testKeepAliveWithoutBody() throws IOException {
+        HttpEvent head = createEvent(HttpRequestMethod.HEAD);
+        head.setKeepAlive(true);
+        head.setStatus(HttpStatus.OK);
+        head.writeHeaders();
+        assertTrue(head.isKeepAlive());
+        
+        HttpEvent notModified = createEvent(HttpRequestMethod.GET);
+        notModified.setKeepAlive(true);
+        notModified.setStatus(HttpStatus.NOT_MODIFIED);
+        notModified.writeHeaders();
+        assertTrue(notModified.isKeepAlive());
+    }
+    
+    @Test
+    public void testChunked() throws IOException {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        HttpEvent chunked = createEvent("1.1", response);
+        chunked.setKeepAlive(true);
+        chunked.setStatus(HttpStatus.OK);
+        OutputStream body = chunked.writeChunkedHeaders();
+        body.write(new byte[] {'o', 'k'});
+        body.close();
+        assertTrue(chunked.isKeepAlive());
+        
+        String str = response.toString("US-ASCII");
+        assertTrue(str.contains("\r\ntransfer-encoding: chunked\r\n"));
+        assertTrue(str.endsWith("\r\n\r\n2\r\nok\r\n0\r\n\r\n"));
+        
+        HttpEvent old = createEvent("1.0", new ByteArrayOutputStream());
+        old.setStatus(HttpStatus.OK);
+        assertFalse(old.isChunkedSupported());
+        try {
+            old.writeChunkedHeaders();
+            fail();
+        } catch (IllegalStateException ignored) {}
+        assertFalse(old.hasWrittenHeaders());
+    }
+    
+    private static HttpEvent createEvent(HttpRequestMethod method) {
+        HttpRequest request = new HttpRequest("1.1", method, URI.create("/"), new ByteArrayInputStream(new byte[0]));
+        return new HttpEvent(new HttpPeer("localhost", 0), request, new ByteArrayOutputStream());
+    }
+    
+    private static HttpEvent createEvent(String version, OutputStream response) {
+        HttpRequest request = new HttpRequest(version, HttpRequestMethod.GET, URI.create("/"),
+            new ByteArrayInputStream(new byte[0]));
+        return new HttpEvent(new HttpPeer("localhost", 0), request, response);
+    }
+
+}
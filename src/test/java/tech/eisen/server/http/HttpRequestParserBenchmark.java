@@ -0,0 +1,88 @@
+package tech.eisen.server.http;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Compares {@link HttpRequestParser} with {@link DeserializerHttpRequest} on a stream of pipelined, browser-like
+ * requests, measuring the time and, where the JVM supports it, the heap allocated per request.
+ * </p>
+ * <p>
+ * This is not a unit test. Run it using {@code main} with optional arguments {@code <requests> <rounds>}.
+ * </p>
+ */
+public class HttpRequestParserBenchmark {
+    
+    private final static String REQUEST = "GET /blog/2019/some-article.html?ref=home HTTP/1.1\r\n"
+        + "Host: www.example.com\r\n"
+        + "Connection: keep-alive\r\n"
+        + "Upgrade-Insecure-Requests: 1\r\n"
+        + "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/77.0\r\n"
+        + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8\r\n"
+        + "Referer: https://www.example.com/\r\n"
+        + "Accept-Encoding: gzip, deflate, br\r\n"
+        + "Accept-Language: en-US,en;q=0.9,de;q=0.8\r\n"
+        + "Cookie: session=0123456789abcdef; theme=dark\r\n"
+        + "\r\n";
+    
+    private static volatile Object sink;
+    
+    public static void main(String... args) throws IOException {
+        final int requests = args.length > 0? Integer.parseInt(args[0]) : 100_000;
+        final int rounds = args.length > 1? Integer.parseInt(args[1]) : 10;
+        
+        byte[] single = REQUEST.getBytes(StandardCharsets.US_ASCII);
+        byte[] input = new byte[single.length * requests];
+        for (int i = 0; i < requests; i++)
+            System.arraycopy(single, 0, input, i * single.length, single.length);
+        
+        System.out.printf("%d pipelined requests of %d bytes, %d rounds%n", requests, single.length, rounds);
+        
+        for (int round = 0; round < rounds; round++) {
+            System.out.printf("round %d:%n", round + 1);
+            
+            run("DeserializerHttpRequest", requests, () -> {
+                // the same buffering as the server used with this parser
+                InputStream stream = new BufferedInputStream(new ByteArrayInputStream(input), 8192);
+                for (int i = 0; i < requests; i++)
+                    sink = new DeserializerHttpRequest().fromStream(stream);
+            });
+            
+            run("HttpRequestParser", requests, () -> {
+                HttpRequestParser parser = new HttpRequestParser(new ByteArrayInputStream(input));
+                for (int i = 0; i < requests; i++)
+                    sink = parser.parse();
+            });
+        }
+    }
+    
+    private static void run(String name, int requests, Parse parse) throws IOException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long bytesBefore = allocatedBytes(threads);
+        long before = System.nanoTime();
+        parse.run();
+        long nanos = System.nanoTime() - before;
+        long bytes = allocatedBytes(threads) - bytesBefore;
+        
+        System.out.printf("  %s: %dms (%.0f ns/request, %s)%n", name, TimeUnit.NANOSECONDS.toMillis(nanos),
+            nanos / (double) requests, bytesBefore < 0? "allocation unknown" : bytes / requests + " B/request");
+    }
+    
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+    
+    @FunctionalInterface
+    private static interface Parse {
+        
+        abstract void run() throws IOException;
+        
+    }
+    
+}
@@ -0,0 +1,121 @@
+package tech.eisen.server.http;
+
+import eisenwave.torrens.error.FileSyntaxException;
+import eisenwave.torrens.error.FileVersionException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class HttpRequestParserTest {
+    
+    @Test
+    public void testParse() throws IOException {
+        HttpRequest request = parse("\r\nget /index.html?q=1 HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "User-Agent:  Mozilla/5.0 \r\n"
+            + "X-Custom-Header : Value\r\n"
+            + "\r\n");
+        
+        assertEquals(HttpRequestMethod.GET, request.getMethod());
+        assertEquals("/index.html", request.getURI().getPath());
+        assertEquals("q=1", request.getURI().getQuery());
+        assertEquals("1.1", request.getVersion());
+        assertEquals("localhost", request.getHeaders().getRawValue("host"));
+        assertEquals("Mozilla/5.0", request.getHeaders().getUserAgent());
+        assertEquals("Value", request.getHeaders().getRawValue("x-custom-header"));
+    }
+    
+    @Test
+    public void testBodyAndPipelining() throws IOException {
+        // a source returning single bytes forces the parser to refill its buffer in the middle of every line
+        HttpRequestParser parser = new HttpRequestParser(new TrickleInputStream(bytes(
+            "POST /a HTTP/1.1\nContent-Length: 4\n\nbodyHEAD /b HTTP/1.0\r\nConnection: keep-alive\r\n\r\n")));
+        
+        HttpRequest post = parser.parse();
+        assertEquals(HttpRequestMethod.POST, post.getMethod());
+        assertEquals(4, post.getHeaders().getContentLength());
+        byte[] body = new byte[4];
+        for (int i = 0; i < body.length; i++)
+            body[i] = (byte) post.getStream().read();
+        assertArrayEquals(bytes("body"), body);
+        
+        HttpRequest head = parser.parse();
+        assertEquals(HttpRequestMethod.HEAD, head.getMethod());
+        assertEquals("1.0", head.getVersion());
+        assertTrue(head.isKeepAliveRequested());
+        
+        try {
+            parser.parse();
+            fail();
+        } catch (EOFException ignored) {}
+    }
+    
+    @Test
+    public void testArrayRegion() throws IOException {
+        byte[] array = bytes("xxGET / HTTP/1.1\r\n\r\nxx");
+        HttpRequest request = new HttpRequestParser(array, 2, array.length - 4).parse();
+        assertEquals("/", request.getURI().getPath());
+        assertEquals(-1, request.getStream().read());
+    }
+    
+    @Test
+    public void testMalformed() throws IOException {
+        assertRejected("FETCH / HTTP/1.1\r\n\r\n", FileSyntaxException.class);
+        assertRejected("GET /\r\n\r\n", FileSyntaxException.class);
+        assertRejected("GET / HTTP/2.0\r\n\r\n", FileVersionException.class);
+        assertRejected("GET / HTTP/1.1\r\nHost localhost\r\n\r\n", FileSyntaxException.class);
+        assertRejected("GET / HTTP/1.1\r\nHost: localhost\r\n", EOFException.class);
+        
+        // a malformed length is only rejected by the server, which answers it and closes the connection
+        for (String length : new String[] {"abc", "-1"}) {
+            HttpRequest request = parse("GET / HTTP/1.1\r\nContent-Length: " + length + "\r\n\r\n");
+            assertFalse(request.hasValidContentLength());
+            assertFalse(request.isKeepAliveRequested());
+        }
+        assertTrue(parse("GET / HTTP/1.1\r\nContent-Length: 0\r\n\r\n").hasValidContentLength());
+    }
+    
+    private static void assertRejected(String request, Class<? extends IOException> type) {
+        try {
+            parse(request);
+            fail(request);
+        } catch (IOException ex) {
+            assertSame(type, ex.getClass());
+        }
+    }
+    
+    private static HttpRequest parse(String request) throws IOException {
+        return new HttpRequestParser(new ByteArrayInputStream(bytes(request))).parse();
+    }
+    
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.US_ASCII);
+    }
+    
+    private static class TrickleInputStream extends InputStream {
+        
+        private final ByteArrayInputStream stream;
+        
+        TrickleInputStream(byte[] bytes) {
+            this.stream = new ByteArrayInputStream(bytes);
+        }
+        
+        @Override
+        public int read() {
+            return stream.read();
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return len == 0? 0 : stream.read(b, off, 1);
+        }
+        
+    }
+    
+}
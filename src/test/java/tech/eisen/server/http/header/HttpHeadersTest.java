@@ -3,6 +3,8 @@ package tech.eisen.server.http.header;
 import org.junit.Test;
 import tech.eisen.server.http.HttpHeaders;
 
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class HttpHeadersTest {
@@ -16,6 +18,99 @@ public class HttpHeadersTest {
         helpTestPreferredEncoding("identity", "deflate; q=3, identity; q=6");
     }
     
+    @Test
+    public void testNamesAreCaseInsensitive() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Content-Length", "12");
+        headers.set("X-Custom", "a");
+        headers.set("CONTENT-LENGTH", "34");
+        
+        assertEquals(2, headers.size());
+        assertEquals("content-length", headers.getName(0));
+        assertEquals("x-custom", headers.getName(1));
+        assertEquals("a", headers.getRawValue("x-CUSTOM"));
+        assertEquals(34, headers.getContentLength());
+        assertTrue(headers.hasHeader("content-LENGTH"));
+        assertFalse(headers.hasHeader("content-type"));
+    }
+    
+    @Test
+    public void testValuesAreParsedLazily() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", "Unsupported credentials");
+        assertEquals("Unsupported credentials", headers.getRawValue("authorization"));
+        
+        try {
+            headers.getAuthorization();
+            fail();
+        } catch (IllegalArgumentException ignored) {}
+        
+        headers.set("Accept-Encoding", "gzip;q=0.5, br");
+        HttpHeaders.AcceptEncoding acceptEncoding = headers.getAcceptEncoding();
+        assertEquals("br", acceptEncoding.getPreferredEncoding());
+        assertSame(acceptEncoding, headers.getAcceptEncoding());
+    }
+    
+    @Test
+    public void testMalformedAuthorization() {
+        // no credentials at all, and credentials of "user" without a colon
+        for (String raw : new String[] {"Basic", "Basic dXNlcg==", "Basic not-base64!"}) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set("Authorization", raw);
+            try {
+                headers.getAuthorization();
+                fail(raw);
+            } catch (IllegalArgumentException ignored) {}
+        }
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", "Basic dXNlcjpwYXNz");
+        assertEquals("user", headers.getAuthorization().getUser());
+        assertEquals("pass", new String(headers.getAuthorization().getPassword()));
+    }
+    
+    @Test
+    public void testConditionalHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("If-None-Match", "\"a-1\", W/\"b-2\"");
+        HttpHeaders.EntityTags ifNoneMatch = headers.getIfNoneMatch();
+        assertTrue(ifNoneMatch.matches("\"a-1\""));
+        assertTrue(ifNoneMatch.matches("\"b-2\""));
+        assertFalse(ifNoneMatch.matches("\"a-1-gzip\""));
+        assertTrue(new HttpHeaders.EntityTags("*").matches("\"c\""));
+        
+        headers.set("If-Modified-Since", "Tue, 15 Nov 1994 08:12:31 GMT");
+        assertEquals(784887151000L, headers.getIfModifiedSince().getMillis());
+        headers.set("If-Modified-Since", "yesterday");
+        assertEquals(-1L, headers.getIfModifiedSince().getMillis());
+    }
+    
+    @Test
+    public void testRange() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Range", "bytes=0-99, 950-, -10, 2000-3000");
+        List<HttpHeaders.ByteRange> ranges = headers.getRange().resolve(1000);
+        assertEquals(3, ranges.size());
+        assertEquals(0, ranges.get(0).getFirst());
+        assertEquals(100, ranges.get(0).getLength());
+        assertEquals(950, ranges.get(1).getFirst());
+        assertEquals(999, ranges.get(1).getLast());
+        assertEquals(990, ranges.get(2).getFirst());
+        
+        // ranges beyond the end are unsatisfiable, invalid headers are ignored
+        assertTrue(new HttpHeaders.Range("bytes=1000-").resolve(1000).isEmpty());
+        assertEquals(999, new HttpHeaders.Range("bytes=500-5000").resolve(1000).get(0).getLast());
+        assertNull(new HttpHeaders.Range("bytes=5-1").resolve(1000));
+        assertNull(new HttpHeaders.Range("items=0-1").resolve(1000));
+        assertNull(new HttpHeaders.Range("bytes=-").resolve(1000));
+        assertNull(new HttpHeaders.Range("bytes=a-b").resolve(1000));
+        
+        StringBuilder many = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= HttpHeaders.Range.MAX_RANGES; i++)
+            many.append(',').append(i).append('-').append(i);
+        assertNull(new HttpHeaders.Range(many.toString()).resolve(1000));
+    }
+    
     private static void helpTestPreferredEncoding(String expected, String acceptEncoding) {
         assertEquals(expected, new HttpHeaders.AcceptEncoding(acceptEncoding).getPreferredEncoding());
     }